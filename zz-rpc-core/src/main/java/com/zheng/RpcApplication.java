@@ -5,6 +5,7 @@ import com.zheng.constants.RpcConstant;
 import com.zheng.registry.Registry;
 import com.zheng.registry.RegistryConfig;
 import com.zheng.registry.RegistryFactory;
+import com.zheng.registry.RegistrySnapshot;
 import com.zheng.utils.ConfigUtils;
 import lombok.extern.slf4j.Slf4j;
 
@@ -27,15 +28,27 @@ public class RpcApplication {
         log.info("rpc init, config = {}", newRpcConfig.toString());
         // 注册中心初始化
         RegistryConfig registryConfig = rpcConfig.getRegistryConfig();
+        // 先加载本地快照，注册中心返回前即可提供服务发现
+        RegistrySnapshot.init(registryConfig);
         Registry registry = RegistryFactory.getInstance(registryConfig.getRegistry());
         registry.init(registryConfig);
         log.info("registry init, config = {}", registryConfig);
 
         // 创建并注册 Shutdown Hook，JVM 退出时执行操作
-        Runtime.getRuntime().addShutdownHook(new Thread(registry::destroy));
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            registry.destroy();
+            RegistrySnapshot.flush();
+        }));
     }
 
-
+    /**
+     * 只设置配置，不初始化注册中心、不注册 Shutdown Hook（供测试使用）
+     *
+     * @param newRpcConfig
+     */
+    static void setRpcConfig(RpcConfig newRpcConfig) {
+        rpcConfig = newRpcConfig;
+    }
 
     /**
      * 初始化
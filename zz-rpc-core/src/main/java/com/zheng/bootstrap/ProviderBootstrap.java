@@ -2,6 +2,7 @@ package com.zheng.bootstrap;
 import com.zheng.RpcApplication;
 import com.zheng.conf.RpcConfig;
 import com.zheng.model.ServiceMetaInfo;
+import com.zheng.protocal.ProtocolConstant;
 import com.zheng.model.ServiceRegisterInfo;
 import com.zheng.registry.LocalRegistry;
 import com.zheng.registry.Registry;
@@ -39,6 +40,10 @@ public class ProviderBootstrap {
             serviceMetaInfo.setServiceName(serviceName);
             serviceMetaInfo.setServiceHost(rpcConfig.getServerHost());
             serviceMetaInfo.setServicePort(rpcConfig.getServerPort());
+            serviceMetaInfo.setWeight(rpcConfig.getWeight());
+            serviceMetaInfo.setWarmup(rpcConfig.getWarmup());
+            serviceMetaInfo.setProtocolVersion((int) ProtocolConstant.COMPACT_PROTOCOL_VERSION);
+            serviceMetaInfo.setRegisterTime(System.currentTimeMillis());
             try {
                 registry.register(serviceMetaInfo);
             } catch (Exception e) {
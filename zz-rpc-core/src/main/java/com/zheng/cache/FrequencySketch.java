@@ -0,0 +1,119 @@
+package com.zheng.cache;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 访问频率估计（Count-Min Sketch）
+ * 4 行计数器，每个计数器 4 位、上限 15，累计次数达到阈值后全部减半，使频率跟随近期的访问。
+ * 每个 long 打包 16 个计数器，用 CAS 更新，读写都不加锁；并发下偶尔少计一次不影响估计
+ */
+class FrequencySketch {
+
+    private static final int DEPTH = 4;
+
+    private static final int MAX_COUNT = 15;
+
+    private static final int[] SEEDS = {0x97cb3127, 0xb5ad4eca, 0x7f4a7c15, 0x9e3779b9};
+
+    /**
+     * 每个计数器减半时的掩码（右移一位后去掉从高位计数器移入的位）
+     */
+    private static final long RESET_MASK = 0x7777777777777777L;
+
+    /**
+     * 计数器，第 row 行第 index 个计数器位于第 (row * width + index) / 16 个 long
+     */
+    private final AtomicLongArray table;
+
+    private final int width;
+
+    private final int mask;
+
+    /**
+     * 累计次数达到该值时减半
+     */
+    private final int resetSize;
+
+    private final AtomicInteger additions = new AtomicInteger();
+
+    FrequencySketch(int maximumSize) {
+        int width = Integer.highestOneBit(Math.max(16, maximumSize - 1) << 1);
+        this.table = new AtomicLongArray(DEPTH * width / 16);
+        this.width = width;
+        this.mask = width - 1;
+        this.resetSize = width * 10;
+    }
+
+    /**
+     * 记录一次访问
+     *
+     * @param key
+     */
+    void increment(Object key) {
+        int hash = spread(key.hashCode());
+        boolean added = false;
+        for (int i = 0; i < DEPTH; i++) {
+            added |= incrementAt(i * width + indexOf(hash, i));
+        }
+        // 只有恰好到达阈值的线程执行减半
+        if (added && additions.incrementAndGet() == resetSize) {
+            reset();
+        }
+    }
+
+    /**
+     * 估计访问次数
+     *
+     * @param key
+     * @return
+     */
+    int frequency(Object key) {
+        int hash = spread(key.hashCode());
+        int frequency = MAX_COUNT;
+        for (int i = 0; i < DEPTH; i++) {
+            frequency = Math.min(frequency, countAt(i * width + indexOf(hash, i)));
+        }
+        return frequency;
+    }
+
+    private boolean incrementAt(int counter) {
+        int index = counter >>> 4;
+        int shift = (counter & 15) << 2;
+        while (true) {
+            long value = table.get(index);
+            if (((value >>> shift) & MAX_COUNT) == MAX_COUNT) {
+                return false;
+            }
+            if (table.compareAndSet(index, value, value + (1L << shift))) {
+                return true;
+            }
+        }
+    }
+
+    private int countAt(int counter) {
+        return (int) ((table.get(counter >>> 4) >>> ((counter & 15) << 2)) & MAX_COUNT);
+    }
+
+    private void reset() {
+        for (int i = 0; i < table.length(); i++) {
+            long value;
+            do {
+                value = table.get(i);
+            } while (!table.compareAndSet(i, value, (value >>> 1) & RESET_MASK));
+        }
+        additions.addAndGet(-resetSize / 2);
+    }
+
+    private int indexOf(int hash, int row) {
+        int h = hash * SEEDS[row];
+        h ^= h >>> 16;
+        return h & mask;
+    }
+
+    private static int spread(int hash) {
+        hash ^= hash >>> 16;
+        hash *= 0x45d9f3b;
+        return hash ^ (hash >>> 16);
+    }
+}
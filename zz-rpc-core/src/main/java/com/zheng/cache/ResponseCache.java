@@ -0,0 +1,292 @@
+package com.zheng.cache;
+
+import cn.hutool.core.lang.hash.MurmurHash;
+import com.zheng.model.RpcResponse;
+import com.zheng.serializer.Serializer;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Spliterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * 客户端结果缓存（按方法）
+ * 键为序列化后参数的 128 位哈希；超过有效期的结果不再返回。
+ * 容量满时按 TinyLFU 思路准入：抽样若干条目，淘汰其中最久未访问的一个，
+ * 但只有新结果的访问频率高于被淘汰者时才替换，避免一次性的请求把热点结果挤出缓存。
+ * 缓存的结果对象会返回给多个调用方，调用方不应修改
+ */
+@Slf4j
+public class ResponseCache {
+
+    /**
+     * 服务名.方法名 => 结果缓存
+     */
+    private static final Map<String, ResponseCache> CACHE_MAP = new ConcurrentHashMap<>();
+
+    /**
+     * 淘汰时的抽样数
+     */
+    private static final int SAMPLE_SIZE = 8;
+
+    private final ResponseCacheConfig config;
+
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+    private final FrequencySketch sketch;
+
+    public ResponseCache(ResponseCacheConfig config) {
+        this.config = config;
+        this.sketch = new FrequencySketch(config.getMaxSize());
+    }
+
+    /**
+     * 获取方法的结果缓存
+     *
+     * @param config      缓存配置
+     * @param serviceName 服务名
+     * @param methodName  方法名
+     * @return
+     */
+    public static ResponseCache getInstance(ResponseCacheConfig config, String serviceName, String methodName) {
+        return CACHE_MAP.computeIfAbsent(serviceName + "." + methodName, key -> new ResponseCache(config));
+    }
+
+    /**
+     * 清空方法的缓存结果（如已知服务端数据发生变化）
+     *
+     * @param serviceName 服务名
+     * @param methodName  方法名
+     */
+    public static void invalidate(String serviceName, String methodName) {
+        ResponseCache responseCache = CACHE_MAP.get(serviceName + "." + methodName);
+        if (responseCache != null) {
+            responseCache.invalidateAll();
+        }
+    }
+
+    /**
+     * 清空服务所有方法的缓存结果
+     *
+     * @param serviceName 服务名
+     */
+    public static void invalidate(String serviceName) {
+        String prefix = serviceName + ".";
+        CACHE_MAP.forEach((methodKey, responseCache) -> {
+            if (methodKey.startsWith(prefix)) {
+                responseCache.invalidateAll();
+            }
+        });
+    }
+
+    /**
+     * 构造缓存键
+     * 键以参数类型开头，同名的重载方法共用一个缓存实例也不会互相命中
+     *
+     * @param parameterTypes 参数类型
+     * @param args           调用参数
+     * @param serializer     序列化器
+     * @return 参数无法序列化时返回 null，即不缓存
+     */
+    public static String buildKey(Class<?>[] parameterTypes, Object[] args, Serializer serializer) {
+        StringBuilder key = new StringBuilder("(");
+        if (parameterTypes != null) {
+            for (int i = 0; i < parameterTypes.length; i++) {
+                if (i > 0) {
+                    key.append(',');
+                }
+                key.append(parameterTypes[i].getName());
+            }
+        }
+        key.append(')');
+        if (args == null || args.length == 0) {
+            return key.toString();
+        }
+        try {
+            long[] hash = MurmurHash.hash128(serializer.serialize(args));
+            return key.append(String.format("%016x%016x", hash[0], hash[1])).toString();
+        } catch (IOException | RuntimeException e) {
+            log.warn("参数无法序列化，不使用结果缓存", e);
+            return null;
+        }
+    }
+
+    /**
+     * 获取未过期的结果
+     *
+     * @param key
+     * @return 不存在或已过期时返回 null
+     */
+    public RpcResponse get(String key) {
+        sketch.increment(key);
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            return null;
+        }
+        long now = System.currentTimeMillis();
+        if (entry.expireAt <= now) {
+            entries.remove(key, entry);
+            return null;
+        }
+        entry.accessTime = now;
+        return entry.rpcResponse;
+    }
+
+    /**
+     * 缓存结果
+     * 并发写入时容量检查可能同时通过，写入后再修剪回容量上限
+     *
+     * @param key
+     * @param rpcResponse
+     */
+    public void put(String key, RpcResponse rpcResponse) {
+        long now = System.currentTimeMillis();
+        Entry entry = new Entry(rpcResponse, now + config.getTtl(), now);
+        if (entries.size() >= config.getMaxSize() && !entries.containsKey(key) && !evictFor(key, now)) {
+            return;
+        }
+        entries.put(key, entry);
+        while (entries.size() > config.getMaxSize()) {
+            if (!evictOne(now)) {
+                break;
+            }
+        }
+    }
+
+    /**
+     * 删除一个结果
+     *
+     * @param key
+     */
+    public void remove(String key) {
+        entries.remove(key);
+    }
+
+    /**
+     * 清空
+     */
+    public void invalidateAll() {
+        entries.clear();
+    }
+
+    /**
+     * 缓存的结果数
+     *
+     * @return
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * 为新结果腾出位置
+     *
+     * @param candidate 新结果的键
+     * @param now
+     * @return 是否准入
+     */
+    private boolean evictFor(String candidate, long now) {
+        List<Map.Entry<String, Entry>> samples = sample();
+        String victim = null;
+        long victimAccessTime = Long.MAX_VALUE;
+        for (Map.Entry<String, Entry> sample : samples) {
+            Entry entry = sample.getValue();
+            if (entry.expireAt <= now) {
+                // 已过期，直接腾出位置
+                entries.remove(sample.getKey(), entry);
+                return true;
+            }
+            if (entry.accessTime < victimAccessTime) {
+                victim = sample.getKey();
+                victimAccessTime = entry.accessTime;
+            }
+        }
+        if (victim == null || sketch.frequency(candidate) <= sketch.frequency(victim)) {
+            return false;
+        }
+        entries.remove(victim);
+        return true;
+    }
+
+    /**
+     * 超出容量时淘汰一个条目（过期的优先，其次最久未访问的），不做准入比较
+     *
+     * @param now
+     * @return 是否淘汰了条目
+     */
+    private boolean evictOne(long now) {
+        Map.Entry<String, Entry> victim = null;
+        for (Map.Entry<String, Entry> sample : sample()) {
+            if (sample.getValue().expireAt <= now) {
+                victim = sample;
+                break;
+            }
+            if (victim == null || sample.getValue().accessTime < victim.getValue().accessTime) {
+                victim = sample;
+            }
+        }
+        if (victim == null) {
+            return false;
+        }
+        entries.remove(victim.getKey(), victim.getValue());
+        return true;
+    }
+
+    /**
+     * 抽样若干条目
+     * 抽样从哈希表中的随机位置开始：对 spliterator 随机二分下降到一个区段再顺序取样，
+     * 避免总是抽到迭代顺序最前面的那几个条目
+     *
+     * @return
+     */
+    private List<Map.Entry<String, Entry>> sample() {
+        Spliterator<Map.Entry<String, Entry>> spliterator = entries.entrySet().spliterator();
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        while (spliterator.estimateSize() > SAMPLE_SIZE * 2L) {
+            Spliterator<Map.Entry<String, Entry>> prefix = spliterator.trySplit();
+            if (prefix == null) {
+                break;
+            }
+            if (random.nextBoolean()) {
+                spliterator = prefix;
+            }
+        }
+        List<Map.Entry<String, Entry>> samples = new ArrayList<>(SAMPLE_SIZE);
+        while (samples.size() < SAMPLE_SIZE) {
+            if (!spliterator.tryAdvance(samples::add)) {
+                break;
+            }
+        }
+        if (samples.isEmpty()) {
+            // 选中的区段恰好为空，退回从头抽样
+            Iterator<Map.Entry<String, Entry>> iterator = entries.entrySet().iterator();
+            while (samples.size() < SAMPLE_SIZE && iterator.hasNext()) {
+                samples.add(iterator.next());
+            }
+        }
+        return samples;
+    }
+
+    /**
+     * 缓存条目
+     */
+    private static final class Entry {
+
+        private final RpcResponse rpcResponse;
+
+        private final long expireAt;
+
+        private volatile long accessTime;
+
+        private Entry(RpcResponse rpcResponse, long expireAt, long accessTime) {
+            this.rpcResponse = rpcResponse;
+            this.expireAt = expireAt;
+            this.accessTime = accessTime;
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package com.zheng.cache;
+
+import lombok.Data;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 客户端结果缓存配置
+ * 只应对幂等的读方法开启：缓存有效期内的重复调用直接返回本地结果，不再请求服务提供者
+ */
+@Data
+public class ResponseCacheConfig {
+
+    /**
+     * 开启缓存的方法，元素为 方法名 或 服务名.方法名
+     */
+    private List<String> methods = new ArrayList<>();
+
+    /**
+     * 缓存有效期（毫秒）
+     */
+    private long ttl = 60_000L;
+
+    /**
+     * 每个方法最多缓存的结果数
+     */
+    private int maxSize = 10_000;
+
+    /**
+     * 方法是否开启缓存
+     *
+     * @param serviceName 服务名
+     * @param methodName  方法名
+     * @return
+     */
+    public boolean isCached(String serviceName, String methodName) {
+        return !methods.isEmpty() && (methods.contains(methodName) || methods.contains(serviceName + "." + methodName));
+    }
+}
@@ -0,0 +1,27 @@
+package com.zheng.compress;
+
+import java.io.IOException;
+
+/**
+ * 压缩器接口
+ */
+public interface Compressor {
+
+    /**
+     * 压缩
+     *
+     * @param bytes
+     * @return
+     * @throws IOException
+     */
+    byte[] compress(byte[] bytes) throws IOException;
+
+    /**
+     * 解压
+     *
+     * @param bytes
+     * @return
+     * @throws IOException
+     */
+    byte[] decompress(byte[] bytes) throws IOException;
+}
@@ -0,0 +1,24 @@
+package com.zheng.compress;
+
+import com.zheng.api.SpiLoader;
+
+/**
+ * 压缩器工厂（用于获取压缩器对象）
+ */
+public class CompressorFactory {
+
+    static {
+        SpiLoader.load(Compressor.class);
+    }
+
+    /**
+     * 获取实例
+     *
+     * @param key
+     * @return
+     */
+    public static Compressor getInstance(String key) {
+        return SpiLoader.getInstance(Compressor.class, key);
+    }
+
+}
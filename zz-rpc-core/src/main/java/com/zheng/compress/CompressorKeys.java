@@ -0,0 +1,23 @@
+package com.zheng.compress;
+
+/**
+ * 压缩器键名
+ */
+public interface CompressorKeys {
+
+    /**
+     * 不压缩
+     */
+    String NONE = "none";
+
+    /**
+     * Deflate 最快档，压缩率一般，CPU 开销小
+     */
+    String DEFLATE = "deflate";
+
+    /**
+     * GZIP 默认档，压缩率更高，CPU 开销更大
+     */
+    String GZIP = "gzip";
+
+}
@@ -0,0 +1,17 @@
+package com.zheng.compress;
+
+/**
+ * 不压缩
+ */
+public class NoneCompressor implements Compressor {
+
+    @Override
+    public byte[] compress(byte[] bytes) {
+        return bytes;
+    }
+
+    @Override
+    public byte[] decompress(byte[] bytes) {
+        return bytes;
+    }
+}
@@ -1,5 +1,9 @@
 package com.zheng.conf;
 
+import com.zheng.cache.ResponseCacheConfig;
+import com.zheng.compress.CompressorKeys;
+import com.zheng.fault.breaker.CircuitBreakerConfig;
+import com.zheng.fault.hedge.HedgingConfig;
 import com.zheng.fault.retry.RetryStrategyKeys;
 import com.zheng.loadbalancer.LoadBalancerKeys;
 import com.zheng.registry.RegistryConfig;
@@ -8,6 +12,11 @@ import com.zheng.tolerant.TolerantStrategy;
 import com.zheng.tolerant.TolerantStrategyKeys;
 import lombok.Data;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
 /**
  * RPC 框架配置
  */
@@ -34,6 +43,46 @@ public class RpcConfig {
      */
     private Integer serverPort = 8080;
 
+    /**
+     * 服务权重（服务端）
+     */
+    private Integer weight = 100;
+
+    /**
+     * 服务预热时长（服务端，单位毫秒），刚启动的节点在该时长内逐步承接流量
+     */
+    private Long warmup = 60_000L;
+
+    /**
+     * 调用超时时间（毫秒），随请求传给服务端，服务端不再执行已超时的请求
+     */
+    private long timeout = 10_000L;
+
+    /**
+     * 按方法配置的调用超时时间（毫秒），键为 方法名 或 服务名.方法名，后者优先
+     */
+    private Map<String, Long> methodTimeouts = new HashMap<>();
+
+    /**
+     * 连接超时时间（毫秒）
+     */
+    private int connectTimeout = 5000;
+
+    /**
+     * 服务端业务线程数
+     */
+    private int serverWorkerThreads = 200;
+
+    /**
+     * 服务端单个服务的最大并发数（含排队），超出的请求返回过载
+     */
+    private int serverMaxConcurrency = 1000;
+
+    /**
+     * 服务端请求排队时间上限（毫秒），超出的请求返回过载
+     */
+    private long serverQueueTimeout = 1000L;
+
     /**
      * 模拟调用
      */
@@ -44,11 +93,28 @@ public class RpcConfig {
      */
     private String serializer = SerializerKeys.JDK;
 
+    /**
+     * 压缩算法，消息体超过阈值时压缩；服务端按调用方声明的算法压缩响应
+     * 只对注册了协议版本的服务提供者生效，旧版本的提供者不压缩
+     */
+    private String compressor = CompressorKeys.NONE;
+
     /**
      * 负载均衡器
      */
     private String loadBalancer = LoadBalancerKeys.ROUND_ROBIN;
 
+    /**
+     * 一致性哈希负载均衡参与哈希的参数下标，多个用逗号分隔
+     * 对应参数需有基于内容的 toString，否则无法保证相同参数落到同一节点
+     */
+    private String hashArguments = "0";
+
+    /**
+     * 是否启用消费端自适应并发限制（按服务提供者地址）
+     */
+    private boolean enableConcurrencyLimit = false;
+
     /**
      * 重试策略
      */
@@ -61,10 +127,64 @@ public class RpcConfig {
 
     private String tolerantStrategy = TolerantStrategyKeys.FAIL_FAST;
 
+    /**
+     * 熔断器配置
+     */
+    private CircuitBreakerConfig circuitBreakerConfig = new CircuitBreakerConfig();
+
+    /**
+     * 对冲请求配置
+     */
+    private HedgingConfig hedgingConfig = new HedgingConfig();
+
+    /**
+     * 客户端结果缓存配置
+     */
+    private ResponseCacheConfig responseCacheConfig = new ResponseCacheConfig();
+
+    /**
+     * 开启请求合并的方法，元素为 方法名 或 服务名.方法名
+     * 参数相同的并发调用只发出一次请求，只应对幂等的读方法开启
+     */
+    private List<String> singleFlightMethods = new ArrayList<>();
+
+    /**
+     * 流式调用的接收窗口，即服务端最多可以连续发送而不等待调用方确认的元素数
+     */
+    private int streamWindow = 32;
+
     /**
      * 是否启用优化协议
-     * 优化协议将序列化器和消息类型合并到一个字节中，节省网络传输
+     * 优化协议将序列化器和消息类型合并到一个字节中，节省网络传输；
+     * 按服务提供者注册的协议版本协商：支持 v3 时使用变长消息头，支持 v2 时使用组合字段，其他提供者仍使用原始协议
      */
     private boolean enableOptimizedProtocol = false;
 
+    /**
+     * 获取方法的调用超时时间
+     *
+     * @param serviceName 服务名
+     * @param methodName  方法名
+     * @return 超时时间（毫秒）
+     */
+    public long getTimeout(String serviceName, String methodName) {
+        Long methodTimeout = methodTimeouts.get(serviceName + "." + methodName);
+        if (methodTimeout == null) {
+            methodTimeout = methodTimeouts.get(methodName);
+        }
+        return methodTimeout == null ? timeout : methodTimeout;
+    }
+
+    /**
+     * 方法是否开启请求合并
+     *
+     * @param serviceName 服务名
+     * @param methodName  方法名
+     * @return
+     */
+    public boolean isSingleFlight(String serviceName, String methodName) {
+        return !singleFlightMethods.isEmpty()
+                && (singleFlightMethods.contains(methodName) || singleFlightMethods.contains(serviceName + "." + methodName));
+    }
+
 }
@@ -0,0 +1,278 @@
+package com.zheng.fault.breaker;
+
+import com.zheng.RpcApplication;
+import com.zheng.model.ServiceMetaInfo;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 熔断器（消费端，按服务提供者地址 + 方法隔离）
+ * 关闭状态下用按秒分桶的滑动窗口统计失败率和慢调用率，达到阈值后打开，打开期间不再向该节点发请求；
+ * 打开持续一段时间后进入半开状态，放行少量探测请求，全部成功则关闭，任一失败则重新打开。
+ * 窗口统计和状态切换均为 CAS，无锁
+ */
+@Slf4j
+public class CircuitBreaker {
+
+    private static final int CLOSED = 0;
+
+    private static final int OPEN = 1;
+
+    private static final int HALF_OPEN = 2;
+
+    /**
+     * 服务地址#方法名 => 熔断器
+     */
+    private static final Map<String, CircuitBreaker> CIRCUIT_BREAKER_MAP = new ConcurrentHashMap<>();
+
+    /**
+     * 名称（服务地址#方法名），用于日志
+     */
+    private final String name;
+
+    private final CircuitBreakerConfig config;
+
+    private final long slowCallNanos;
+
+    /**
+     * 滑动窗口，每秒一个桶，循环复用
+     */
+    private final AtomicReferenceArray<Bucket> buckets;
+
+    private final AtomicInteger state = new AtomicInteger(CLOSED);
+
+    /**
+     * 打开时间（毫秒）
+     */
+    private volatile long openedAt;
+
+    /**
+     * 半开状态剩余的探测名额
+     */
+    private final AtomicInteger halfOpenPermits = new AtomicInteger();
+
+    /**
+     * 半开状态已成功的探测数
+     */
+    private final AtomicInteger halfOpenSuccesses = new AtomicInteger();
+
+    public CircuitBreaker(String name, CircuitBreakerConfig config) {
+        this.name = name;
+        this.config = config;
+        this.slowCallNanos = TimeUnit.MILLISECONDS.toNanos(config.getSlowCallDuration());
+        this.buckets = new AtomicReferenceArray<>(config.getWindowSeconds());
+    }
+
+    /**
+     * 获取熔断器
+     *
+     * @param serviceAddress 服务地址
+     * @param methodName     方法名
+     * @return
+     */
+    public static CircuitBreaker getInstance(String serviceAddress, String methodName) {
+        return CIRCUIT_BREAKER_MAP.computeIfAbsent(serviceAddress + "#" + methodName,
+                key -> new CircuitBreaker(key, RpcApplication.getRpcConfig().getCircuitBreakerConfig()));
+    }
+
+    /**
+     * 过滤掉熔断中的服务节点（不占用半开探测名额）
+     *
+     * @param serviceMetaInfoList 服务节点列表
+     * @param methodName          方法名
+     * @return 全部可用时返回原列表
+     */
+    public static List<ServiceMetaInfo> filterAvailable(List<ServiceMetaInfo> serviceMetaInfoList, String methodName) {
+        List<ServiceMetaInfo> available = null;
+        for (int i = 0; i < serviceMetaInfoList.size(); i++) {
+            ServiceMetaInfo serviceMetaInfo = serviceMetaInfoList.get(i);
+            boolean permitted = getInstance(serviceMetaInfo.getServiceAddress(), methodName).isCallPermitted();
+            if (!permitted && available == null) {
+                available = new ArrayList<>(serviceMetaInfoList.subList(0, i));
+            } else if (permitted && available != null) {
+                available.add(serviceMetaInfo);
+            }
+        }
+        return available == null ? serviceMetaInfoList : available;
+    }
+
+    /**
+     * 是否允许调用（只读判断，用于负载均衡前过滤节点）
+     *
+     * @return
+     */
+    public boolean isCallPermitted() {
+        switch (state.get()) {
+            case OPEN:
+                return System.currentTimeMillis() - openedAt >= config.getOpenDuration();
+            case HALF_OPEN:
+                return halfOpenPermits.get() > 0;
+            default:
+                return true;
+        }
+    }
+
+    /**
+     * 申请调用许可，成功后必须调用 {@link #onResult(long, boolean)} 或 {@link #releasePermission()}
+     *
+     * @return 是否允许
+     */
+    public boolean tryAcquirePermission() {
+        int current = state.get();
+        if (current == CLOSED) {
+            return true;
+        }
+        if (current == OPEN) {
+            if (System.currentTimeMillis() - openedAt < config.getOpenDuration()) {
+                return false;
+            }
+            if (state.compareAndSet(OPEN, HALF_OPEN)) {
+                halfOpenSuccesses.set(0);
+                halfOpenPermits.set(config.getHalfOpenCalls());
+                log.info("熔断器进入半开状态: {}", name);
+            }
+        }
+        while (true) {
+            int permits = halfOpenPermits.get();
+            if (permits <= 0) {
+                return state.get() == CLOSED;
+            }
+            if (halfOpenPermits.compareAndSet(permits, permits - 1)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * 归还调用许可，不记录结果
+     * 用于请求未真正到达节点（本地限流）或被调用方主动取消的情况，半开状态下归还探测名额，
+     * 这类结果既不能算探测成功也不能算失败
+     */
+    public void releasePermission() {
+        if (state.get() == HALF_OPEN) {
+            halfOpenPermits.incrementAndGet();
+        }
+    }
+
+    /**
+     * 记录调用结果
+     *
+     * @param elapsed 耗时（纳秒）
+     * @param failed  是否失败
+     */
+    public void onResult(long elapsed, boolean failed) {
+        boolean slow = elapsed >= slowCallNanos;
+        int current = state.get();
+        if (current == HALF_OPEN) {
+            if (failed || slow) {
+                open(HALF_OPEN);
+            } else if (halfOpenSuccesses.incrementAndGet() >= config.getHalfOpenCalls()
+                    && state.compareAndSet(HALF_OPEN, CLOSED)) {
+                resetWindow();
+                log.info("熔断器恢复: {}", name);
+            }
+            return;
+        }
+        if (current != CLOSED) {
+            // 打开前发出的请求，结果不再统计
+            return;
+        }
+        long now = System.currentTimeMillis();
+        Bucket bucket = currentBucket(now);
+        bucket.total.increment();
+        if (failed) {
+            bucket.failed.increment();
+        }
+        if (slow) {
+            bucket.slow.increment();
+        }
+        checkThreshold(now);
+    }
+
+    /**
+     * 是否处于打开状态
+     *
+     * @return
+     */
+    public boolean isOpen() {
+        return state.get() == OPEN;
+    }
+
+    private void checkThreshold(long now) {
+        long total = 0;
+        long failed = 0;
+        long slow = 0;
+        long windowStart = now / 1000 - buckets.length() + 1;
+        for (int i = 0; i < buckets.length(); i++) {
+            Bucket bucket = buckets.get(i);
+            if (bucket != null && bucket.second >= windowStart) {
+                total += bucket.total.sum();
+                failed += bucket.failed.sum();
+                slow += bucket.slow.sum();
+            }
+        }
+        if (total < config.getMinimumCalls()) {
+            return;
+        }
+        if (failed * 100 >= total * config.getFailureRateThreshold()
+                || slow * 100 >= total * config.getSlowCallRateThreshold()) {
+            open(CLOSED);
+        }
+    }
+
+    private void open(int expect) {
+        halfOpenPermits.set(0);
+        openedAt = System.currentTimeMillis();
+        if (state.compareAndSet(expect, OPEN)) {
+            log.warn("熔断器打开: {}，{} 毫秒内不再调用该节点", name, config.getOpenDuration());
+        }
+    }
+
+    private Bucket currentBucket(long now) {
+        long second = now / 1000;
+        int index = (int) (second % buckets.length());
+        while (true) {
+            Bucket bucket = buckets.get(index);
+            if (bucket != null && bucket.second == second) {
+                return bucket;
+            }
+            // 桶已过期，整体替换
+            Bucket newBucket = new Bucket(second);
+            if (buckets.compareAndSet(index, bucket, newBucket)) {
+                return newBucket;
+            }
+        }
+    }
+
+    private void resetWindow() {
+        for (int i = 0; i < buckets.length(); i++) {
+            buckets.set(i, null);
+        }
+    }
+
+    /**
+     * 一秒内的调用统计
+     */
+    private static final class Bucket {
+
+        private final long second;
+
+        private final LongAdder total = new LongAdder();
+
+        private final LongAdder failed = new LongAdder();
+
+        private final LongAdder slow = new LongAdder();
+
+        private Bucket(long second) {
+            this.second = second;
+        }
+    }
+}
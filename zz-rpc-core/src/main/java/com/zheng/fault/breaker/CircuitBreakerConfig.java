@@ -0,0 +1,50 @@
+package com.zheng.fault.breaker;
+
+import lombok.Data;
+
+/**
+ * 熔断器配置
+ */
+@Data
+public class CircuitBreakerConfig {
+
+    /**
+     * 是否启用熔断
+     */
+    private boolean enable = false;
+
+    /**
+     * 滑动窗口时长（秒），窗口按秒分桶
+     */
+    private int windowSeconds = 10;
+
+    /**
+     * 窗口内最少调用次数，不足时不计算比例，避免少量请求误触发熔断
+     */
+    private int minimumCalls = 20;
+
+    /**
+     * 失败率阈值（百分比），达到后熔断
+     */
+    private int failureRateThreshold = 50;
+
+    /**
+     * 慢调用耗时阈值（毫秒）
+     */
+    private long slowCallDuration = 1000L;
+
+    /**
+     * 慢调用率阈值（百分比），达到后熔断
+     */
+    private int slowCallRateThreshold = 100;
+
+    /**
+     * 熔断持续时间（毫秒），之后进入半开状态放行探测请求
+     */
+    private long openDuration = 5000L;
+
+    /**
+     * 半开状态放行的探测请求数，全部成功后恢复
+     */
+    private int halfOpenCalls = 3;
+}
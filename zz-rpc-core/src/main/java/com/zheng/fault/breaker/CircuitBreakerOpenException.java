@@ -0,0 +1,11 @@
+package com.zheng.fault.breaker;
+
+/**
+ * 熔断器打开，请求未发出
+ */
+public class CircuitBreakerOpenException extends RuntimeException {
+
+    public CircuitBreakerOpenException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,50 @@
+package com.zheng.fault.hedge;
+
+import lombok.Data;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 对冲请求配置
+ * 只应对幂等的读方法开启：对冲请求会在两个节点上各执行一次
+ */
+@Data
+public class HedgingConfig {
+
+    /**
+     * 开启对冲的方法，元素为 方法名 或 服务名.方法名
+     */
+    private List<String> methods = new ArrayList<>();
+
+    /**
+     * 对冲延迟取该方法响应时间的百分位（如 95 表示 p95），首个请求超过该时间未返回才发出对冲请求
+     */
+    private int delayPercentile = 95;
+
+    /**
+     * 样本不足时使用的对冲延迟（毫秒）
+     */
+    private long defaultDelay = 50L;
+
+    /**
+     * 对冲延迟下限（毫秒）
+     */
+    private long minDelay = 1L;
+
+    /**
+     * 对冲请求数占调用总数的上限（百分比）
+     */
+    private int budgetPercent = 10;
+
+    /**
+     * 方法是否开启对冲
+     *
+     * @param serviceName 服务名
+     * @param methodName  方法名
+     * @return
+     */
+    public boolean isHedged(String serviceName, String methodName) {
+        return !methods.isEmpty() && (methods.contains(methodName) || methods.contains(serviceName + "." + methodName));
+    }
+}
@@ -0,0 +1,193 @@
+package com.zheng.fault.hedge;
+
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 对冲请求策略（按方法）
+ * 记录方法的响应时间分布，取配置的百分位作为对冲延迟；
+ * 对冲请求受全局预算限制：每次调用存入 budgetPercent / 100 个令牌，每次对冲消耗 1 个，避免对冲放大流量
+ */
+public class HedgingPolicy {
+
+    /**
+     * 方法键名 => 对冲策略
+     */
+    private static final Map<String, HedgingPolicy> POLICY_MAP = new ConcurrentHashMap<>();
+
+    /**
+     * 对冲预算（单位为 1/100 个令牌）
+     */
+    private static final AtomicLong BUDGET = new AtomicLong();
+
+    /**
+     * 对冲预算上限（单位为 1/100 个令牌），即最多允许连续对冲 10 次
+     */
+    private static final long MAX_BUDGET = 10 * 100;
+
+    /**
+     * 响应时间分桶：第 i 个桶的上界为 MIN_BUCKET_NANOS * BUCKET_FACTOR^i
+     */
+    private static final long MIN_BUCKET_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+
+    private static final double BUCKET_FACTOR = 1.2;
+
+    private static final int BUCKET_COUNT = 80;
+
+    /**
+     * 计算百分位所需的最少样本数
+     */
+    private static final long MIN_SAMPLES = 20;
+
+    /**
+     * 样本数超过该值时所有桶减半，使分布跟随近期的响应时间
+     */
+    private static final long DECAY_SAMPLES = 2000;
+
+    private final HedgingConfig config;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT);
+
+    private final AtomicLong sampleCount = new AtomicLong();
+
+    public HedgingPolicy(HedgingConfig config) {
+        this.config = config;
+    }
+
+    /**
+     * 获取方法的对冲策略
+     *
+     * @param config    对冲配置
+     * @param methodKey  方法键名（服务名.方法名）
+     * @return
+     */
+    public static HedgingPolicy getInstance(HedgingConfig config, String methodKey) {
+        return POLICY_MAP.computeIfAbsent(methodKey, key -> new HedgingPolicy(config));
+    }
+
+    /**
+     * 记录一次调用，存入对冲预算
+     */
+    public void onRequest() {
+        BUDGET.updateAndGet(budget -> Math.min(MAX_BUDGET, budget + config.getBudgetPercent()));
+    }
+
+    /**
+     * 申请一次对冲
+     *
+     * @return 预算不足时返回 false
+     */
+    public boolean tryAcquireHedge() {
+        while (true) {
+            long budget = BUDGET.get();
+            if (budget < 100) {
+                return false;
+            }
+            if (BUDGET.compareAndSet(budget, budget - 100)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * 跟踪一次请求（首个请求或对冲请求），结束时记录耗时
+     * 成功时为真实响应时间；被取消（对冲中较慢的一方）或超时的请求真实响应时间只会更长，
+     * 以已等待的时间作为下界记录，避免分布只包含快的请求而把对冲延迟估得过低。
+     * 其他失败通常很快返回，不代表响应时间，不记录
+     *
+     * @param future 请求的 future，需在发出请求时调用
+     */
+    public void track(CompletableFuture<?> future) {
+        long start = System.nanoTime();
+        future.whenComplete((value, e) -> {
+            Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+            if (cause == null || cause instanceof CancellationException || cause instanceof TimeoutException) {
+                recordLatency(System.nanoTime() - start);
+            }
+        });
+    }
+
+    /**
+     * 记录响应时间
+     *
+     * @param elapsed 响应时间（纳秒）
+     */
+    public void recordLatency(long elapsed) {
+        int index = 0;
+        double bound = MIN_BUCKET_NANOS;
+        while (index < BUCKET_COUNT - 1 && elapsed > bound) {
+            bound *= BUCKET_FACTOR;
+            index++;
+        }
+        buckets.incrementAndGet(index);
+        if (sampleCount.incrementAndGet() > DECAY_SAMPLES) {
+            // 衰减（并发下为近似值，不影响百分位估计）
+            long total = 0;
+            for (int i = 0; i < BUCKET_COUNT; i++) {
+                long count = buckets.get(i);
+                long halved = count / 2;
+                buckets.addAndGet(i, halved - count);
+                total += halved;
+            }
+            sampleCount.set(total);
+        }
+    }
+
+    /**
+     * 当前的对冲延迟
+     *
+     * @return 毫秒
+     */
+    public long getDelayMillis() {
+        long total = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            total += buckets.get(i);
+        }
+        if (total < MIN_SAMPLES) {
+            return config.getDefaultDelay();
+        }
+        long target = (long) Math.ceil(total * config.getDelayPercentile() / 100.0);
+        long seen = 0;
+        double bound = MIN_BUCKET_NANOS;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += buckets.get(i);
+            if (seen >= target) {
+                break;
+            }
+            bound *= BUCKET_FACTOR;
+        }
+        return Math.max(config.getMinDelay(), TimeUnit.NANOSECONDS.toMillis((long) bound));
+    }
+
+    /**
+     * 返回两个请求中先成功的结果，都失败时以后失败的异常结束
+     *
+     * @param first
+     * @param second
+     * @param <T>
+     * @return
+     */
+    public static <T> CompletableFuture<T> firstSuccessful(CompletableFuture<T> first, CompletableFuture<T> second) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        AtomicInteger failures = new AtomicInteger();
+        first.whenComplete((value, e) -> complete(result, failures, value, e));
+        second.whenComplete((value, e) -> complete(result, failures, value, e));
+        return result;
+    }
+
+    private static <T> void complete(CompletableFuture<T> result, AtomicInteger failures, T value, Throwable e) {
+        if (e == null) {
+            result.complete(value);
+        } else if (failures.incrementAndGet() == 2) {
+            result.completeExceptionally(e);
+        }
+    }
+}
@@ -0,0 +1,11 @@
+package com.zheng.fault.retry;
+
+/**
+ * 调用已超过截止时间（整个调用的超时预算已用完，请求未发出），不再重试
+ */
+public class DeadlineExceededException extends RuntimeException {
+
+    public DeadlineExceededException(String message) {
+        super(message);
+    }
+}
@@ -3,22 +3,40 @@ package com.zheng.fault.retry;
 import com.github.rholder.retry.*;
 import com.zheng.model.RpcResponse;
 import lombok.extern.slf4j.Slf4j;
-import lombok.val;
 
 import java.util.concurrent.Callable;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Supplier;
 
 /**
  * 指数退避 - 重试策略
+ * 使用全抖动（full jitter）：第 n 次重试在 [0, min(上限, 基准 * 2^(n-1))] 内随机等待；重试受 {@link RetryBudget} 限制
  */
 @Slf4j
 public class ExponentialBackoffStrategy implements RetryStrategy{
+
+    /**
+     * 退避基准（毫秒）
+     */
+    private static final long BASE = 100L;
+
+    /**
+     * 退避上限（毫秒）
+     */
+    private static final long CAP = 5000L;
+
+    /**
+     * 最多调用次数（含首次）
+     */
+    private static final int MAX_ATTEMPTS = 3;
+
     @Override
     public RpcResponse doRetry(Callable<RpcResponse> callable) throws Exception {
         Retryer<RpcResponse> retryer = RetryerBuilder.<RpcResponse>newBuilder()
                 .retryIfExceptionOfType(Exception.class)
-                .withWaitStrategy(WaitStrategies.exponentialWait(120000L, TimeUnit.MILLISECONDS))
-                .withStopStrategy(StopStrategies.stopAfterAttempt(3))
+                .withWaitStrategy(attempt -> backoff((int) attempt.getAttemptNumber()))
+                .withStopStrategy(attempt -> attempt.getAttemptNumber() >= MAX_ATTEMPTS || !RetryBudget.tryWithdraw())
                 .withRetryListener(new RetryListener() {
                     @Override
                     public <V> void onRetry(Attempt<V> attempt) {
@@ -28,6 +46,26 @@ public class ExponentialBackoffStrategy implements RetryStrategy{
                 })
                 .build();
 
-        return retryer.call(callable);
+        return retryer.call(() -> {
+            RpcResponse rpcResponse = callable.call();
+            RetryBudget.deposit();
+            return rpcResponse;
+        });
+    }
+
+    @Override
+    public CompletableFuture<RpcResponse> doRetryAsync(Supplier<CompletableFuture<RpcResponse>> supplier) {
+        return RetryScheduler.execute(supplier, MAX_ATTEMPTS, ExponentialBackoffStrategy::backoff);
+    }
+
+    /**
+     * 第 attempt 次失败后的等待时间
+     *
+     * @param attempt
+     * @return 毫秒
+     */
+    private static long backoff(int attempt) {
+        long ceiling = Math.min(CAP, BASE << Math.min(attempt - 1, 20));
+        return ThreadLocalRandom.current().nextLong(ceiling + 1);
     }
 }
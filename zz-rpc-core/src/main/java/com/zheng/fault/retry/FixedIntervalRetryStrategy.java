@@ -6,15 +6,32 @@ import lombok.extern.slf4j.Slf4j;
 
 
 import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
-import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
 
 /**
  * 固定时间间隔 - 重试策略
+ * 间隔加入 ±20% 的随机抖动，避免大量调用方同时重试；重试受 {@link RetryBudget} 限制
  */
 @Slf4j
 public class FixedIntervalRetryStrategy implements RetryStrategy {
 
+    /**
+     * 重试间隔（毫秒）
+     */
+    private static final long INTERVAL = 3000L;
+
+    /**
+     * 抖动比例
+     */
+    private static final double JITTER = 0.2;
+
+    /**
+     * 最多调用次数（含首次）
+     */
+    private static final int MAX_ATTEMPTS = 3;
+
     /**
      * 重试
      *
@@ -27,10 +44,10 @@ public class FixedIntervalRetryStrategy implements RetryStrategy {
         Retryer<RpcResponse> retryer = RetryerBuilder.<RpcResponse>newBuilder()
                 // 指定出现Exception异常重试
                 .retryIfExceptionOfType(Exception.class)
-                // 选择fixedWait固定时间间隔策略
-                .withWaitStrategy(WaitStrategies.fixedWait(3L, TimeUnit.SECONDS))
-                // 重试次数
-                .withStopStrategy(StopStrategies.stopAfterAttempt(3))
+                // 固定时间间隔加抖动
+                .withWaitStrategy(attempt -> RetryScheduler.jitter(INTERVAL, JITTER))
+                // 重试次数，预算不足时提前停止
+                .withStopStrategy(attempt -> attempt.getAttemptNumber() >= MAX_ATTEMPTS || !RetryBudget.tryWithdraw())
                 // 重试工作
                 .withRetryListener(new RetryListener() {
                     @Override
@@ -39,7 +56,16 @@ public class FixedIntervalRetryStrategy implements RetryStrategy {
                     }
                 })
                 .build();
-        return retryer.call(callable);
+        return retryer.call(() -> {
+            RpcResponse rpcResponse = callable.call();
+            RetryBudget.deposit();
+            return rpcResponse;
+        });
+    }
+
+    @Override
+    public CompletableFuture<RpcResponse> doRetryAsync(Supplier<CompletableFuture<RpcResponse>> supplier) {
+        return RetryScheduler.execute(supplier, MAX_ATTEMPTS, attempt -> RetryScheduler.jitter(INTERVAL, JITTER));
     }
 
 }
@@ -4,6 +4,8 @@ import com.zheng.model.RpcResponse;
 import lombok.extern.slf4j.Slf4j;
 
 import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
 
 /**
  * 不重试 - 重试策略
@@ -22,4 +24,9 @@ public class NoRetryStrategy implements RetryStrategy {
         return callable.call();
     }
 
+    @Override
+    public CompletableFuture<RpcResponse> doRetryAsync(Supplier<CompletableFuture<RpcResponse>> supplier) {
+        return supplier.get();
+    }
+
 }
@@ -0,0 +1,78 @@
+package com.zheng.fault.retry;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 重试预算（进程级令牌桶）
+ * 每次调用成功存入 RETRY_PERCENT / 100 个令牌，每次重试消耗 1 个，另外每秒补充 1 个保证低流量时也能重试；
+ * 提供者大面积故障时成功调用变少，重试随之被限制在成功调用的一定比例内，不会形成重试风暴
+ */
+public class RetryBudget {
+
+    /**
+     * 重试数占成功调用数的比例（百分比）
+     */
+    private static final long RETRY_PERCENT = 20;
+
+    /**
+     * 令牌单位，余额以 1/100 个令牌计
+     */
+    private static final long TOKEN = 100;
+
+    /**
+     * 桶容量
+     */
+    private static final long MAX_BALANCE = 100 * TOKEN;
+
+    /**
+     * 初始余额
+     */
+    private static final long INITIAL_BALANCE = 10 * TOKEN;
+
+    /**
+     * 每秒补充的令牌
+     */
+    private static final long REFILL_PER_SECOND = TOKEN;
+
+    private static final AtomicLong BALANCE = new AtomicLong(INITIAL_BALANCE);
+
+    private static final AtomicLong LAST_REFILL_MILLIS = new AtomicLong(System.currentTimeMillis());
+
+    /**
+     * 记录一次成功调用
+     */
+    public static void deposit() {
+        add(RETRY_PERCENT);
+    }
+
+    /**
+     * 申请一次重试
+     *
+     * @return 预算不足时返回 false
+     */
+    public static boolean tryWithdraw() {
+        refill();
+        while (true) {
+            long balance = BALANCE.get();
+            if (balance < TOKEN) {
+                return false;
+            }
+            if (BALANCE.compareAndSet(balance, balance - TOKEN)) {
+                return true;
+            }
+        }
+    }
+
+    private static void refill() {
+        long now = System.currentTimeMillis();
+        long last = LAST_REFILL_MILLIS.get();
+        long seconds = (now - last) / 1000;
+        if (seconds > 0 && LAST_REFILL_MILLIS.compareAndSet(last, last + seconds * 1000)) {
+            add(seconds * REFILL_PER_SECOND);
+        }
+    }
+
+    private static void add(long amount) {
+        BALANCE.updateAndGet(balance -> Math.min(MAX_BALANCE, balance + amount));
+    }
+}
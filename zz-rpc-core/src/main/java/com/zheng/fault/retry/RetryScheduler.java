@@ -0,0 +1,122 @@
+package com.zheng.fault.retry;
+
+import com.zheng.model.RpcResponse;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntToLongFunction;
+import java.util.function.Supplier;
+
+/**
+ * 异步重试调度器
+ * 重试在共享的定时器上调度，等待期间不占用调用线程，到期后在工作线程池中发起调用；每次重试都要申请 {@link RetryBudget}
+ */
+@Slf4j
+public class RetryScheduler {
+
+    /**
+     * 共享定时器，只负责触发，任务交给 {@link #WORKER} 执行
+     */
+    private static final ScheduledExecutorService TIMER = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "rpc-retry-timer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * 执行重试和对冲调用（服务发现、负载均衡、序列化等），避免一个慢调用拖住其他到期的任务
+     */
+    private static final ExecutorService WORKER;
+
+    static {
+        AtomicInteger threadIndex = new AtomicInteger();
+        WORKER = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "rpc-retry-worker-" + threadIndex.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * 延迟执行，到期后在工作线程池中执行
+     *
+     * @param task
+     * @param delayMillis
+     * @return
+     */
+    public static ScheduledFuture<?> schedule(Runnable task, long delayMillis) {
+        return TIMER.schedule(() -> WORKER.execute(task), delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 异步执行并在失败时重试
+     *
+     * @param supplier    发起一次调用
+     * @param maxAttempts 最多调用次数（含首次）
+     * @param backoff     第 n 次失败后的等待时间（毫秒）
+     * @return
+     */
+    public static CompletableFuture<RpcResponse> execute(Supplier<CompletableFuture<RpcResponse>> supplier,
+                                                         int maxAttempts, IntToLongFunction backoff) {
+        CompletableFuture<RpcResponse> result = new CompletableFuture<>();
+        attempt(supplier, 1, maxAttempts, backoff, result);
+        return result;
+    }
+
+    /**
+     * 在 [base * (1 - jitter), base * (1 + jitter)] 内随机取值
+     *
+     * @param base   基准值
+     * @param jitter 抖动比例
+     * @return
+     */
+    public static long jitter(long base, double jitter) {
+        double factor = 1 + (ThreadLocalRandom.current().nextDouble() * 2 - 1) * jitter;
+        return Math.max(0, (long) (base * factor));
+    }
+
+    private static void attempt(Supplier<CompletableFuture<RpcResponse>> supplier, int attempt, int maxAttempts,
+                                IntToLongFunction backoff, CompletableFuture<RpcResponse> result) {
+        if (result.isDone()) {
+            // 调用方已取消
+            return;
+        }
+        CompletableFuture<RpcResponse> future;
+        try {
+            future = supplier.get();
+        } catch (RuntimeException e) {
+            future = CompletableFuture.failedFuture(e);
+        }
+        future.whenComplete((rpcResponse, e) -> {
+            if (e == null) {
+                RetryBudget.deposit();
+                result.complete(rpcResponse);
+                return;
+            }
+            Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+            // 被取消或整个调用已超时，不再重试
+            if (cause instanceof CancellationException || cause instanceof DeadlineExceededException
+                    || attempt >= maxAttempts || result.isDone()) {
+                result.completeExceptionally(cause);
+                return;
+            }
+            if (!RetryBudget.tryWithdraw()) {
+                log.warn("重试预算不足，放弃重试");
+                result.completeExceptionally(cause);
+                return;
+            }
+            long delay = backoff.applyAsLong(attempt);
+            log.info("重试次数 {}，{} 毫秒后重试", attempt, delay);
+            schedule(() -> attempt(supplier, attempt + 1, maxAttempts, backoff, result), delay);
+        });
+    }
+}
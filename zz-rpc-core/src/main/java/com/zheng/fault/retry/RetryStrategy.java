@@ -2,8 +2,11 @@ package com.zheng.fault.retry;
 
 
 import com.zheng.model.RpcResponse;
+import com.zheng.proxy.InvocationContext;
 
 import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
 
 /**
  * 重试策略
@@ -19,4 +22,19 @@ public interface RetryStrategy {
      * @throws Exception
      */
     RpcResponse doRetry(Callable<RpcResponse> callable) throws Exception;
+
+    /**
+     * 异步重试，等待期间不占用线程
+     * 默认在当前线程同步重试，兼容只实现了 {@link #doRetry(Callable)} 的策略
+     *
+     * @param supplier 发起一次调用
+     * @return
+     */
+    default CompletableFuture<RpcResponse> doRetryAsync(Supplier<CompletableFuture<RpcResponse>> supplier) {
+        try {
+            return CompletableFuture.completedFuture(doRetry(() -> InvocationContext.getResponse(supplier.get())));
+        } catch (Exception e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
 }
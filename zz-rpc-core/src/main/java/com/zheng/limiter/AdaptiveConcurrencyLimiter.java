@@ -0,0 +1,164 @@
+package com.zheng.limiter;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 自适应并发限制器（消费端，按服务提供者地址隔离）
+ * 参考 TCP Vegas 拥塞控制：用最小响应时间估计无排队时的延迟，
+ * 根据 limit * (1 - minRtt / rtt) 估算提供者一侧的排队长度，排队少时放大并发上限，排队多或超时时缩小，
+ * 达到上限的请求直接拒绝，避免提供者变慢时请求在其上无限堆积
+ */
+public class AdaptiveConcurrencyLimiter {
+
+    /**
+     * 初始并发上限
+     */
+    private static final int INITIAL_LIMIT = 20;
+
+    /**
+     * 最小并发上限
+     */
+    private static final int MIN_LIMIT = 1;
+
+    /**
+     * 最大并发上限
+     */
+    private static final int MAX_LIMIT = 1000;
+
+    /**
+     * 最小响应时间的重新探测周期（采样次数），避免网络变化后一直用过时的最小值
+     */
+    private static final int PROBE_INTERVAL = 1000;
+
+    /**
+     * 服务地址 => 限制器
+     */
+    private static final Map<String, AdaptiveConcurrencyLimiter> LIMITER_MAP = new ConcurrentHashMap<>();
+
+    /**
+     * 在途请求数
+     */
+    private final AtomicInteger inflight = new AtomicInteger();
+
+    /**
+     * 当前并发上限（估计值）
+     */
+    private volatile double estimatedLimit = INITIAL_LIMIT;
+
+    /**
+     * 无排队时的响应时间（纳秒）
+     */
+    private long minRtt;
+
+    /**
+     * 距上次重新探测最小响应时间的采样次数
+     */
+    private int sampleCount;
+
+    /**
+     * 获取服务地址对应的限制器
+     *
+     * @param serviceAddress 服务地址
+     * @return
+     */
+    public static AdaptiveConcurrencyLimiter getInstance(String serviceAddress) {
+        return LIMITER_MAP.computeIfAbsent(serviceAddress, key -> new AdaptiveConcurrencyLimiter());
+    }
+
+    /**
+     * 尝试占用一个并发名额，成功后必须调用 {@link #release(long, int, boolean)}
+     *
+     * @return 是否成功
+     */
+    public boolean tryAcquire() {
+        while (true) {
+            int current = inflight.get();
+            if (current >= getLimit()) {
+                return false;
+            }
+            if (inflight.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * 释放名额并根据本次请求的结果调整上限
+     *
+     * @param rtt           响应时间（纳秒）
+     * @param startInflight 请求发出时的在途请求数
+     * @param dropped       是否超时或连接失败（过载信号）
+     */
+    public void release(long rtt, int startInflight, boolean dropped) {
+        inflight.decrementAndGet();
+        onSample(rtt, startInflight, dropped);
+    }
+
+    /**
+     * 释放名额，不调整上限（请求被调用方取消等无法说明提供者状态的情况）
+     */
+    public void ignore() {
+        inflight.decrementAndGet();
+    }
+
+    /**
+     * 当前在途请求数
+     *
+     * @return
+     */
+    public int getInflight() {
+        return inflight.get();
+    }
+
+    /**
+     * 当前并发上限
+     *
+     * @return
+     */
+    public int getLimit() {
+        return (int) estimatedLimit;
+    }
+
+    private synchronized void onSample(long rtt, int startInflight, boolean dropped) {
+        double limit = estimatedLimit;
+        double log = Math.max(1, Math.log10(limit));
+        if (dropped) {
+            // 超时或连接失败，直接缩小上限
+            setLimit(limit - log);
+            return;
+        }
+        if (rtt <= 0) {
+            return;
+        }
+        if (++sampleCount >= PROBE_INTERVAL) {
+            // 定期重置最小响应时间，重新探测
+            sampleCount = 0;
+            minRtt = rtt;
+            return;
+        }
+        if (minRtt == 0 || rtt < minRtt) {
+            minRtt = rtt;
+            return;
+        }
+        // 请求远未达到上限时，响应时间无法说明上限是否合适
+        if (startInflight * 2 < limit) {
+            return;
+        }
+        int queueSize = (int) Math.ceil(limit * (1 - (double) minRtt / rtt));
+        double alpha = 3 * log;
+        double beta = 6 * log;
+        if (queueSize <= log) {
+            setLimit(limit + beta);
+        } else if (queueSize < alpha) {
+            setLimit(limit + log);
+        } else if (queueSize > beta) {
+            setLimit(limit - log);
+        }
+    }
+
+    private void setLimit(double limit) {
+        estimatedLimit = Math.max(MIN_LIMIT, Math.min(MAX_LIMIT, limit));
+    }
+}
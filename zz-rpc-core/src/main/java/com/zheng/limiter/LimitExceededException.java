@@ -0,0 +1,11 @@
+package com.zheng.limiter;
+
+/**
+ * 并发数超过限制（快速失败，请求未发出）
+ */
+public class LimitExceededException extends RuntimeException {
+
+    public LimitExceededException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,11 @@
+package com.zheng.limiter;
+
+/**
+ * 服务提供者过载，请求被服务端拒绝（未执行，可以安全地换节点重试）
+ */
+public class OverloadedException extends RuntimeException {
+
+    public OverloadedException(String message) {
+        super(message);
+    }
+}
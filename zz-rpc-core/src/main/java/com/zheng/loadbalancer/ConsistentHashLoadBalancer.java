@@ -1,78 +1,344 @@
 package com.zheng.loadbalancer;
 
+import cn.hutool.core.lang.hash.MurmurHash;
+import cn.hutool.core.util.StrUtil;
+import com.zheng.RpcApplication;
 import com.zheng.model.ServiceMetaInfo;
 
-import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.TreeMap;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * 一致性哈希负载均衡器
+ * 哈希环是不可变的有序 long 数组，按服务键名各自维护，只有服务列表变化时才重建并整体替换，查找用二分，读无锁；
+ * 重试、对冲等传入的候选子列表沿用完整的环，跳过不在子列表中的节点，不替换缓存的环；
+ * 请求按配置的参数下标（hashArguments）取哈希，相同参数的请求落到同一节点
  */
 public class ConsistentHashLoadBalancer implements LoadBalancer {
 
     /**
-     * 一致性 Hash 环，存放虚拟节点
+     * 虚拟节点数
      */
-    private final TreeMap<Integer, ServiceMetaInfo> virtualNodes = new TreeMap<>();
+    private static final int VIRTUAL_NODE_NUM = 160;
 
     /**
-     * 虚拟节点数
+     * 哈希环，服务键名 => 哈希环
      */
-    private static final int VIRTUAL_NODE_NUM = 100;
+    private final Map<String, HashRing> ringMap = new ConcurrentHashMap<>();
 
     /**
-     * 上一次的服务列表
+     * 类是否重写了 Object 的 toString
      */
-    private List<ServiceMetaInfo> lastServiceList = new ArrayList<>();
+    private static final ClassValue<Boolean> HAS_STABLE_TO_STRING = new ClassValue<Boolean>() {
+        @Override
+        protected Boolean computeValue(Class<?> type) {
+            try {
+                return type.getMethod("toString").getDeclaringClass() != Object.class;
+            } catch (NoSuchMethodException e) {
+                return false;
+            }
+        }
+    };
+
+    /**
+     * 解析后的参数下标配置
+     */
+    private volatile HashArguments hashArgumentsCache;
 
     @Override
     public ServiceMetaInfo select(Map<String, Object> requestParams, List<ServiceMetaInfo> serviceMetaInfoList) {
         if (serviceMetaInfoList.isEmpty()) {
             return null;
         }
+        // 只有一个服务，直接返回
+        if (serviceMetaInfoList.size() == 1) {
+            return serviceMetaInfoList.get(0);
+        }
 
-        // 只有服务列表发生变化才重构哈希环
-        if(!serviceMetaInfoList.equals(lastServiceList)){
-            buildVirtualNodes(serviceMetaInfoList);
-            lastServiceList = new ArrayList<>(serviceMetaInfoList);
+        Object serviceKey = requestParams.get("serviceKey");
+        String ringKey = serviceKey == null ? serviceMetaInfoList.get(0).getServiceKey() : serviceKey.toString();
+        long hash = hash(getHashKey(requestParams));
+        HashRing ring = ringMap.get(ringKey);
+        // 注册中心缓存未变化时返回的是同一个列表对象，直接使用
+        if (ring != null && ring.source == serviceMetaInfoList) {
+            return ring.select(hash);
+        }
+        long fingerprint = HashRing.fingerprint(serviceMetaInfoList);
+        if (ring != null && ring.fingerprint == fingerprint) {
+            // 节点不变但列表对象变了（如节点重新注册、元数据变化），复用哈希值，节点换成新列表中的对象
+            ring = ring.remap(serviceMetaInfoList);
+        } else if (ring != null && ring.containsAll(serviceMetaInfoList)) {
+            // 子列表（重试、对冲、熔断过滤后的候选），沿用完整的环并跳过不在列表中的节点，不替换缓存的环
+            return ring.select(hash, serviceMetaInfoList);
+        } else {
+            ring = HashRing.of(serviceMetaInfoList, fingerprint);
         }
+        ringMap.put(ringKey, ring);
+        return ring.select(hash);
+    }
 
-        // 获取调用请求的 hash 值
-        int hash = getHash(requestParams);
+    /**
+     * 获取请求的哈希键：按配置的参数下标拼接参数，没有参数时使用方法名
+     * 参与哈希的参数必须有基于内容的 toString（字符串、基本类型包装类、枚举或重写了 toString 的类），
+     * 数组按内容展开；使用 Object 默认 toString 的参数每次调用结果不同，直接报错
+     *
+     * @param requestParams
+     * @return
+     */
+    private String getHashKey(Map<String, Object> requestParams) {
+        Object methodName = requestParams.get("methodName");
+        Object[] args = (Object[]) requestParams.get("args");
+        if (args == null || args.length == 0) {
+            return String.valueOf(methodName);
+        }
+        StringBuilder hashKey = new StringBuilder();
+        for (int i : getHashArgumentIndexes()) {
+            if (i < args.length) {
+                appendArgument(hashKey, args[i]);
+            }
+        }
+        return hashKey.length() == 0 ? String.valueOf(methodName) : hashKey.toString();
+    }
 
-        // 选择最接近且大于等于调用请求 hash 值的虚拟节点
-        Map.Entry<Integer, ServiceMetaInfo> entry = virtualNodes.ceilingEntry(hash);
-        if (entry == null) {
-            // 如果没有大于等于调用请求 hash 值的虚拟节点，则返回环首部的节点
-            entry = virtualNodes.firstEntry();
+    private static void appendArgument(StringBuilder hashKey, Object arg) {
+        if (arg == null) {
+            hashKey.append("null");
+        } else if (arg.getClass().isArray()) {
+            hashKey.append(Arrays.deepToString(new Object[]{arg}));
+        } else if (HAS_STABLE_TO_STRING.get(arg.getClass())) {
+            hashKey.append(arg);
+        } else {
+            throw new IllegalArgumentException("一致性哈希参数必须重写 toString: " + arg.getClass().getName());
         }
-        return entry.getValue();
     }
 
     /**
-     * 重新构建虚拟节点环
-     * @param serviceMetaInfoList
+     * 获取参与哈希的参数下标，配置不变时复用上次的解析结果
+     *
+     * @return
      */
-    private void buildVirtualNodes(List<ServiceMetaInfo> serviceMetaInfoList){
-        // 构建虚拟节点环
-        virtualNodes.clear();
-        for (ServiceMetaInfo serviceMetaInfo : serviceMetaInfoList) {
-            for (int i = 0; i < VIRTUAL_NODE_NUM; i++) {
-                int hash = getHash(serviceMetaInfo.getServiceAddress() + "#" + i);
-                virtualNodes.put(hash, serviceMetaInfo);
-            }
+    private int[] getHashArgumentIndexes() {
+        String hashArguments = RpcApplication.getRpcConfig().getHashArguments();
+        HashArguments cached = hashArgumentsCache;
+        if (cached == null || !Objects.equals(cached.config, hashArguments)) {
+            cached = new HashArguments(hashArguments);
+            hashArgumentsCache = cached;
         }
+        return cached.indexes;
     }
 
     /**
-     * Hash 算法，可自行实现
+     * Hash 算法（MurmurHash3 64 位）
      *
      * @param key
      * @return
      */
-    private int getHash(Object key) {
-        return key.hashCode();
+    private static long hash(String key) {
+        return MurmurHash.hash64(key);
+    }
+
+    /**
+     * 参数下标配置及其解析结果
+     */
+    private static final class HashArguments {
+
+        private final String config;
+
+        private final int[] indexes;
+
+        /**
+         * 解析配置，下标非法时抛出异常
+         *
+         * @param config 逗号分隔的参数下标
+         */
+        private HashArguments(String config) {
+            List<String> parts = StrUtil.splitTrim(config, ',');
+            int[] indexes = new int[parts.size()];
+            for (int i = 0; i < indexes.length; i++) {
+                try {
+                    indexes[i] = Integer.parseInt(parts.get(i));
+                } catch (NumberFormatException e) {
+                    throw new IllegalArgumentException("一致性哈希参数下标配置非法: " + config, e);
+                }
+                if (indexes[i] < 0) {
+                    throw new IllegalArgumentException("一致性哈希参数下标配置非法: " + config);
+                }
+            }
+            this.config = config;
+            this.indexes = indexes;
+        }
+    }
+
+    /**
+     * 不可变哈希环
+     */
+    private static final class HashRing {
+
+        /**
+         * 构建该环的服务列表
+         */
+        private final List<ServiceMetaInfo> source;
+
+        /**
+         * 服务列表指纹，列表对象变了但内容没变时复用已有的环
+         */
+        private final long fingerprint;
+
+        /**
+         * 虚拟节点哈希值，升序
+         */
+        private final long[] hashes;
+
+        /**
+         * 虚拟节点对应的服务在 source 中的下标，与 hashes 一一对应
+         */
+        private final int[] owners;
+
+        /**
+         * 服务地址 => 在 source 中的下标
+         */
+        private final Map<String, Integer> indexMap;
+
+        private HashRing(List<ServiceMetaInfo> source, long fingerprint, long[] hashes, int[] owners) {
+            this.source = source;
+            this.fingerprint = fingerprint;
+            this.hashes = hashes;
+            this.owners = owners;
+            this.indexMap = indexMap(source);
+        }
+
+        /**
+         * 构建哈希环
+         *
+         * @param serviceMetaInfoList 服务列表
+         * @param fingerprint         服务列表指纹
+         * @return
+         */
+        private static HashRing of(List<ServiceMetaInfo> serviceMetaInfoList, long fingerprint) {
+            int size = serviceMetaInfoList.size() * VIRTUAL_NODE_NUM;
+            long[][] entries = new long[size][];
+            int n = 0;
+            for (int i = 0; i < serviceMetaInfoList.size(); i++) {
+                String address = serviceMetaInfoList.get(i).getServiceAddress();
+                for (int j = 0; j < VIRTUAL_NODE_NUM; j++) {
+                    entries[n++] = new long[]{hash(address + "#" + j), i};
+                }
+            }
+            Arrays.sort(entries, Comparator.comparingLong(entry -> entry[0]));
+            long[] hashes = new long[size];
+            int[] owners = new int[size];
+            for (int i = 0; i < size; i++) {
+                hashes[i] = entries[i][0];
+                owners[i] = (int) entries[i][1];
+            }
+            return new HashRing(serviceMetaInfoList, fingerprint, hashes, owners);
+        }
+
+        /**
+         * 节点地址不变时换成新的服务列表，虚拟节点按地址对应到新列表中的对象
+         *
+         * @param serviceMetaInfoList 地址与当前环相同的服务列表
+         * @return
+         */
+        private HashRing remap(List<ServiceMetaInfo> serviceMetaInfoList) {
+            Map<String, Integer> newIndexMap = indexMap(serviceMetaInfoList);
+            int[] newIndexes = new int[source.size()];
+            for (int i = 0; i < source.size(); i++) {
+                Integer newIndex = newIndexMap.get(source.get(i).getServiceAddress());
+                if (newIndex == null) {
+                    // 指纹碰撞，地址实际不同，重建
+                    return of(serviceMetaInfoList, fingerprint);
+                }
+                newIndexes[i] = newIndex;
+            }
+            int[] newOwners = new int[owners.length];
+            for (int i = 0; i < owners.length; i++) {
+                newOwners[i] = newIndexes[owners[i]];
+            }
+            return new HashRing(serviceMetaInfoList, fingerprint, hashes, newOwners);
+        }
+
+        /**
+         * 列表中的节点是否都在环上
+         *
+         * @param serviceMetaInfoList
+         * @return
+         */
+        private boolean containsAll(List<ServiceMetaInfo> serviceMetaInfoList) {
+            for (ServiceMetaInfo serviceMetaInfo : serviceMetaInfoList) {
+                if (!indexMap.containsKey(serviceMetaInfo.getServiceAddress())) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * 选择第一个大于等于请求 hash 值的虚拟节点，没有则回到环首部
+         *
+         * @param hash
+         * @return
+         */
+        private ServiceMetaInfo select(long hash) {
+            return source.get(owners[indexOf(hash)]);
+        }
+
+        /**
+         * 在子列表中选择：从请求 hash 值的位置顺时针找到第一个属于子列表的虚拟节点，
+         * 与去掉其他节点后重建的环结果相同
+         *
+         * @param hash
+         * @param serviceMetaInfoList 环上节点的子列表
+         * @return 子列表中的对象
+         */
+        private ServiceMetaInfo select(long hash, List<ServiceMetaInfo> serviceMetaInfoList) {
+            Map<String, ServiceMetaInfo> candidates = new HashMap<>(serviceMetaInfoList.size() * 2);
+            for (ServiceMetaInfo serviceMetaInfo : serviceMetaInfoList) {
+                candidates.put(serviceMetaInfo.getServiceAddress(), serviceMetaInfo);
+            }
+            int index = indexOf(hash);
+            for (int i = 0; i < hashes.length; i++) {
+                ServiceMetaInfo selected = candidates.get(source.get(owners[(index + i) % hashes.length]).getServiceAddress());
+                if (selected != null) {
+                    return selected;
+                }
+            }
+            return serviceMetaInfoList.get(0);
+        }
+
+        private int indexOf(long hash) {
+            int index = Arrays.binarySearch(hashes, hash);
+            if (index < 0) {
+                index = -index - 1;
+                if (index == hashes.length) {
+                    index = 0;
+                }
+            }
+            return index;
+        }
+
+        private static Map<String, Integer> indexMap(List<ServiceMetaInfo> serviceMetaInfoList) {
+            Map<String, Integer> indexMap = new HashMap<>(serviceMetaInfoList.size() * 2);
+            for (int i = 0; i < serviceMetaInfoList.size(); i++) {
+                indexMap.put(serviceMetaInfoList.get(i).getServiceAddress(), i);
+            }
+            return indexMap;
+        }
+
+        /**
+         * 与顺序无关的服务列表指纹
+         */
+        private static long fingerprint(List<ServiceMetaInfo> serviceMetaInfoList) {
+            long fingerprint = serviceMetaInfoList.size();
+            for (ServiceMetaInfo serviceMetaInfo : serviceMetaInfoList) {
+                fingerprint += hash(serviceMetaInfo.getServiceAddress());
+            }
+            return fingerprint;
+        }
     }
 }
@@ -1,24 +1,19 @@
 package com.zheng.loadbalancer;
 
 import com.zheng.model.ServiceMetaInfo;
+import com.zheng.utils.WeightUtils;
 
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.atomic.AtomicInteger;
-import java.util.stream.Collectors;
+import java.util.concurrent.ThreadLocalRandom;
 
 /**
  * 最少活跃数负载均衡器
+ * 在途请求数由调用链路通过 {@link RpcStatus} 维护，慢节点的在途请求会堆积，从而被分到更少的流量；
+ * 活跃数相同的节点之间按（预热后的）权重随机
  */
 public class LeastActiveLoadBalancer implements LoadBalancer {
 
-    /**
-     * 活跃请求数统计，key 为服务地址，value 为活跃请求数
-     */
-    private final Map<String, AtomicInteger> activeCountMap = new ConcurrentHashMap<>();
-
     @Override
     public ServiceMetaInfo select(Map<String, Object> requestParams, List<ServiceMetaInfo> serviceMetaInfoList) {
         if (serviceMetaInfoList.isEmpty()) {
@@ -26,83 +21,67 @@ public class LeastActiveLoadBalancer implements LoadBalancer {
         }
 
         // 只有一个服务，直接返回
-        if (serviceMetaInfoList.size() == 1) {
-            ServiceMetaInfo serviceMetaInfo = serviceMetaInfoList.get(0);
-            incrementActive(serviceMetaInfo);
-            return serviceMetaInfo;
+        int size = serviceMetaInfoList.size();
+        if (size == 1) {
+            return serviceMetaInfoList.get(0);
         }
 
-        // 找到活跃数最少的服务
-        ServiceMetaInfo leastActiveService = null;
+        Object methodName = requestParams == null ? null : requestParams.get("methodName");
+        long now = System.currentTimeMillis();
         int leastActive = Integer.MAX_VALUE;
+        // 活跃数最少的节点下标及个数
+        int[] leastIndexes = new int[size];
+        int leastCount = 0;
+        int[] weights = new int[size];
+        int totalWeight = 0;
+        boolean sameWeight = true;
 
-        for (ServiceMetaInfo serviceMetaInfo : serviceMetaInfoList) {
-            String serviceKey = getServiceKey(serviceMetaInfo);
-            int activeCount = activeCountMap.computeIfAbsent(serviceKey, k -> new AtomicInteger(0)).get();
-            
-            if (activeCount < leastActive) {
-                leastActive = activeCount;
-                leastActiveService = serviceMetaInfo;
+        for (int i = 0; i < size; i++) {
+            ServiceMetaInfo serviceMetaInfo = serviceMetaInfoList.get(i);
+            int active = getActive(serviceMetaInfo, methodName);
+            int weight = WeightUtils.getWarmupWeight(serviceMetaInfo, now);
+            weights[i] = weight;
+            if (active < leastActive) {
+                leastActive = active;
+                leastCount = 1;
+                leastIndexes[0] = i;
+                totalWeight = weight;
+                sameWeight = true;
+            } else if (active == leastActive) {
+                leastIndexes[leastCount++] = i;
+                totalWeight += weight;
+                if (weight != weights[leastIndexes[0]]) {
+                    sameWeight = false;
+                }
             }
         }
 
-        // 增加选中服务的活跃数
-        if (leastActiveService != null) {
-            incrementActive(leastActiveService);
+        if (leastCount == 1) {
+            return serviceMetaInfoList.get(leastIndexes[0]);
         }
-
-        return leastActiveService;
-    }
-
-    /**
-     * 增加活跃请求数
-     */
-    private void incrementActive(ServiceMetaInfo serviceMetaInfo) {
-        String serviceKey = getServiceKey(serviceMetaInfo);
-        activeCountMap.computeIfAbsent(serviceKey, k -> new AtomicInteger(0)).incrementAndGet();
-    }
-
-    /**
-     * 减少活跃请求数（请求完成后调用）
-     */
-    public void decrementActive(ServiceMetaInfo serviceMetaInfo) {
-        String serviceKey = getServiceKey(serviceMetaInfo);
-        AtomicInteger activeCount = activeCountMap.get(serviceKey);
-        if (activeCount != null) {
-            activeCount.decrementAndGet();
-            // 防止负数
-            if (activeCount.get() < 0) {
-                activeCount.set(0);
+        // 活跃数相同时按权重随机
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        if (!sameWeight && totalWeight > 0) {
+            int offset = random.nextInt(totalWeight);
+            for (int i = 0; i < leastCount; i++) {
+                int leastIndex = leastIndexes[i];
+                offset -= weights[leastIndex];
+                if (offset < 0) {
+                    return serviceMetaInfoList.get(leastIndex);
+                }
             }
         }
+        return serviceMetaInfoList.get(leastIndexes[random.nextInt(leastCount)]);
     }
 
     /**
-     * 获取服务唯一标识
-     */
-    private String getServiceKey(ServiceMetaInfo serviceMetaInfo) {
-        return serviceMetaInfo.getServiceAddress();
-    }
-
-    /**
-     * 获取服务活跃数（用于监控）
+     * 获取在途请求数，有方法名时按方法维度统计
      */
-    public int getActiveCount(ServiceMetaInfo serviceMetaInfo) {
-        String serviceKey = getServiceKey(serviceMetaInfo);
-        AtomicInteger activeCount = activeCountMap.get(serviceKey);
-        return activeCount != null ? activeCount.get() : 0;
-    }
-
-    /**
-     * 清理不存在的服务统计信息
-     */
-    public void cleanup(List<ServiceMetaInfo> currentServices) {
-        // 获取当前所有服务的 key
-        Set<String> currentServiceKeys = currentServices.stream()
-                .map(this::getServiceKey)
-                .collect(Collectors.toSet());
-        
-        // 移除不存在的服务统计
-        activeCountMap.entrySet().removeIf(entry -> !currentServiceKeys.contains(entry.getKey()));
+    private int getActive(ServiceMetaInfo serviceMetaInfo, Object methodName) {
+        String serviceAddress = serviceMetaInfo.getServiceAddress();
+        if (methodName == null) {
+            return RpcStatus.getStatus(serviceAddress).getActive();
+        }
+        return RpcStatus.getStatus(serviceAddress, serviceMetaInfo.getServiceKey(), methodName.toString()).getActive();
     }
-}
\ No newline at end of file
+}
@@ -14,4 +14,14 @@ public interface LoadBalancerKeys {
 
     String CONSISTENT_HASH = "consistentHash";
 
+    /**
+     * 最少活跃数
+     */
+    String LEAST_ACTIVE = "leastActive";
+
+    /**
+     * 响应时间感知（peak-EWMA）
+     */
+    String PEAK_EWMA = "peakEwma";
+
 }
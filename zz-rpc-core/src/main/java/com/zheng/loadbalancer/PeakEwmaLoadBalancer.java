@@ -0,0 +1,55 @@
+package com.zheng.loadbalancer;
+
+import com.zheng.model.ServiceMetaInfo;
+import com.zheng.utils.WeightUtils;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * 响应时间感知负载均衡器（peak-EWMA + 二选一）
+ * 节点代价 = 响应时间滑动平均 * (在途请求数 + 1) / 权重，随机取两个节点选代价较小的一个，
+ * 选择复杂度与节点数无关；变慢或堆积请求的节点会自动分到更少的流量
+ */
+public class PeakEwmaLoadBalancer implements LoadBalancer {
+
+    @Override
+    public ServiceMetaInfo select(Map<String, Object> requestParams, List<ServiceMetaInfo> serviceMetaInfoList) {
+        int size = serviceMetaInfoList.size();
+        if (size == 0) {
+            return null;
+        }
+        // 只有一个服务，直接返回
+        if (size == 1) {
+            return serviceMetaInfoList.get(0);
+        }
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int first = random.nextInt(size);
+        // 第二个节点与第一个不同
+        int second = random.nextInt(size - 1);
+        if (second >= first) {
+            second++;
+        }
+        ServiceMetaInfo firstServiceMetaInfo = serviceMetaInfoList.get(first);
+        ServiceMetaInfo secondServiceMetaInfo = serviceMetaInfoList.get(second);
+        long nanoTime = System.nanoTime();
+        long now = System.currentTimeMillis();
+        return getCost(firstServiceMetaInfo, nanoTime, now) <= getCost(secondServiceMetaInfo, nanoTime, now)
+                ? firstServiceMetaInfo : secondServiceMetaInfo;
+    }
+
+    /**
+     * 计算节点代价，尚无响应时间样本的节点只按在途请求数计算，便于新节点尽快获得样本
+     */
+    private double getCost(ServiceMetaInfo serviceMetaInfo, long nanoTime, long now) {
+        int weight = WeightUtils.getWarmupWeight(serviceMetaInfo, now);
+        if (weight <= 0) {
+            return Double.MAX_VALUE;
+        }
+        RpcStatus rpcStatus = RpcStatus.getStatus(serviceMetaInfo.getServiceAddress());
+        double ewma = rpcStatus.getEwma(nanoTime);
+        int active = Math.max(rpcStatus.getActive(), 0);
+        return (ewma == 0 ? active : ewma * (active + 1)) / weight;
+    }
+}
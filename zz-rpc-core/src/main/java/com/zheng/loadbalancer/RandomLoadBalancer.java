@@ -1,19 +1,18 @@
 package com.zheng.loadbalancer;
 
 import com.zheng.model.ServiceMetaInfo;
+import com.zheng.utils.WeightUtils;
+
 import java.util.List;
 import java.util.Map;
-import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
 
 /**
  * 随机负载均衡器
- *
-
+ * 节点权重不同（含预热中的节点）时按权重随机
  */
 public class RandomLoadBalancer implements LoadBalancer {
 
-    private final Random random = new Random();
-
     @Override
     public ServiceMetaInfo select(Map<String, Object> requestParams, List<ServiceMetaInfo> serviceMetaInfoList) {
         int size = serviceMetaInfoList.size();
@@ -24,6 +23,23 @@ public class RandomLoadBalancer implements LoadBalancer {
         if (size == 1) {
             return serviceMetaInfoList.get(0);
         }
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int[] weights = new int[size];
+        boolean sameWeight = WeightUtils.fillWarmupWeights(serviceMetaInfoList, weights, System.currentTimeMillis());
+        int totalWeight = 0;
+        for (int weight : weights) {
+            totalWeight += weight;
+        }
+        if (!sameWeight && totalWeight > 0) {
+            // 在总权重中随机取一个偏移量，落在哪个节点的区间就选哪个
+            int offset = random.nextInt(totalWeight);
+            for (int i = 0; i < size; i++) {
+                offset -= weights[i];
+                if (offset < 0) {
+                    return serviceMetaInfoList.get(i);
+                }
+            }
+        }
         return serviceMetaInfoList.get(random.nextInt(size));
     }
 }
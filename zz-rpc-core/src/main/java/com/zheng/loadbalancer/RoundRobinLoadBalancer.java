@@ -1,20 +1,35 @@
 package com.zheng.loadbalancer;
 import com.zheng.model.ServiceMetaInfo;
+import com.zheng.utils.WeightUtils;
 
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * 轮询负载均衡器
+ * 节点权重相同时按取模轮询；权重不同（含预热中的节点）时使用平滑加权轮询（nginx smooth weighted round-robin）
  */
 public class RoundRobinLoadBalancer implements LoadBalancer {
 
+    /**
+     * 节点状态超过该时长未被访问则回收（毫秒），节点下线后不会一直占用内存
+     */
+    private static final long RECYCLE_PERIOD = 60_000L;
+
     /**
      * 当前轮询的下标
      */
     private final AtomicInteger currentIndex = new AtomicInteger(0);
 
+    /**
+     * 平滑加权轮询状态，服务键名 => (服务地址 => 节点状态)
+     */
+    private final Map<String, Map<String, WeightedNode>> weightedNodeMap = new ConcurrentHashMap<>();
+
     @Override
     public ServiceMetaInfo select(Map<String, Object> requestParams, List<ServiceMetaInfo> serviceMetaInfoList) {
         if (serviceMetaInfoList.isEmpty()) {
@@ -25,8 +40,69 @@ public class RoundRobinLoadBalancer implements LoadBalancer {
         if (size == 1) {
             return serviceMetaInfoList.get(0);
         }
-        // 取模算法轮询
-        int index = currentIndex.getAndIncrement() % size;
-        return serviceMetaInfoList.get(index);
+        long now = System.currentTimeMillis();
+        int[] weights = new int[size];
+        if (WeightUtils.fillWarmupWeights(serviceMetaInfoList, weights, now)) {
+            // 权重相同，取模算法轮询
+            int index = (currentIndex.getAndIncrement() & Integer.MAX_VALUE) % size;
+            return serviceMetaInfoList.get(index);
+        }
+        return selectWeighted(serviceMetaInfoList, weights, now);
+    }
+
+    /**
+     * 平滑加权轮询
+     * 每次选择时所有节点的 current 加上自身权重，选出 current 最大的节点，再把它的 current 减去总权重
+     *
+     * @param serviceMetaInfoList
+     * @param weights
+     * @param now
+     * @return
+     */
+    private ServiceMetaInfo selectWeighted(List<ServiceMetaInfo> serviceMetaInfoList, int[] weights, long now) {
+        String serviceKey = serviceMetaInfoList.get(0).getServiceKey();
+        Map<String, WeightedNode> nodeMap = weightedNodeMap.computeIfAbsent(serviceKey, key -> new HashMap<>());
+        synchronized (nodeMap) {
+            long totalWeight = 0;
+            WeightedNode selectedNode = null;
+            ServiceMetaInfo selected = null;
+            for (int i = 0; i < weights.length; i++) {
+                ServiceMetaInfo serviceMetaInfo = serviceMetaInfoList.get(i);
+                WeightedNode node = nodeMap.computeIfAbsent(serviceMetaInfo.getServiceAddress(), key -> new WeightedNode());
+                node.lastUpdate = now;
+                node.current += weights[i];
+                totalWeight += weights[i];
+                if (selectedNode == null || node.current > selectedNode.current) {
+                    selectedNode = node;
+                    selected = serviceMetaInfo;
+                }
+            }
+            selectedNode.current -= totalWeight;
+            if (nodeMap.size() > weights.length) {
+                Iterator<WeightedNode> iterator = nodeMap.values().iterator();
+                while (iterator.hasNext()) {
+                    if (now - iterator.next().lastUpdate > RECYCLE_PERIOD) {
+                        iterator.remove();
+                    }
+                }
+            }
+            return selected;
+        }
+    }
+
+    /**
+     * 平滑加权轮询的节点状态
+     */
+    private static class WeightedNode {
+
+        /**
+         * 当前值
+         */
+        private long current;
+
+        /**
+         * 最近一次参与选择的时间
+         */
+        private long lastUpdate;
     }
 }
@@ -0,0 +1,292 @@
+package com.zheng.loadbalancer;
+
+import com.zheng.model.ServiceMetaInfo;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * 调用状态统计（消费端）
+ * 按服务提供者地址、地址 + 服务 + 方法两个维度统计在途请求数、调用次数、失败次数和耗时，
+ * 由调用链路在请求开始和结束时维护，供负载均衡器读取；节点从服务发现结果中消失后删除其统计
+ */
+public class RpcStatus {
+
+    /**
+     * 响应时间滑动平均的衰减时间常数（纳秒），越大越平滑
+     */
+    private static final double EWMA_DECAY_NANOS = TimeUnit.SECONDS.toNanos(10);
+
+    /**
+     * 失败请求计入滑动平均的最小响应时间（纳秒），避免快速失败的节点看起来“很快”而吸走流量
+     */
+    private static final long FAILURE_PENALTY_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    /**
+     * 服务地址 => 调用状态
+     */
+    private static final Map<String, RpcStatus> SERVICE_STATUS_MAP = new ConcurrentHashMap<>();
+
+    /**
+     * 服务地址 => (服务键名 => (方法名 => 调用状态))
+     */
+    private static final Map<String, Map<String, Map<String, RpcStatus>>> METHOD_STATUS_MAP = new ConcurrentHashMap<>();
+
+    /**
+     * 服务键名 => 最近一次服务发现的节点
+     */
+    private static final Map<String, Providers> PROVIDERS_MAP = new ConcurrentHashMap<>();
+
+    /**
+     * 在途请求数
+     */
+    private final AtomicInteger active = new AtomicInteger();
+
+    /**
+     * 调用总次数
+     */
+    private final AtomicLong total = new AtomicLong();
+
+    /**
+     * 失败次数
+     */
+    private final AtomicLong failed = new AtomicLong();
+
+    /**
+     * 累计耗时（纳秒）
+     */
+    private final AtomicLong totalElapsed = new AtomicLong();
+
+    /**
+     * 响应时间的峰值敏感指数滑动平均（peak-EWMA）
+     */
+    private final AtomicReference<Ewma> ewma = new AtomicReference<>(Ewma.EMPTY);
+
+    /**
+     * 获取服务地址维度的调用状态
+     *
+     * @param serviceAddress 服务地址
+     * @return
+     */
+    public static RpcStatus getStatus(String serviceAddress) {
+        return SERVICE_STATUS_MAP.computeIfAbsent(serviceAddress, key -> new RpcStatus());
+    }
+
+    /**
+     * 获取方法维度的调用状态
+     *
+     * @param serviceAddress 服务地址
+     * @param serviceKey     服务键名，同一节点上不同服务的同名方法分开统计
+     * @param methodName     方法名
+     * @return
+     */
+    public static RpcStatus getStatus(String serviceAddress, String serviceKey, String methodName) {
+        return METHOD_STATUS_MAP.computeIfAbsent(serviceAddress, key -> new ConcurrentHashMap<>())
+                .computeIfAbsent(serviceKey, key -> new ConcurrentHashMap<>())
+                .computeIfAbsent(methodName, key -> new RpcStatus());
+    }
+
+    /**
+     * 移除某个服务地址的所有统计（节点下线时调用）
+     *
+     * @param serviceAddress 服务地址
+     */
+    public static void removeStatus(String serviceAddress) {
+        SERVICE_STATUS_MAP.remove(serviceAddress);
+        METHOD_STATUS_MAP.remove(serviceAddress);
+    }
+
+    /**
+     * 记录服务发现结果，删除已不属于任何服务的节点的统计，避免节点频繁上下线时统计无限增长
+     * 注册中心缓存未变化时返回的是同一个列表对象，只做一次引用比较
+     *
+     * @param serviceKey          服务键名
+     * @param serviceMetaInfoList 服务发现结果
+     */
+    public static void retainProviders(String serviceKey, List<ServiceMetaInfo> serviceMetaInfoList) {
+        Providers current = PROVIDERS_MAP.get(serviceKey);
+        if (current != null && current.source == serviceMetaInfoList) {
+            return;
+        }
+        synchronized (PROVIDERS_MAP) {
+            Set<String> addresses = new HashSet<>();
+            for (ServiceMetaInfo serviceMetaInfo : serviceMetaInfoList) {
+                addresses.add(serviceMetaInfo.getServiceAddress());
+            }
+            Providers old = PROVIDERS_MAP.put(serviceKey, new Providers(serviceMetaInfoList, addresses));
+            if (old == null) {
+                return;
+            }
+            for (String address : old.addresses) {
+                if (!addresses.contains(address) && !isReferenced(address)) {
+                    removeStatus(address);
+                }
+            }
+        }
+    }
+
+    private static boolean isReferenced(String serviceAddress) {
+        for (Providers providers : PROVIDERS_MAP.values()) {
+            if (providers.addresses.contains(serviceAddress)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 请求开始
+     *
+     * @param serviceAddress 服务地址
+     * @param serviceKey     服务键名
+     * @param methodName     方法名
+     */
+    public static void beginCount(String serviceAddress, String serviceKey, String methodName) {
+        getStatus(serviceAddress).active.incrementAndGet();
+        getStatus(serviceAddress, serviceKey, methodName).active.incrementAndGet();
+    }
+
+    /**
+     * 请求结束，必须与 beginCount 成对调用
+     *
+     * @param serviceAddress 服务地址
+     * @param serviceKey     服务键名
+     * @param methodName     方法名
+     * @param elapsed        耗时（纳秒）
+     * @param succeeded      是否收到节点的响应（带业务异常的响应也算），超时、连接失败和过载为 false
+     */
+    public static void endCount(String serviceAddress, String serviceKey, String methodName, long elapsed, boolean succeeded) {
+        getStatus(serviceAddress).end(elapsed, succeeded);
+        getStatus(serviceAddress, serviceKey, methodName).end(elapsed, succeeded);
+    }
+
+    /**
+     * 请求被放弃（调用方主动取消或本地限流），只减少在途数，不计入调用次数和响应时间，
+     * 必须与 beginCount 成对调用
+     *
+     * @param serviceAddress 服务地址
+     * @param serviceKey     服务键名
+     * @param methodName     方法名
+     */
+    public static void cancelCount(String serviceAddress, String serviceKey, String methodName) {
+        getStatus(serviceAddress).release();
+        getStatus(serviceAddress, serviceKey, methodName).release();
+    }
+
+    private void release() {
+        // 请求期间节点下线导致统计被删除重建时，在途数不减到负数
+        active.getAndUpdate(value -> value > 0 ? value - 1 : 0);
+    }
+
+    private void end(long elapsed, boolean succeeded) {
+        release();
+        total.incrementAndGet();
+        totalElapsed.addAndGet(elapsed);
+        if (!succeeded) {
+            failed.incrementAndGet();
+        }
+        observe(succeeded ? elapsed : Math.max(elapsed, FAILURE_PENALTY_NANOS), System.nanoTime());
+    }
+
+    /**
+     * 记录一次响应时间
+     * 比当前平均值大时直接取该值（对变慢立即敏感），否则按距上次更新的时间指数衰减地合入
+     *
+     * @param rtt 响应时间（纳秒）
+     * @param now 当前时间（System.nanoTime）
+     */
+    private void observe(long rtt, long now) {
+        while (true) {
+            Ewma current = ewma.get();
+            double value;
+            if (current == Ewma.EMPTY || rtt > current.value) {
+                value = rtt;
+            } else {
+                double w = Math.exp(-Math.max(now - current.stamp, 0) / EWMA_DECAY_NANOS);
+                value = current.value * w + rtt * (1 - w);
+            }
+            if (ewma.compareAndSet(current, new Ewma(value, now))) {
+                return;
+            }
+        }
+    }
+
+    public int getActive() {
+        return active.get();
+    }
+
+    public long getTotal() {
+        return total.get();
+    }
+
+    public long getFailed() {
+        return failed.get();
+    }
+
+    public long getTotalElapsed() {
+        return totalElapsed.get();
+    }
+
+    /**
+     * 平均耗时（毫秒）
+     *
+     * @return
+     */
+    public long getAverageElapsed() {
+        long count = total.get();
+        return count == 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(totalElapsed.get() / count);
+    }
+
+    /**
+     * 获取响应时间的 peak-EWMA（纳秒），长时间没有新样本时向 0 衰减
+     *
+     * @param now 当前时间（System.nanoTime）
+     * @return 尚无样本时返回 0
+     */
+    public double getEwma(long now) {
+        Ewma current = ewma.get();
+        if (current == Ewma.EMPTY) {
+            return 0;
+        }
+        return current.value * Math.exp(-Math.max(now - current.stamp, 0) / EWMA_DECAY_NANOS);
+    }
+
+    /**
+     * 一次服务发现的结果及其地址集合
+     */
+    private static final class Providers {
+
+        private final List<ServiceMetaInfo> source;
+
+        private final Set<String> addresses;
+
+        private Providers(List<ServiceMetaInfo> source, Set<String> addresses) {
+            this.source = source;
+            this.addresses = addresses;
+        }
+    }
+
+    /**
+     * 滑动平均值及其更新时间（不可变，整体 CAS 替换）
+     */
+    private static final class Ewma {
+
+        private static final Ewma EMPTY = new Ewma(0, 0);
+
+        private final double value;
+
+        private final long stamp;
+
+        private Ewma(double value, long stamp) {
+            this.value = value;
+            this.stamp = stamp;
+        }
+    }
+}
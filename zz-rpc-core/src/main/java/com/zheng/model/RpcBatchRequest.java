@@ -0,0 +1,36 @@
+package com.zheng.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+import java.util.List;
+
+/**
+ * RPC 批量请求
+ * 同一服务的多个调用放在一个协议帧中发送，服务端并行执行
+ */
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class RpcBatchRequest implements Serializable {
+
+    /**
+     * 固定序列化版本号，增加字段不影响 JDK 序列化兼容
+     */
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * 各个调用
+     */
+    private List<RpcRequest> requests;
+
+    /**
+     * 整批的超时时间（毫秒），0 表示不限制
+     */
+    private long timeout;
+
+}
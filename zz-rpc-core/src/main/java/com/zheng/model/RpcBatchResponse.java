@@ -0,0 +1,31 @@
+package com.zheng.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+import java.util.List;
+
+/**
+ * RPC 批量响应
+ * 与批量请求中的调用一一对应，单个调用失败不影响其他调用
+ */
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class RpcBatchResponse implements Serializable {
+
+    /**
+     * 固定序列化版本号，增加字段不影响 JDK 序列化兼容
+     */
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * 各个调用的响应
+     */
+    private List<RpcResponse> responses;
+
+}
@@ -12,11 +12,16 @@ import java.io.Serializable;
  * RPC 请求
  */
 @Data
-@Builder
+@Builder(toBuilder = true)
 @AllArgsConstructor
 @NoArgsConstructor
 public class RpcRequest implements Serializable {
 
+    /**
+     * 固定序列化版本号，与加入 timeout 字段前的版本一致，新旧节点可以互相反序列化
+     */
+    private static final long serialVersionUID = -2647405106160266303L;
+
     /**
      * 服务名称
      */
@@ -42,4 +47,11 @@ public class RpcRequest implements Serializable {
      */
     private Object[] args;
 
+    /**
+     * 调用超时时间（毫秒），0 表示不限制
+     * 消费端每次发送（含重试、对冲和故障转移）填入整个调用剩余的时间；
+     * 服务端从收到请求开始计算截止时间（不扣除传输耗时），在队列中等待超过截止时间的请求不再执行，直接返回失败响应
+     */
+    private long timeout;
+
 }
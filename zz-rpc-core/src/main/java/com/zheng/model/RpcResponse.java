@@ -16,6 +16,11 @@ import java.io.Serializable;
 @NoArgsConstructor
 public class RpcResponse implements Serializable {
 
+    /**
+     * 固定序列化版本号，增加字段不影响 JDK 序列化兼容
+     */
+    private static final long serialVersionUID = 7558248191942857791L;
+
     /**
      * 响应数据
      */
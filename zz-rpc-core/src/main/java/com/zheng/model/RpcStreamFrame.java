@@ -0,0 +1,52 @@
+package com.zheng.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+
+/**
+ * 流式调用的消息帧
+ * 同一个流的所有帧使用相同的请求 id，帧的含义由消息类型决定：
+ * STREAM_REQUEST 携带请求和初始额度，STREAM_DATA 携带一个元素，STREAM_END 表示结束（可能带异常），
+ * STREAM_CREDIT 携带新增额度，STREAM_CANCEL 表示调用方不再接收
+ */
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class RpcStreamFrame implements Serializable {
+
+    /**
+     * 固定序列化版本号，增加字段不影响 JDK 序列化兼容
+     */
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * 请求（STREAM_REQUEST）
+     */
+    private RpcRequest request;
+
+    /**
+     * 元素（STREAM_DATA）
+     */
+    private Object data;
+
+    /**
+     * 额度，即还可以发送的元素数（STREAM_REQUEST、STREAM_CREDIT）
+     */
+    private int credit;
+
+    /**
+     * 结束信息（STREAM_END）
+     */
+    private String message;
+
+    /**
+     * 异常信息（STREAM_END），正常结束时为 null
+     */
+    private Exception exception;
+
+}
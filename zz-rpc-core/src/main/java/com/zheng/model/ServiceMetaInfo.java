@@ -11,6 +11,10 @@ import lombok.Data;
 @Data
 public class ServiceMetaInfo {
 
+    /**
+     * 默认权重
+     */
+    public static final int DEFAULT_WEIGHT = 100;
 
     /**
      * 服务名称
@@ -36,6 +40,27 @@ public class ServiceMetaInfo {
      * 服务分组（暂未实现）
      */
     private String serviceGroup = "default";
+
+    /**
+     * 权重
+     */
+    private Integer weight = DEFAULT_WEIGHT;
+
+    /**
+     * 注册时间戳（毫秒），用于计算预热权重
+     */
+    private Long registerTime;
+
+    /**
+     * 预热时长（毫秒），注册后在该时长内权重从 1 线性增长到 weight
+     */
+    private Long warmup;
+
+    /**
+     * 服务提供者支持的最高协议版本，为空表示只支持 v1（旧版本的提供者）
+     */
+    private Integer protocolVersion;
+
     /**
      * 获取服务键名
      *
@@ -0,0 +1,104 @@
+package com.zheng.protocal;
+
+import io.vertx.core.buffer.Buffer;
+
+import java.io.IOException;
+
+/**
+ * 紧凑协议消息解码器（v3）
+ */
+public class CompactProtocolMessageDecoder {
+
+    /**
+     * 变长整数最多占用的字节数（64 位）
+     */
+    private static final int MAX_VARINT_LENGTH = 10;
+
+    /**
+     * 解码
+     *
+     * @param buffer 一条完整的消息
+     * @return
+     * @throws IOException
+     */
+    public static ProtocolMessage<?> decode(Buffer buffer) throws IOException {
+        ProtocolMessage.Header header = new ProtocolMessage.Header();
+        byte magic = buffer.getByte(0);
+        // 校验魔数
+        if (magic != ProtocolConstant.PROTOCOL_MAGIC) {
+            throw new RuntimeException("消息 magic 非法");
+        }
+        byte version = buffer.getByte(ProtocolConstant.VERSION_OFFSET);
+        if (version != ProtocolConstant.COMPACT_PROTOCOL_VERSION) {
+            throw new RuntimeException("协议版本不匹配: " + version);
+        }
+        header.setMagic(magic);
+        header.setVersion(version);
+        header.setSerializerAndType(buffer.getByte(2));
+        header.setSerializer((byte) header.getSerializerFromCombined());
+        header.setType((byte) header.getTypeFromCombined());
+        header.setStatus(buffer.getByte(3));
+        byte flags = buffer.getByte(4);
+        header.setReserved(flags);
+        header.setCompressor((byte) ((flags >> 4) & 0x0F));
+
+        // 依次读出请求 id 和消息体长度，cursor[0] 为当前读取位置
+        int[] cursor = {ProtocolConstant.COMPACT_FIXED_HEADER_LENGTH};
+        header.setRequestId(readVarLong(buffer, cursor, buffer.length()));
+        header.setBodyLength((int) readVarLong(buffer, cursor, buffer.length()));
+        byte[] bodyBytes = buffer.getBytes(cursor[0], cursor[0] + header.getBodyLength());
+        boolean compressed = (flags & ProtocolConstant.OPTIMIZED_COMPRESSED_FLAG) != 0;
+        return ProtocolMessageDecoder.decodeBody(header, bodyBytes, compressed);
+    }
+
+    /**
+     * 计算从 offset 开始的一条消息的总长度，用于拆包
+     *
+     * @param buffer 已收到的数据
+     * @param offset 消息起始位置
+     * @return 消息总长度，数据不足以读出消息头时返回 -1
+     */
+    public static int frameLength(Buffer buffer, int offset) {
+        int end = buffer.length();
+        int[] cursor = {offset + ProtocolConstant.COMPACT_FIXED_HEADER_LENGTH};
+        if (cursor[0] >= end) {
+            return -1;
+        }
+        if (readVarLong(buffer, cursor, end) < 0) {
+            return -1;
+        }
+        long bodyLength = readVarLong(buffer, cursor, end);
+        if (bodyLength < 0) {
+            return -1;
+        }
+        if (bodyLength > Integer.MAX_VALUE - (cursor[0] - offset)) {
+            throw new RuntimeException("消息体长度非法: " + bodyLength);
+        }
+        return cursor[0] - offset + (int) bodyLength;
+    }
+
+    /**
+     * 读取无符号变长整数并移动读取位置
+     *
+     * @param buffer
+     * @param cursor 读取位置，读取后指向下一个字段
+     * @param end    可读取的数据末尾
+     * @return 读出的值，数据不足时返回 -1 且不移动读取位置
+     */
+    static long readVarLong(Buffer buffer, int[] cursor, int end) {
+        long value = 0;
+        int index = cursor[0];
+        for (int i = 0; i < MAX_VARINT_LENGTH; i++) {
+            if (index >= end) {
+                return -1;
+            }
+            byte b = buffer.getByte(index++);
+            value |= (long) (b & 0x7F) << (7 * i);
+            if (b >= 0) {
+                cursor[0] = index;
+                return value;
+            }
+        }
+        throw new RuntimeException("变长整数格式非法");
+    }
+}
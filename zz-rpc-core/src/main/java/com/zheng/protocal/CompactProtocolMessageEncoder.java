@@ -0,0 +1,61 @@
+package com.zheng.protocal;
+
+import io.vertx.core.buffer.Buffer;
+
+import java.io.IOException;
+
+/**
+ * 紧凑协议消息编码器（v3）
+ * 固定部分 5 字节，请求 id 和消息体长度使用变长整数（varint），小消息的消息头最短只有 7 字节：
+ * 魔数(1) 版本(1) 序列化器|类型(1) 状态(1) 标志位(1) 请求 id(1~10) 消息体长度(1~5)
+ * 请求 id 只在连接内唯一，数值小，通常只占 1~2 字节
+ */
+public class CompactProtocolMessageEncoder {
+
+    /**
+     * 编码
+     *
+     * @param protocolMessage
+     * @return
+     * @throws IOException
+     */
+    public static Buffer encode(ProtocolMessage<?> protocolMessage) throws IOException {
+        if (protocolMessage == null || protocolMessage.getHeader() == null) {
+            return Buffer.buffer();
+        }
+        ProtocolMessage.Header header = protocolMessage.getHeader();
+        byte[] bodyBytes = ProtocolMessageEncoder.serializeBody(protocolMessage);
+        // 标志位：高 4 位为压缩器，最低位表示消息体已压缩
+        int flags = header.getCompressor() << 4;
+        if (ProtocolMessageEncoder.shouldCompress(header, bodyBytes)) {
+            bodyBytes = ProtocolMessageEncoder.compressBody(header, bodyBytes);
+            flags |= ProtocolConstant.OPTIMIZED_COMPRESSED_FLAG;
+        }
+
+        Buffer buffer = Buffer.buffer(ProtocolConstant.COMPACT_FIXED_HEADER_LENGTH + 15 + bodyBytes.length);
+        buffer.appendByte(header.getMagic());
+        buffer.appendByte(ProtocolConstant.COMPACT_PROTOCOL_VERSION);
+        header.setSerializerAndType(header.getSerializer(), header.getType());
+        buffer.appendByte(header.getSerializerAndType());
+        buffer.appendByte(header.getStatus());
+        buffer.appendByte((byte) flags);
+        writeVarLong(buffer, header.getRequestId());
+        writeVarLong(buffer, bodyBytes.length);
+        buffer.appendBytes(bodyBytes);
+        return buffer;
+    }
+
+    /**
+     * 写入无符号变长整数，每字节低 7 位为数据，最高位表示后面还有字节
+     *
+     * @param buffer
+     * @param value
+     */
+    static void writeVarLong(Buffer buffer, long value) {
+        while ((value & ~0x7FL) != 0) {
+            buffer.appendByte((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.appendByte((byte) value);
+    }
+}
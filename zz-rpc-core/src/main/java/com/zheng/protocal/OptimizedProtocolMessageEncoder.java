@@ -1,14 +1,13 @@
 package com.zheng.protocal;
 
-import com.zheng.serializer.Serializer;
-import com.zheng.serializer.SerializerFactory;
 import io.vertx.core.buffer.Buffer;
 
 import java.io.IOException;
 
 /**
- * 优化的协议消息编码器
- * 将序列化器和消息类型合并到一个字节中，节省1字节空间
+ * 优化的协议消息编码器（v2）
+ * 将序列化器和消息类型合并到一个字节中，腾出的字节作为标志位，消息头仍为固定 17 字节：
+ * 魔数(1) 版本(1) 序列化器|类型(1) 状态(1) 请求 id(8) 消息体长度(4) 标志位(1)
  */
 public class OptimizedProtocolMessageEncoder {
 
@@ -24,43 +23,39 @@ public class OptimizedProtocolMessageEncoder {
             return Buffer.buffer();
         }
         ProtocolMessage.Header header = protocolMessage.getHeader();
-        
+        byte[] bodyBytes = ProtocolMessageEncoder.serializeBody(protocolMessage);
+        // 标志位：高 4 位为压缩器，最低位表示消息体已压缩
+        int flags = header.getCompressor() << 4;
+        if (ProtocolMessageEncoder.shouldCompress(header, bodyBytes)) {
+            bodyBytes = ProtocolMessageEncoder.compressBody(header, bodyBytes);
+            flags |= ProtocolConstant.OPTIMIZED_COMPRESSED_FLAG;
+        }
+
         // 依次向缓冲区写入字节
-        Buffer buffer = Buffer.buffer();
+        Buffer buffer = Buffer.buffer(ProtocolConstant.OPTIMIZED_MESSAGE_HEADER_LENGTH + bodyBytes.length);
         buffer.appendByte(header.getMagic());
-        buffer.appendByte(header.getVersion());
-        
+        buffer.appendByte(ProtocolConstant.OPTIMIZED_PROTOCOL_VERSION);
+
         // 优化：将序列化器和消息类型合并到一个字节
         header.setSerializerAndType(header.getSerializer(), header.getType());
         buffer.appendByte(header.getSerializerAndType());
-        
+
         buffer.appendByte(header.getStatus());
         buffer.appendLong(header.getRequestId());
-        
-        // 获取序列化器
-        ProtocolMessageSerializerEnum serializerEnum = ProtocolMessageSerializerEnum.getEnumByKey(header.getSerializer());
-        if (serializerEnum == null) {
-            throw new RuntimeException("序列化协议不存在");
-        }
-        Serializer serializer = SerializerFactory.getInstance(serializerEnum.getValue());
-        byte[] bodyBytes = serializer.serialize(protocolMessage.getBody());
-        
-        // 写入 body 长度和数据
         buffer.appendInt(bodyBytes.length);
+        buffer.appendByte((byte) flags);
         buffer.appendBytes(bodyBytes);
-        
-        // 添加预留字段
-        buffer.appendByte(header.getReserved());
-        
         return buffer;
     }
 
     /**
      * 兼容性编码 - 使用原始格式
-     * 保持与旧版本的兼容性
+     * 用于对端只支持 v1 的场景
      */
     public static Buffer encodeCompatible(ProtocolMessage<?> protocolMessage) throws IOException {
-        // 直接调用原始编码器
-        return ProtocolMessageEncoder.encode(protocolMessage);
+        if (protocolMessage == null || protocolMessage.getHeader() == null) {
+            return Buffer.buffer();
+        }
+        return ProtocolMessageEncoder.encodeV1(protocolMessage);
     }
 }
@@ -12,10 +12,35 @@ public interface ProtocolConstant {
 
     /**
      * 消息头长度（优化版本）
-     * 将序列化器和消息类型合并，节省1字节，但添加1字节预留字段
+     * 将序列化器和消息类型合并，节省1字节，但添加1字节标志位
      */
     int OPTIMIZED_MESSAGE_HEADER_LENGTH = 17;
 
+    /**
+     * 紧凑协议消息头的固定部分长度，后接变长的请求 id 和消息体长度
+     */
+    int COMPACT_FIXED_HEADER_LENGTH = 5;
+
+    /**
+     * 消息头中版本号的位置，各版本相同，按它区分后续的头格式
+     */
+    int VERSION_OFFSET = 1;
+
+    /**
+     * 消息头中消息体长度的位置（原始版本）
+     */
+    int BODY_LENGTH_OFFSET = 13;
+
+    /**
+     * 消息头中消息体长度的位置（优化版本）
+     */
+    int OPTIMIZED_BODY_LENGTH_OFFSET = 12;
+
+    /**
+     * 单条消息（头 + 体）的最大长度，超过时视为非法数据并关闭连接，避免按错误的长度无限累积数据
+     */
+    int MAX_FRAME_LENGTH = 16 * 1024 * 1024;
+
     /**
      * 协议魔数
      */
@@ -30,4 +55,24 @@ public interface ProtocolConstant {
      * 协议版本号（优化版本）
      */
     byte OPTIMIZED_PROTOCOL_VERSION = 0x2;
+
+    /**
+     * 协议版本号（紧凑版本，变长消息头）
+     */
+    byte COMPACT_PROTOCOL_VERSION = 0x3;
+
+    /**
+     * 消息体超过该长度（字节）才压缩，小消息压缩收益低于开销
+     */
+    int COMPRESS_THRESHOLD = 1024;
+
+    /**
+     * 消息体已压缩的标记，写在类型字节的最高位
+     */
+    int COMPRESSED_FLAG = 0x80;
+
+    /**
+     * 消息体已压缩的标记（优化版本），写在标志位的最低位
+     */
+    int OPTIMIZED_COMPRESSED_FLAG = 0x01;
 }
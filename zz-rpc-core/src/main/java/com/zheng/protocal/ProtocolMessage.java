@@ -49,6 +49,12 @@ public class ProtocolMessage<T> {
          */
         private byte type;
 
+        /**
+         * 压缩器（发送方支持的压缩算法，0 表示不压缩）
+         * 消息体超过阈值时才实际压缩，接收方按相同算法压缩响应
+         */
+        private byte compressor;
+
         /**
          * 序列化器和消息类型的组合字段（优化版本）
          * 高4位：序列化器类型 (0-15)
@@ -72,7 +78,7 @@ public class ProtocolMessage<T> {
         private int bodyLength;
 
         /**
-         * 预留字段，用于未来扩展
+         * 预留字段（v2 中作为标志位：高 4 位为压缩器，最低位表示消息体已压缩）
          */
         private byte reserved;
 
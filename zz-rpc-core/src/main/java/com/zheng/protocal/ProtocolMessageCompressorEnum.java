@@ -0,0 +1,58 @@
+package com.zheng.protocal;
+
+import cn.hutool.core.util.ObjectUtil;
+import lombok.Getter;
+
+/**
+ * 协议消息的压缩器枚举
+ * key 写在消息头序列化器字节的高 4 位
+ */
+@Getter
+public enum ProtocolMessageCompressorEnum {
+
+    NONE(0, "none"),
+    DEFLATE(1, "deflate"),
+    GZIP(2, "gzip");
+
+    private final int key;
+
+    private final String value;
+
+    ProtocolMessageCompressorEnum(int key, String value) {
+        this.key = key;
+        this.value = value;
+    }
+
+    /**
+     * 根据 key 获取枚举
+     *
+     * @param key
+     * @return
+     */
+    public static ProtocolMessageCompressorEnum getEnumByKey(int key) {
+        for (ProtocolMessageCompressorEnum anEnum : ProtocolMessageCompressorEnum.values()) {
+            if (anEnum.key == key) {
+                return anEnum;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 根据 value 获取枚举
+     *
+     * @param value
+     * @return
+     */
+    public static ProtocolMessageCompressorEnum getEnumByValue(String value) {
+        if (ObjectUtil.isEmpty(value)) {
+            return null;
+        }
+        for (ProtocolMessageCompressorEnum anEnum : ProtocolMessageCompressorEnum.values()) {
+            if (anEnum.value.equals(value)) {
+                return anEnum;
+            }
+        }
+        return null;
+    }
+}
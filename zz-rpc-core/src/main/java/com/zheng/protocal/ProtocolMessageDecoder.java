@@ -1,7 +1,11 @@
 package com.zheng.protocal;
 
+import com.zheng.compress.CompressorFactory;
+import com.zheng.model.RpcBatchRequest;
+import com.zheng.model.RpcBatchResponse;
 import com.zheng.model.RpcRequest;
 import com.zheng.model.RpcResponse;
+import com.zheng.model.RpcStreamFrame;
 import com.zheng.serializer.Serializer;
 import com.zheng.serializer.SerializerFactory;
 import io.vertx.core.buffer.Buffer;
@@ -14,7 +18,7 @@ import java.io.IOException;
 public class ProtocolMessageDecoder {
 
     /**
-     * 解码
+     * 解码，按版本号选择格式
      *
      * @param buffer
      * @return
@@ -22,6 +26,13 @@ public class ProtocolMessageDecoder {
      */
 
     public static ProtocolMessage<?> decode(Buffer buffer) throws IOException {
+        byte version = buffer.getByte(ProtocolConstant.VERSION_OFFSET);
+        if (version == ProtocolConstant.OPTIMIZED_PROTOCOL_VERSION) {
+            return OptimizedProtocolMessageDecoder.decode(buffer);
+        }
+        if (version == ProtocolConstant.COMPACT_PROTOCOL_VERSION) {
+            return CompactProtocolMessageDecoder.decode(buffer);
+        }
         // 分别从指定位置读出 Buffer
         ProtocolMessage.Header header = new ProtocolMessage.Header();
         byte magic = buffer.getByte(0);
@@ -30,14 +41,39 @@ public class ProtocolMessageDecoder {
             throw new RuntimeException("消息 magic 非法");
         }
         header.setMagic(magic);
-        header.setVersion(buffer.getByte(1));
-        header.setSerializer(buffer.getByte(2));
-        header.setType(buffer.getByte(3));
+        header.setVersion(version);
+        // 高 4 位为压缩器，低 4 位为序列化器
+        byte serializerByte = buffer.getByte(2);
+        header.setSerializer((byte) (serializerByte & 0x0F));
+        header.setCompressor((byte) ((serializerByte >> 4) & 0x0F));
+        byte typeByte = buffer.getByte(3);
+        boolean compressed = (typeByte & ProtocolConstant.COMPRESSED_FLAG) != 0;
+        header.setType((byte) (typeByte & ~ProtocolConstant.COMPRESSED_FLAG));
         header.setStatus(buffer.getByte(4));
         header.setRequestId(buffer.getLong(5));
-        header.setBodyLength(buffer.getInt(13));
+        header.setBodyLength(buffer.getInt(ProtocolConstant.BODY_LENGTH_OFFSET));
         // 解决粘包问题，只读指定长度的数据
-        byte[] bodyBytes = buffer.getBytes(17, 17 + header.getBodyLength());
+        byte[] bodyBytes = buffer.getBytes(ProtocolConstant.MESSAGE_HEADER_LENGTH, ProtocolConstant.MESSAGE_HEADER_LENGTH + header.getBodyLength());
+        return decodeBody(header, bodyBytes, compressed);
+    }
+
+    /**
+     * 解压并反序列化消息体，两个版本共用
+     *
+     * @param header     已解析的消息头
+     * @param bodyBytes  消息体
+     * @param compressed 消息体是否已压缩
+     * @return
+     * @throws IOException
+     */
+    static ProtocolMessage<?> decodeBody(ProtocolMessage.Header header, byte[] bodyBytes, boolean compressed) throws IOException {
+        if (compressed) {
+            ProtocolMessageCompressorEnum compressorEnum = ProtocolMessageCompressorEnum.getEnumByKey(header.getCompressor());
+            if (compressorEnum == null) {
+                throw new RuntimeException("压缩算法不存在");
+            }
+            bodyBytes = CompressorFactory.getInstance(compressorEnum.getValue()).decompress(bodyBytes);
+        }
         // 解析消息体
         ProtocolMessageSerializerEnum serializerEnum = ProtocolMessageSerializerEnum.getEnumByKey(header.getSerializer());
         if (serializerEnum == null) {
@@ -55,6 +91,19 @@ public class ProtocolMessageDecoder {
             case RESPONSE:
                 RpcResponse response = serializer.deserialize(bodyBytes, RpcResponse.class);
                 return new ProtocolMessage<>(header, response);
+            case BATCH_REQUEST:
+                RpcBatchRequest batchRequest = serializer.deserialize(bodyBytes, RpcBatchRequest.class);
+                return new ProtocolMessage<>(header, batchRequest);
+            case BATCH_RESPONSE:
+                RpcBatchResponse batchResponse = serializer.deserialize(bodyBytes, RpcBatchResponse.class);
+                return new ProtocolMessage<>(header, batchResponse);
+            case STREAM_REQUEST:
+            case STREAM_DATA:
+            case STREAM_END:
+            case STREAM_CANCEL:
+            case STREAM_CREDIT:
+                RpcStreamFrame streamFrame = serializer.deserialize(bodyBytes, RpcStreamFrame.class);
+                return new ProtocolMessage<>(header, streamFrame);
             case HEART_BEAT:
             case OTHERS:
             default:
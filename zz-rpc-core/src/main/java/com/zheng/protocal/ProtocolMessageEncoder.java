@@ -1,6 +1,7 @@
 package com.zheng.protocal;
 
 
+import com.zheng.compress.CompressorFactory;
 import com.zheng.serializer.Serializer;
 import com.zheng.serializer.SerializerFactory;
 import io.vertx.core.buffer.Buffer;
@@ -10,7 +11,7 @@ import java.io.IOException;
 public class ProtocolMessageEncoder {
 
     /**
-     * 编码
+     * 编码，按消息头中的版本号选择格式
      *
      * @param protocolMessage
      * @return
@@ -20,25 +21,87 @@ public class ProtocolMessageEncoder {
         if (protocolMessage == null || protocolMessage.getHeader() == null) {
             return Buffer.buffer();
         }
+        if (protocolMessage.getHeader().getVersion() == ProtocolConstant.OPTIMIZED_PROTOCOL_VERSION) {
+            return OptimizedProtocolMessageEncoder.encode(protocolMessage);
+        }
+        if (protocolMessage.getHeader().getVersion() == ProtocolConstant.COMPACT_PROTOCOL_VERSION) {
+            return CompactProtocolMessageEncoder.encode(protocolMessage);
+        }
+        return encodeV1(protocolMessage);
+    }
+
+    /**
+     * 按原始格式编码，忽略消息头中的版本号
+     *
+     * @param protocolMessage
+     * @return
+     * @throws IOException
+     */
+    static Buffer encodeV1(ProtocolMessage<?> protocolMessage) throws IOException {
         ProtocolMessage.Header header = protocolMessage.getHeader();
+        byte[] bodyBytes = serializeBody(protocolMessage);
+        // 超过阈值时压缩，并在类型字节最高位标记
+        int type = header.getType();
+        if (shouldCompress(header, bodyBytes)) {
+            bodyBytes = compressBody(header, bodyBytes);
+            type |= ProtocolConstant.COMPRESSED_FLAG;
+        }
         // 依次向缓冲区写入字节
-        Buffer buffer = Buffer.buffer();
+        Buffer buffer = Buffer.buffer(ProtocolConstant.MESSAGE_HEADER_LENGTH + bodyBytes.length);
         buffer.appendByte(header.getMagic());
-        buffer.appendByte(header.getVersion());
-        buffer.appendByte(header.getSerializer());
-        buffer.appendByte(header.getType());
+        buffer.appendByte(ProtocolConstant.PROTOCOL_VERSION);
+        // 高 4 位为压缩器，低 4 位为序列化器
+        buffer.appendByte((byte) (header.getCompressor() << 4 | header.getSerializer()));
+        buffer.appendByte((byte) type);
         buffer.appendByte(header.getStatus());
         buffer.appendLong(header.getRequestId());
+        // 写入 body 长度和数据
+        buffer.appendInt(bodyBytes.length);
+        buffer.appendBytes(bodyBytes);
+        return buffer;
+    }
+
+    /**
+     * 序列化消息体
+     *
+     * @param protocolMessage
+     * @return
+     * @throws IOException
+     */
+    static byte[] serializeBody(ProtocolMessage<?> protocolMessage) throws IOException {
         // 获取序列化器
-        ProtocolMessageSerializerEnum serializerEnum = ProtocolMessageSerializerEnum.getEnumByKey(header.getSerializer());
+        ProtocolMessageSerializerEnum serializerEnum = ProtocolMessageSerializerEnum.getEnumByKey(protocolMessage.getHeader().getSerializer());
         if (serializerEnum == null) {
             throw new RuntimeException("序列化协议不存在");
         }
         Serializer serializer = SerializerFactory.getInstance(serializerEnum.getValue());
-        byte[] bodyBytes = serializer.serialize(protocolMessage.getBody());
-        // 写入 body 长度和数据
-        buffer.appendInt(bodyBytes.length);
-        buffer.appendBytes(bodyBytes);
-        return buffer;
+        return serializer.serialize(protocolMessage.getBody());
+    }
+
+    /**
+     * 是否需要压缩：配置了压缩器且消息体超过阈值
+     *
+     * @param header
+     * @param bodyBytes
+     * @return
+     */
+    static boolean shouldCompress(ProtocolMessage.Header header, byte[] bodyBytes) {
+        return header.getCompressor() != 0 && bodyBytes.length >= ProtocolConstant.COMPRESS_THRESHOLD;
+    }
+
+    /**
+     * 按消息头中的压缩器压缩消息体
+     *
+     * @param header
+     * @param bodyBytes
+     * @return
+     * @throws IOException
+     */
+    static byte[] compressBody(ProtocolMessage.Header header, byte[] bodyBytes) throws IOException {
+        ProtocolMessageCompressorEnum compressorEnum = ProtocolMessageCompressorEnum.getEnumByKey(header.getCompressor());
+        if (compressorEnum == null) {
+            throw new RuntimeException("压缩算法不存在");
+        }
+        return CompressorFactory.getInstance(compressorEnum.getValue()).compress(bodyBytes);
     }
 }
@@ -11,7 +11,14 @@ public enum ProtocolMessageTypeEnum {
     REQUEST(0),
     RESPONSE(1),
     HEART_BEAT(2),
-    OTHERS(3);
+    OTHERS(3),
+    BATCH_REQUEST(4),
+    BATCH_RESPONSE(5),
+    STREAM_REQUEST(6),
+    STREAM_DATA(7),
+    STREAM_END(8),
+    STREAM_CANCEL(9),
+    STREAM_CREDIT(10);
 
     private final int key;
 
@@ -0,0 +1,112 @@
+package com.zheng.proxy;
+
+import cn.hutool.core.collection.CollUtil;
+import com.zheng.RpcApplication;
+import com.zheng.conf.RpcConfig;
+import com.zheng.loadbalancer.LoadBalancer;
+import com.zheng.loadbalancer.LoadBalancerFactory;
+import com.zheng.model.RpcBatchRequest;
+import com.zheng.model.RpcBatchResponse;
+import com.zheng.model.RpcRequest;
+import com.zheng.model.RpcResponse;
+import com.zheng.model.ServiceMetaInfo;
+import com.zheng.server.tcp.VertxTcpClient;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * 批量调用
+ * 同一服务的多个调用合并到一个协议帧中发送到同一个服务节点，服务端并行执行后一次返回，省去逐个调用的往返开销
+ */
+public class BatchInvoker {
+
+    /**
+     * 单个协议帧最多包含的调用数，超过时拆分为多个帧并行发送
+     */
+    private static final int MAX_BATCH_SIZE = 500;
+
+    /**
+     * 批量调用同一个方法
+     *
+     * @param serviceClass   服务接口
+     * @param methodName     方法名
+     * @param parameterTypes 参数类型
+     * @param argsList       每次调用的参数
+     * @param <T>            返回值类型
+     * @return 与 argsList 一一对应的结果
+     * @throws RuntimeException 任一调用失败时抛出
+     */
+    public static <T> List<T> invokeAll(Class<?> serviceClass, String methodName, Class<?>[] parameterTypes, List<Object[]> argsList) {
+        List<RpcRequest> rpcRequests = new ArrayList<>(argsList.size());
+        for (Object[] args : argsList) {
+            rpcRequests.add(RpcRequest.builder()
+                    .serviceName(serviceClass.getName())
+                    .methodName(methodName)
+                    .parameterTypes(parameterTypes)
+                    .args(args)
+                    .build());
+        }
+        List<RpcResponse> rpcResponses = invoke(rpcRequests);
+        List<T> results = new ArrayList<>(rpcResponses.size());
+        for (RpcResponse rpcResponse : rpcResponses) {
+            if (rpcResponse.getException() != null) {
+                throw new RuntimeException("批量调用失败: " + rpcResponse.getMessage(), rpcResponse.getException());
+            }
+            results.add((T) rpcResponse.getData());
+        }
+        return results;
+    }
+
+    /**
+     * 批量调用，请求必须属于同一个服务
+     *
+     * @param rpcRequests 调用列表
+     * @return 与 rpcRequests 一一对应的响应，单个调用失败时对应响应带有异常
+     */
+    public static List<RpcResponse> invoke(List<RpcRequest> rpcRequests) {
+        if (CollUtil.isEmpty(rpcRequests)) {
+            return new ArrayList<>();
+        }
+        String serviceName = rpcRequests.get(0).getServiceName();
+        RpcConfig rpcConfig = RpcApplication.getRpcConfig();
+        long timeout = 0;
+        for (RpcRequest rpcRequest : rpcRequests) {
+            if (!serviceName.equals(rpcRequest.getServiceName())) {
+                throw new IllegalArgumentException("批量调用的请求必须属于同一个服务");
+            }
+            rpcRequest.setTimeout(rpcConfig.getTimeout(serviceName, rpcRequest.getMethodName()));
+            timeout = Math.max(timeout, rpcRequest.getTimeout());
+        }
+
+        // 与单个调用相同的服务发现、熔断过滤和负载均衡
+        String serviceKey = ServiceProxy.buildServiceKey(serviceName);
+        String methodName = rpcRequests.get(0).getMethodName();
+        List<ServiceMetaInfo> serviceMetaInfoList = ServiceProxy.discoverAvailable(rpcConfig, serviceKey, methodName);
+        LoadBalancer loadBalancer = LoadBalancerFactory.getInstance(rpcConfig.getLoadBalancer());
+        ServiceMetaInfo selectedServiceMetaInfo = loadBalancer.select(ServiceProxy.buildRequestParams(serviceKey, methodName, null), serviceMetaInfoList);
+
+        // 拆分为多个帧并行发送，每个帧与单个调用一样占用熔断许可并计入节点的在途数和耗时
+        List<CompletableFuture<RpcBatchResponse>> futures = new ArrayList<>();
+        for (int from = 0; from < rpcRequests.size(); from += MAX_BATCH_SIZE) {
+            List<RpcRequest> chunk = new ArrayList<>(rpcRequests.subList(from, Math.min(rpcRequests.size(), from + MAX_BATCH_SIZE)));
+            RpcBatchRequest batchRequest = RpcBatchRequest.builder().requests(chunk).timeout(timeout).build();
+            futures.add(ServiceProxy.doCountedAsync(selectedServiceMetaInfo, methodName,
+                    () -> VertxTcpClient.doBatchRequestAsync(batchRequest, selectedServiceMetaInfo)));
+        }
+        List<RpcResponse> rpcResponses = new ArrayList<>(rpcRequests.size());
+        try {
+            for (CompletableFuture<RpcBatchResponse> future : futures) {
+                rpcResponses.addAll(future.get().getResponses());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("批量调用被中断", e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException("批量调用失败", e.getCause());
+        }
+        return rpcResponses;
+    }
+}
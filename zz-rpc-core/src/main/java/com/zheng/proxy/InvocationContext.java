@@ -0,0 +1,241 @@
+package com.zheng.proxy;
+
+import com.zheng.fault.retry.DeadlineExceededException;
+import com.zheng.loadbalancer.LoadBalancer;
+import com.zheng.model.RpcRequest;
+import com.zheng.model.RpcResponse;
+import com.zheng.model.ServiceMetaInfo;
+import lombok.Data;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 一次调用的上下文，在代理、重试和容错策略之间传递
+ */
+@Data
+public class InvocationContext {
+
+    /**
+     * 请求
+     */
+    private RpcRequest rpcRequest;
+
+    /**
+     * 候选服务节点
+     */
+    private List<ServiceMetaInfo> serviceMetaInfoList;
+
+    /**
+     * 负载均衡器
+     */
+    private LoadBalancer loadBalancer;
+
+    /**
+     * 负载均衡参数
+     */
+    private Map<String, Object> requestParams;
+
+    /**
+     * 发送请求
+     */
+    private Invoker invoker;
+
+    /**
+     * 本次调用中已失败的服务节点，按失败顺序（对冲请求可能在其他线程中失败）
+     */
+    private List<ServiceMetaInfo> failedServiceMetaInfoList = new CopyOnWriteArrayList<>();
+
+    /**
+     * 整个调用的截止时间（System.nanoTime），重试、对冲和故障转移共用，0 表示不限制
+     */
+    private long deadline;
+
+    /**
+     * 已发送的请求次数，重试、对冲和回调可能在不同线程中更新
+     */
+    private final AtomicInteger attempt = new AtomicInteger();
+
+    /**
+     * 已发送的请求次数
+     *
+     * @return
+     */
+    public int getAttempt() {
+        return attempt.get();
+    }
+
+    /**
+     * 最近一次失败的服务节点
+     *
+     * @return 没有失败时返回 null
+     */
+    public ServiceMetaInfo getFailedServiceMetaInfo() {
+        return failedServiceMetaInfoList.isEmpty() ? null : failedServiceMetaInfoList.get(failedServiceMetaInfoList.size() - 1);
+    }
+
+    /**
+     * 记录失败的服务节点
+     *
+     * @param serviceMetaInfo
+     */
+    public void addFailedServiceMetaInfo(ServiceMetaInfo serviceMetaInfo) {
+        if (serviceMetaInfo != null && !failedServiceMetaInfoList.contains(serviceMetaInfo)) {
+            failedServiceMetaInfoList.add(serviceMetaInfo);
+        }
+    }
+
+    /**
+     * 未失败过的候选服务节点
+     *
+     * @return
+     */
+    public List<ServiceMetaInfo> getAvailableServiceMetaInfoList() {
+        if (failedServiceMetaInfoList.isEmpty()) {
+            return serviceMetaInfoList;
+        }
+        List<ServiceMetaInfo> available = new ArrayList<>(serviceMetaInfoList);
+        available.removeAll(failedServiceMetaInfoList);
+        return available;
+    }
+
+    /**
+     * 通过负载均衡在未失败过的节点中选择一个
+     *
+     * @return 没有可用节点时返回 null
+     */
+    public ServiceMetaInfo select() {
+        return select(null);
+    }
+
+    /**
+     * 通过负载均衡在未失败过的节点中选择一个
+     *
+     * @param exclude 额外排除的节点（如对冲时正在请求的节点），可为 null
+     * @return 没有可用节点时返回 null
+     */
+    public ServiceMetaInfo select(ServiceMetaInfo exclude) {
+        List<ServiceMetaInfo> available = getAvailableServiceMetaInfoList();
+        if (exclude != null) {
+            available = new ArrayList<>(available);
+            available.remove(exclude);
+        }
+        if (available.isEmpty()) {
+            return null;
+        }
+        return loadBalancer.select(requestParams, available);
+    }
+
+    /**
+     * 选择重试的节点：优先未失败过的节点，全部失败过时在所有候选节点中重新选择
+     *
+     * @return
+     */
+    public ServiceMetaInfo selectForRetry() {
+        ServiceMetaInfo serviceMetaInfo = select();
+        return serviceMetaInfo != null ? serviceMetaInfo : loadBalancer.select(requestParams, serviceMetaInfoList);
+    }
+
+    /**
+     * 调用指定节点并等待结果，失败时记录该节点
+     *
+     * @param serviceMetaInfo
+     * @return
+     * @throws Exception
+     */
+    public RpcResponse invoke(ServiceMetaInfo serviceMetaInfo) throws Exception {
+        try {
+            return getResponse(invokeAsync(serviceMetaInfo));
+        } catch (DeadlineExceededException e) {
+            // 请求未发出，不算节点失败
+            throw e;
+        } catch (Exception e) {
+            // 异步回调可能晚于 get 返回，这里同步记录
+            addFailedServiceMetaInfo(serviceMetaInfo);
+            throw e;
+        }
+    }
+
+    /**
+     * 设置整个调用的超时时间，从现在开始计算截止时间
+     *
+     * @param timeoutMillis 超时时间（毫秒），0 表示不限制
+     */
+    public void startDeadline(long timeoutMillis) {
+        deadline = timeoutMillis > 0 ? System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis) : 0;
+    }
+
+    /**
+     * 整个调用是否已超过截止时间
+     *
+     * @return
+     */
+    public boolean isDeadlineExceeded() {
+        return deadline != 0 && deadline - System.nanoTime() <= 0;
+    }
+
+    /**
+     * 异步调用指定节点，失败时记录该节点（被取消不算失败）
+     * 设置了截止时间时，请求的超时时间为剩余时间；已超过截止时间时不再发送，以 DeadlineExceededException 结束
+     *
+     * @param serviceMetaInfo
+     * @return
+     */
+    public CompletableFuture<RpcResponse> invokeAsync(ServiceMetaInfo serviceMetaInfo) {
+        RpcRequest request = rpcRequest;
+        if (deadline != 0) {
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                return CompletableFuture.failedFuture(new DeadlineExceededException("调用已超时: "
+                        + rpcRequest.getServiceName() + "." + rpcRequest.getMethodName()));
+            }
+            // 对冲请求可能并发发送，每次使用副本
+            request = rpcRequest.toBuilder().timeout(Math.max(1, TimeUnit.NANOSECONDS.toMillis(remaining))).build();
+        }
+        attempt.incrementAndGet();
+        CompletableFuture<RpcResponse> future = invoker.invoke(request, serviceMetaInfo);
+        // 先记录失败节点再通知调用方，保证重试选择节点时能排除它
+        CompletableFuture<RpcResponse> result = new CompletableFuture<>();
+        future.whenComplete((rpcResponse, e) -> {
+            if (e == null) {
+                result.complete(rpcResponse);
+                return;
+            }
+            if (!future.isCancelled()) {
+                addFailedServiceMetaInfo(serviceMetaInfo);
+            }
+            result.completeExceptionally(e);
+        });
+        result.whenComplete((rpcResponse, e) -> {
+            if (result.isCancelled()) {
+                future.cancel(true);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * 等待结果，失败时抛出原始异常
+     *
+     * @param future
+     * @return
+     * @throws Exception
+     */
+    public static RpcResponse getResponse(CompletableFuture<RpcResponse> future) throws Exception {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof Exception) {
+                throw (Exception) cause;
+            }
+            throw e;
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package com.zheng.proxy;
+
+import com.zheng.model.RpcRequest;
+import com.zheng.model.RpcResponse;
+import com.zheng.model.ServiceMetaInfo;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * 向指定服务节点异步发送一次请求（含调用统计、熔断等）
+ */
+@FunctionalInterface
+public interface Invoker {
+
+    /**
+     * 调用
+     *
+     * @param rpcRequest      请求
+     * @param serviceMetaInfo 服务节点
+     * @return 取消该 future 即放弃这次请求
+     */
+    CompletableFuture<RpcResponse> invoke(RpcRequest rpcRequest, ServiceMetaInfo serviceMetaInfo);
+}
@@ -2,17 +2,29 @@ package com.zheng.proxy;
 
 import cn.hutool.core.collection.CollUtil;
 import com.zheng.RpcApplication;
+import com.zheng.cache.ResponseCache;
+import com.zheng.cache.ResponseCacheConfig;
 import com.zheng.conf.RpcConfig;
 import com.zheng.constants.RpcConstant;
+import com.zheng.fault.breaker.CircuitBreaker;
+import com.zheng.fault.breaker.CircuitBreakerOpenException;
+import com.zheng.fault.hedge.HedgingConfig;
+import com.zheng.fault.hedge.HedgingPolicy;
+import com.zheng.fault.retry.RetryScheduler;
 import com.zheng.fault.retry.RetryStrategy;
 import com.zheng.fault.retry.RetryStrategyFactory;
+import com.zheng.limiter.LimitExceededException;
 import com.zheng.loadbalancer.LoadBalancer;
 import com.zheng.loadbalancer.LoadBalancerFactory;
+import com.zheng.loadbalancer.RpcStatus;
 import com.zheng.model.RpcRequest;
 import com.zheng.model.RpcResponse;
 import com.zheng.model.ServiceMetaInfo;
 import com.zheng.registry.Registry;
 import com.zheng.registry.RegistryFactory;
+import com.zheng.registry.RegistrySnapshot;
+import com.zheng.serializer.SerializerFactory;
+import com.zheng.server.tcp.StreamIterator;
 import com.zheng.server.tcp.VertxTcpClient;
 import com.zheng.tolerant.TolerantStrategy;
 import com.zheng.tolerant.TolerantStrategyFactory;
@@ -20,8 +32,19 @@ import com.zheng.tolerant.TolerantStrategyFactory;
 import java.lang.reflect.InvocationHandler;
 import java.lang.reflect.Method;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * 服务代理（JDK 动态代理）
@@ -47,34 +70,268 @@ public class ServiceProxy implements InvocationHandler {
 
         // 从注册中心获取服务提供者请求地址
         RpcConfig rpcConfig = RpcApplication.getRpcConfig();
-        Registry registry = RegistryFactory.getInstance(rpcConfig.getRegistryConfig().getRegistry());
-        ServiceMetaInfo serviceMetaInfo = new ServiceMetaInfo();
-        serviceMetaInfo.setServiceName(serviceName);
-        serviceMetaInfo.setServiceVersion(RpcConstant.DEFAULT_SERVICE_VERSION);
-        List<ServiceMetaInfo> serviceMetaInfoList = registry.serviceDiscovery(serviceMetaInfo.getServiceKey());
-        if (CollUtil.isEmpty(serviceMetaInfoList)) {
-            throw new RuntimeException("暂无服务地址");
+        rpcRequest.setTimeout(rpcConfig.getTimeout(serviceName, method.getName()));
+
+        // 幂等读方法可开启结果缓存，命中时不再请求服务提供者
+        ResponseCache responseCache = null;
+        String cacheKey = null;
+        ResponseCacheConfig responseCacheConfig = rpcConfig.getResponseCacheConfig();
+        boolean cached = responseCacheConfig.isCached(serviceName, rpcRequest.getMethodName());
+        boolean singleFlight = rpcConfig.isSingleFlight(serviceName, rpcRequest.getMethodName());
+        // 参数键（含参数类型，区分重载方法），缓存和请求合并共用，参数无法序列化时为 null
+        String argsKey = cached || singleFlight
+                ? ResponseCache.buildKey(method.getParameterTypes(), args, SerializerFactory.getInstance(rpcConfig.getSerializer())) : null;
+        if (cached) {
+            responseCache = ResponseCache.getInstance(responseCacheConfig, serviceName, rpcRequest.getMethodName());
+            cacheKey = argsKey;
+            RpcResponse cachedResponse = cacheKey == null ? null : responseCache.get(cacheKey);
+            if (cachedResponse != null) {
+                return cachedResponse.getData();
+            }
         }
+        String serviceKey = buildServiceKey(serviceName);
+        List<ServiceMetaInfo> serviceMetaInfoList = discoverAvailable(rpcConfig, serviceKey, rpcRequest.getMethodName());
 
         // 负载均衡
         LoadBalancer loadBalancer = LoadBalancerFactory.getInstance(rpcConfig.getLoadBalancer());
-        // 将调用方法名（请求路径）作为负载均衡参数
-        Map<String, Object> requestParams = new HashMap<>();
-        requestParams.put("methodName", rpcRequest.getMethodName());
+        Map<String, Object> requestParams = buildRequestParams(serviceKey, rpcRequest.getMethodName(), args);
         ServiceMetaInfo selectedServiceMetaInfo = loadBalancer.select(requestParams, serviceMetaInfoList);
+
+        // 返回迭代器或 Stream 的方法使用流式调用，边接收边消费，不重试
+        Class<?> returnType = method.getReturnType();
+        if (returnType == Iterator.class || returnType == Stream.class) {
+            StreamIterator<Object> streamIterator = VertxTcpClient.doStreamRequest(rpcRequest, selectedServiceMetaInfo, rpcConfig.getStreamWindow());
+            if (returnType == Iterator.class) {
+                return streamIterator;
+            }
+            return StreamSupport.stream(Spliterators.spliteratorUnknownSize(streamIterator, Spliterator.ORDERED), false)
+                    .onClose(streamIterator::close);
+        }
+
+        // 调用上下文，传给容错策略
+        InvocationContext invocationContext = new InvocationContext();
+        invocationContext.setRpcRequest(rpcRequest);
+        invocationContext.setServiceMetaInfoList(serviceMetaInfoList);
+        invocationContext.setLoadBalancer(loadBalancer);
+        invocationContext.setRequestParams(requestParams);
+        invocationContext.setInvoker(ServiceProxy::doRequestAsync);
+        // 超时时间是整个调用（含重试、对冲和故障转移）的预算，每次发送使用剩余的时间
+        invocationContext.startDeadline(rpcRequest.getTimeout());
         // rpc 请求
         // 使用重试机制
         RpcResponse rpcResponse;
         try {
             RetryStrategy retryStrategy = RetryStrategyFactory.getInstance(rpcConfig.getRetryStrategy());
-            rpcResponse = retryStrategy.doRetry(() ->
-                    VertxTcpClient.doRequest(rpcRequest, selectedServiceMetaInfo)
-            );
+            // 幂等读方法可开启对冲请求
+            HedgingConfig hedgingConfig = rpcConfig.getHedgingConfig();
+            HedgingPolicy hedgingPolicy = hedgingConfig.isHedged(serviceName, rpcRequest.getMethodName())
+                    ? HedgingPolicy.getInstance(hedgingConfig, serviceName + "." + rpcRequest.getMethodName()) : null;
+            // 重试在定时器上异步调度，等待期间不占用线程
+            // 每次重试重新负载均衡，排除本次调用中已失败的节点
+            Supplier<CompletableFuture<RpcResponse>> request = () -> retryStrategy.doRetryAsync(() -> {
+                ServiceMetaInfo target = invocationContext.getAttempt() == 0
+                        ? selectedServiceMetaInfo : invocationContext.selectForRetry();
+                return hedgingPolicy == null
+                        ? invocationContext.invokeAsync(target)
+                        : doHedgedRequestAsync(invocationContext, target, hedgingPolicy);
+            });
+            // 参数相同的并发调用合并为一次请求
+            rpcResponse = InvocationContext.getResponse(singleFlight && argsKey != null
+                    ? SingleFlight.execute(serviceName + "." + rpcRequest.getMethodName() + "#" + argsKey, request)
+                    : request.get());
+            if (cacheKey != null && rpcResponse.getException() == null) {
+                responseCache.put(cacheKey, rpcResponse);
+            }
         } catch (Exception e) {
             // 容错机制
             TolerantStrategy tolerantStrategy = TolerantStrategyFactory.getInstance(rpcConfig.getTolerantStrategy());
-            rpcResponse = tolerantStrategy.doTolerant(null, e);
+            rpcResponse = tolerantStrategy.doTolerant(invocationContext, e);
         }
         return rpcResponse.getData();
     }
+
+    /**
+     * 服务键（默认版本）
+     *
+     * @param serviceName 服务名
+     * @return
+     */
+    static String buildServiceKey(String serviceName) {
+        ServiceMetaInfo serviceMetaInfo = new ServiceMetaInfo();
+        serviceMetaInfo.setServiceName(serviceName);
+        serviceMetaInfo.setServiceVersion(RpcConstant.DEFAULT_SERVICE_VERSION);
+        return serviceMetaInfo.getServiceKey();
+    }
+
+    /**
+     * 从注册中心获取服务提供者，并过滤掉熔断中的节点（单个调用和批量调用共用）
+     *
+     * @param rpcConfig
+     * @param serviceKey 服务键
+     * @param methodName 方法名
+     * @return 可用的服务节点，不为空
+     */
+    static List<ServiceMetaInfo> discoverAvailable(RpcConfig rpcConfig, String serviceKey, String methodName) {
+        Registry registry = RegistryFactory.getInstance(rpcConfig.getRegistryConfig().getRegistry());
+        List<ServiceMetaInfo> serviceMetaInfoList = RegistrySnapshot.serviceDiscovery(registry, serviceKey);
+        RpcStatus.retainProviders(serviceKey, serviceMetaInfoList);
+        if (CollUtil.isEmpty(serviceMetaInfoList)) {
+            throw new RuntimeException("暂无服务地址");
+        }
+        // 过滤掉熔断中的节点
+        if (rpcConfig.getCircuitBreakerConfig().isEnable()) {
+            serviceMetaInfoList = CircuitBreaker.filterAvailable(serviceMetaInfoList, methodName);
+            if (serviceMetaInfoList.isEmpty()) {
+                throw new CircuitBreakerOpenException("服务节点均已熔断: " + serviceKey);
+            }
+        }
+        return serviceMetaInfoList;
+    }
+
+    /**
+     * 负载均衡参数：调用方法名（请求路径）、服务键和调用参数
+     *
+     * @param serviceKey 服务键
+     * @param methodName 方法名
+     * @param args       调用参数，可以为 null
+     * @return
+     */
+    static Map<String, Object> buildRequestParams(String serviceKey, String methodName, Object[] args) {
+        Map<String, Object> requestParams = new HashMap<>();
+        requestParams.put("methodName", methodName);
+        requestParams.put("serviceKey", serviceKey);
+        requestParams.put("args", args);
+        return requestParams;
+    }
+
+    /**
+     * 对冲调用：首个请求超过对冲延迟仍未返回时，向另一个节点发出相同请求，取先成功的结果并取消另一个
+     * 对冲延迟由定时器触发，不占用调用线程
+     *
+     * @param invocationContext
+     * @param serviceMetaInfo   首选节点
+     * @param hedgingPolicy
+     * @return
+     */
+    static CompletableFuture<RpcResponse> doHedgedRequestAsync(InvocationContext invocationContext, ServiceMetaInfo serviceMetaInfo,
+                                                               HedgingPolicy hedgingPolicy) {
+        hedgingPolicy.onRequest();
+        CompletableFuture<RpcResponse> primaryFuture = invocationContext.invokeAsync(serviceMetaInfo);
+        hedgingPolicy.track(primaryFuture);
+        CompletableFuture<RpcResponse> result = new CompletableFuture<>();
+        // 首个请求的结果和对冲定时任务，只有先到的一方决定结果的来源
+        AtomicBoolean decided = new AtomicBoolean();
+        ScheduledFuture<?> hedgeTask = RetryScheduler.schedule(() -> {
+            if (!decided.compareAndSet(false, true)) {
+                return;
+            }
+            ServiceMetaInfo hedgeServiceMetaInfo = invocationContext.select(serviceMetaInfo);
+            if (hedgeServiceMetaInfo == null || !hedgingPolicy.tryAcquireHedge()) {
+                relay(primaryFuture, result);
+                return;
+            }
+            CompletableFuture<RpcResponse> hedgeFuture = invocationContext.invokeAsync(hedgeServiceMetaInfo);
+            hedgingPolicy.track(hedgeFuture);
+            relay(HedgingPolicy.firstSuccessful(primaryFuture, hedgeFuture), result);
+            // 取消较慢的请求，已完成的不受影响
+            result.whenComplete((rpcResponse, e) -> {
+                primaryFuture.cancel(true);
+                hedgeFuture.cancel(true);
+            });
+        }, hedgingPolicy.getDelayMillis());
+        primaryFuture.whenComplete((rpcResponse, e) -> {
+            // 对冲延迟内已返回，不再对冲
+            if (decided.compareAndSet(false, true)) {
+                hedgeTask.cancel(false);
+                relay(primaryFuture, result);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * 将 source 的结果转交给 target
+     */
+    private static void relay(CompletableFuture<RpcResponse> source, CompletableFuture<RpcResponse> target) {
+        source.whenComplete((rpcResponse, e) -> {
+            if (e == null) {
+                target.complete(rpcResponse);
+            } else {
+                target.completeExceptionally(e instanceof CompletionException && e.getCause() != null ? e.getCause() : e);
+            }
+        });
+    }
+
+    /**
+     * 异步发送请求，并统计该服务节点的在途请求数和耗时
+     *
+     * @param rpcRequest
+     * @param serviceMetaInfo
+     * @return
+     */
+    private static CompletableFuture<RpcResponse> doRequestAsync(RpcRequest rpcRequest, ServiceMetaInfo serviceMetaInfo) {
+        return doRequestAsync(rpcRequest, serviceMetaInfo, VertxTcpClient::doRequestAsync);
+    }
+
+    /**
+     * 通过指定的传输层异步发送请求，并统计该服务节点的在途请求数和耗时
+     *
+     * @param rpcRequest
+     * @param serviceMetaInfo
+     * @param transport       传输层
+     * @return
+     */
+    static CompletableFuture<RpcResponse> doRequestAsync(RpcRequest rpcRequest, ServiceMetaInfo serviceMetaInfo, Invoker transport) {
+        return doCountedAsync(serviceMetaInfo, rpcRequest.getMethodName(), () -> transport.invoke(rpcRequest, serviceMetaInfo));
+    }
+
+    /**
+     * 在熔断许可和节点调用统计下发送一次请求（单个调用和批量调用的协议帧共用）
+     * 主动取消（如对冲中较慢的一方）和本地限流不反映节点状态，只归还在途数和熔断许可，不记录样本
+     *
+     * @param serviceMetaInfo 服务节点
+     * @param methodName      方法名，熔断和统计按方法区分
+     * @param send            发送请求
+     * @param <T>             响应类型
+     * @return
+     */
+    static <T> CompletableFuture<T> doCountedAsync(ServiceMetaInfo serviceMetaInfo, String methodName, Supplier<CompletableFuture<T>> send) {
+        String serviceAddress = serviceMetaInfo.getServiceAddress();
+        CircuitBreaker circuitBreaker = null;
+        if (RpcApplication.getRpcConfig().getCircuitBreakerConfig().isEnable()) {
+            circuitBreaker = CircuitBreaker.getInstance(serviceAddress, methodName);
+            if (!circuitBreaker.tryAcquirePermission()) {
+                return CompletableFuture.failedFuture(new CircuitBreakerOpenException("服务节点已熔断: " + serviceAddress));
+            }
+        }
+        String serviceKey = serviceMetaInfo.getServiceKey();
+        RpcStatus.beginCount(serviceAddress, serviceKey, methodName);
+        long start = System.nanoTime();
+        CompletableFuture<T> future;
+        try {
+            future = send.get();
+        } catch (RuntimeException e) {
+            future = CompletableFuture.failedFuture(e);
+        }
+        CircuitBreaker finalCircuitBreaker = circuitBreaker;
+        future.whenComplete((response, e) -> {
+            long elapsed = System.nanoTime() - start;
+            Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+            if (cause instanceof LimitExceededException || cause instanceof CancellationException) {
+                // 本地限流和主动取消不反映节点状态，既不算成功也不算失败，只归还在途数和许可
+                RpcStatus.cancelCount(serviceAddress, serviceKey, methodName);
+                if (finalCircuitBreaker != null) {
+                    finalCircuitBreaker.releasePermission();
+                }
+                return;
+            }
+            // 超时、连接失败、过载算节点故障；业务异常说明节点正常返回了响应，按真实耗时统计，不算故障
+            boolean failed = cause != null;
+            RpcStatus.endCount(serviceAddress, serviceKey, methodName, elapsed, !failed);
+            if (finalCircuitBreaker != null) {
+                finalCircuitBreaker.onResult(elapsed, failed);
+            }
+        });
+        return future;
+    }
 }
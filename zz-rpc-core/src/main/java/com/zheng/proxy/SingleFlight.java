@@ -0,0 +1,60 @@
+package com.zheng.proxy;
+
+import com.zheng.model.RpcResponse;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * 请求合并（single-flight）
+ * 相同键的调用在前一个请求返回前只发出一次，其余调用方共享同一个结果
+ */
+public class SingleFlight {
+
+    /**
+     * 请求键 => 进行中的请求
+     */
+    private static final Map<String, CompletableFuture<RpcResponse>> IN_FLIGHT_MAP = new ConcurrentHashMap<>();
+
+    /**
+     * 执行请求，相同键已有进行中的请求时直接复用其结果
+     *
+     * @param key      请求键
+     * @param supplier 发起请求
+     * @return
+     */
+    public static CompletableFuture<RpcResponse> execute(String key, Supplier<CompletableFuture<RpcResponse>> supplier) {
+        CompletableFuture<RpcResponse> flight = new CompletableFuture<>();
+        CompletableFuture<RpcResponse> existing = IN_FLIGHT_MAP.putIfAbsent(key, flight);
+        if (existing != null) {
+            return existing;
+        }
+        CompletableFuture<RpcResponse> future;
+        try {
+            future = supplier.get();
+        } catch (RuntimeException e) {
+            future = CompletableFuture.failedFuture(e);
+        }
+        future.whenComplete((rpcResponse, e) -> {
+            // 先移除再通知，之后到达的调用会发出新请求
+            IN_FLIGHT_MAP.remove(key, flight);
+            if (e == null) {
+                flight.complete(rpcResponse);
+            } else {
+                flight.completeExceptionally(e);
+            }
+        });
+        return flight;
+    }
+
+    /**
+     * 进行中的请求数
+     *
+     * @return
+     */
+    public static int inFlightCount() {
+        return IN_FLIGHT_MAP.size();
+    }
+}
@@ -0,0 +1,395 @@
+package com.zheng.registry;
+
+import cn.hutool.core.io.FileUtil;
+import cn.hutool.core.util.StrUtil;
+import cn.hutool.json.JSONUtil;
+import com.zheng.model.ServiceMetaInfo;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 内嵌注册中心
+ * 服务目录保存在本机的内存映射文件中，同一 JVM 以及同一台机器上的多个 JVM 共享，无需部署外部注册中心
+ * <p>
+ * 文件布局：
+ * | 魔数(4) | 预留(4) | 目录版本号(8) | 预留(48) | 槽位 * SLOT_COUNT |
+ * 每个槽位：| 过期时间戳(8) | 节点 key 长度(2) | 节点 key | 节点信息长度(2) | 节点信息(JSON) |
+ * 过期时间戳为 0 表示空闲槽位
+ */
+@Slf4j
+public class EmbeddedRegistry implements Registry {
+
+    /**
+     * 文件魔数
+     */
+    private static final int FILE_MAGIC = 0x7A7A5250;
+
+    /**
+     * 文件头长度
+     */
+    private static final int HEADER_SIZE = 64;
+
+    /**
+     * 目录版本号在文件头中的偏移量
+     */
+    private static final int VERSION_OFFSET = 8;
+
+    /**
+     * 单个槽位大小
+     */
+    private static final int SLOT_SIZE = 1024;
+
+    /**
+     * 槽位数量（即最多可注册的节点数）
+     */
+    private static final int SLOT_COUNT = 4096;
+
+    /**
+     * 节点存活时间（毫秒）
+     */
+    private static final long NODE_TTL_MILLIS = 30_000L;
+
+    /**
+     * 续签间隔（毫秒）
+     */
+    private static final long HEART_BEAT_INTERVAL_MILLIS = 10_000L;
+
+    /**
+     * 默认目录文件
+     */
+    private static final String DEFAULT_FILE_NAME = "zz-rpc-embedded-registry";
+
+    /**
+     * 同一 JVM 内的文件锁互斥（FileLock 只能在进程之间互斥，同进程内重复加锁会抛异常）
+     */
+    private static final Object JVM_MUTEX = new Object();
+
+    private FileChannel fileChannel;
+
+    private MappedByteBuffer mappedBuffer;
+
+    /**
+     * 本机注册的节点 key => 槽位下标（用于维护续期）
+     */
+    private final Map<String, Integer> localRegisterNodeSlotMap = new ConcurrentHashMap<>();
+
+    /**
+     * 服务目录快照，目录版本号变化或有节点过期时重新加载
+     */
+    private volatile DirectorySnapshot snapshot = new DirectorySnapshot(-1, 0, Collections.emptyMap());
+
+    private ScheduledExecutorService heartBeatExecutor;
+
+    @Override
+    public void init(RegistryConfig registryConfig) {
+        File file = resolveFile(registryConfig.getAddress());
+        try {
+            FileUtil.mkParentDirs(file);
+            fileChannel = new RandomAccessFile(file, "rw").getChannel();
+            mappedBuffer = fileChannel.map(FileChannel.MapMode.READ_WRITE, 0, (long) HEADER_SIZE + (long) SLOT_SIZE * SLOT_COUNT);
+            withLock(false, () -> {
+                // 新文件初始化文件头
+                if (mappedBuffer.getInt(0) != FILE_MAGIC) {
+                    for (int i = 0; i < HEADER_SIZE + SLOT_SIZE * SLOT_COUNT; i += 8) {
+                        mappedBuffer.putLong(i, 0L);
+                    }
+                    mappedBuffer.putInt(0, FILE_MAGIC);
+                }
+                return null;
+            });
+        } catch (IOException e) {
+            throw new RuntimeException("内嵌注册中心初始化失败: " + file, e);
+        }
+        log.info("embedded registry file = {}", file.getAbsolutePath());
+        heartBeat();
+    }
+
+    @Override
+    public void register(ServiceMetaInfo serviceMetaInfo) throws Exception {
+        String nodeKey = serviceMetaInfo.getServiceNodeKey();
+        byte[] keyBytes = nodeKey.getBytes(StandardCharsets.UTF_8);
+        byte[] valueBytes = JSONUtil.toJsonStr(serviceMetaInfo).getBytes(StandardCharsets.UTF_8);
+        if (8 + 2 + keyBytes.length + 2 + valueBytes.length > SLOT_SIZE) {
+            throw new RuntimeException(nodeKey + " 节点信息过大");
+        }
+        int slot = withLock(false, () -> {
+            long now = System.currentTimeMillis();
+            // 优先复用同名节点的槽位，其次使用空闲或已过期的槽位
+            int freeSlot = -1;
+            for (int i = 0; i < SLOT_COUNT; i++) {
+                long expireAt = mappedBuffer.getLong(slotOffset(i));
+                if (expireAt != 0 && expireAt > now) {
+                    if (nodeKey.equals(readNodeKey(i))) {
+                        freeSlot = i;
+                        break;
+                    }
+                } else if (freeSlot == -1) {
+                    freeSlot = i;
+                }
+            }
+            if (freeSlot == -1) {
+                throw new RuntimeException("内嵌注册中心槽位已满");
+            }
+            int offset = slotOffset(freeSlot);
+            mappedBuffer.putShort(offset + 8, (short) keyBytes.length);
+            mappedBuffer.put(offset + 10, keyBytes);
+            mappedBuffer.putShort(offset + 10 + keyBytes.length, (short) valueBytes.length);
+            mappedBuffer.put(offset + 12 + keyBytes.length, valueBytes);
+            // 最后写入过期时间，槽位才对读取方可见
+            mappedBuffer.putLong(offset, now + NODE_TTL_MILLIS);
+            increaseVersion();
+            return freeSlot;
+        });
+        localRegisterNodeSlotMap.put(nodeKey, slot);
+    }
+
+    @Override
+    public void unRegister(ServiceMetaInfo serviceMetaInfo) {
+        String nodeKey = serviceMetaInfo.getServiceNodeKey();
+        Integer slot = localRegisterNodeSlotMap.remove(nodeKey);
+        if (slot != null) {
+            releaseSlot(nodeKey, slot);
+        }
+    }
+
+    @Override
+    public List<ServiceMetaInfo> serviceDiscovery(String serviceKey) {
+        DirectorySnapshot currentSnapshot = snapshot;
+        // 目录未变化且没有节点过期时直接读快照，只有一次内存读
+        if (!isFresh(currentSnapshot)) {
+            currentSnapshot = reload();
+        }
+        return currentSnapshot.serviceMap.getOrDefault(serviceKey, Collections.emptyList());
+    }
+
+    @Override
+    public void destroy() {
+        log.info("当前节点下线");
+        if (heartBeatExecutor != null) {
+            heartBeatExecutor.shutdownNow();
+        }
+        for (Map.Entry<String, Integer> entry : localRegisterNodeSlotMap.entrySet()) {
+            try {
+                releaseSlot(entry.getKey(), entry.getValue());
+            } catch (Exception e) {
+                log.error(entry.getKey() + "节点下线失败", e);
+            }
+        }
+        localRegisterNodeSlotMap.clear();
+        try {
+            if (fileChannel != null) {
+                fileChannel.close();
+            }
+        } catch (IOException e) {
+            log.error("内嵌注册中心关闭失败", e);
+        }
+    }
+
+    @Override
+    public void heartBeat() {
+        heartBeatExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "embedded-registry-heartbeat");
+            thread.setDaemon(true);
+            return thread;
+        });
+        heartBeatExecutor.scheduleWithFixedDelay(() -> {
+            if (localRegisterNodeSlotMap.isEmpty()) {
+                return;
+            }
+            try {
+                withLock(false, () -> {
+                    long expireAt = System.currentTimeMillis() + NODE_TTL_MILLIS;
+                    for (Map.Entry<String, Integer> entry : localRegisterNodeSlotMap.entrySet()) {
+                        int offset = slotOffset(entry.getValue());
+                        // 槽位已被回收（节点过期后被其他节点占用），需要重启节点才能重新注册
+                        if (mappedBuffer.getLong(offset) == 0 || !entry.getKey().equals(readNodeKey(entry.getValue()))) {
+                            continue;
+                        }
+                        mappedBuffer.putLong(offset, expireAt);
+                    }
+                    return null;
+                });
+            } catch (Exception e) {
+                log.error("续签失败", e);
+            }
+        }, HEART_BEAT_INTERVAL_MILLIS, HEART_BEAT_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 监听（消费端）
+     * 目录版本号保存在共享内存中，服务发现时直接比较即可感知变化，无需额外监听
+     *
+     * @param serviceNodeKey
+     */
+    @Override
+    public void watch(String serviceNodeKey) {
+    }
+
+    /**
+     * 快照是否仍然有效（目录版本未变化且没有节点到期）
+     *
+     * @param directorySnapshot
+     * @return
+     */
+    private boolean isFresh(DirectorySnapshot directorySnapshot) {
+        return directorySnapshot.version == readVersion() && System.currentTimeMillis() < directorySnapshot.nextExpireAt;
+    }
+
+    /**
+     * 重新加载服务目录快照
+     * 并发发现的线程在锁内再次检查，前一个线程已刷新时直接复用，只有一个线程扫描目录
+     *
+     * @return
+     */
+    private DirectorySnapshot reload() {
+        return withLock(true, () -> {
+            DirectorySnapshot currentSnapshot = snapshot;
+            if (isFresh(currentSnapshot)) {
+                return currentSnapshot;
+            }
+            long version = readVersion();
+            long now = System.currentTimeMillis();
+            long nextExpireAt = Long.MAX_VALUE;
+            Map<String, List<ServiceMetaInfo>> serviceMap = new HashMap<>();
+            for (int i = 0; i < SLOT_COUNT; i++) {
+                int offset = slotOffset(i);
+                long expireAt = mappedBuffer.getLong(offset);
+                if (expireAt == 0 || expireAt <= now) {
+                    continue;
+                }
+                nextExpireAt = Math.min(nextExpireAt, expireAt);
+                int keyLength = mappedBuffer.getShort(offset + 8);
+                int valueLength = mappedBuffer.getShort(offset + 10 + keyLength);
+                byte[] valueBytes = new byte[valueLength];
+                mappedBuffer.get(offset + 12 + keyLength, valueBytes);
+                ServiceMetaInfo serviceMetaInfo = JSONUtil.toBean(new String(valueBytes, StandardCharsets.UTF_8), ServiceMetaInfo.class);
+                serviceMap.computeIfAbsent(serviceMetaInfo.getServiceKey(), key -> new ArrayList<>()).add(serviceMetaInfo);
+            }
+            serviceMap.replaceAll((key, value) -> Collections.unmodifiableList(value));
+            DirectorySnapshot newSnapshot = new DirectorySnapshot(version, nextExpireAt, serviceMap);
+            snapshot = newSnapshot;
+            return newSnapshot;
+        });
+    }
+
+    /**
+     * 释放槽位
+     *
+     * @param nodeKey
+     * @param slot
+     */
+    private void releaseSlot(String nodeKey, int slot) {
+        withLock(false, () -> {
+            if (nodeKey.equals(readNodeKey(slot))) {
+                mappedBuffer.putLong(slotOffset(slot), 0L);
+                increaseVersion();
+            }
+            return null;
+        });
+    }
+
+    private String readNodeKey(int slot) {
+        int offset = slotOffset(slot);
+        int keyLength = mappedBuffer.getShort(offset + 8);
+        byte[] keyBytes = new byte[keyLength];
+        mappedBuffer.get(offset + 10, keyBytes);
+        return new String(keyBytes, StandardCharsets.UTF_8);
+    }
+
+    private long readVersion() {
+        return mappedBuffer.getLong(VERSION_OFFSET);
+    }
+
+    private void increaseVersion() {
+        mappedBuffer.putLong(VERSION_OFFSET, mappedBuffer.getLong(VERSION_OFFSET) + 1);
+    }
+
+    private static int slotOffset(int slot) {
+        return HEADER_SIZE + slot * SLOT_SIZE;
+    }
+
+    /**
+     * 加锁执行（进程内互斥 + 跨进程文件锁）
+     *
+     * @param shared 是否为共享锁（读）
+     * @param action
+     * @param <T>
+     * @return
+     */
+    private <T> T withLock(boolean shared, LockedAction<T> action) {
+        synchronized (JVM_MUTEX) {
+            try (FileLock ignored = fileChannel.lock(0, HEADER_SIZE, shared)) {
+                return action.execute();
+            } catch (IOException e) {
+                throw new RuntimeException("内嵌注册中心文件加锁失败", e);
+            }
+        }
+    }
+
+    /**
+     * 解析目录文件路径，address 不是文件路径（例如默认的 etcd 地址）时使用临时目录下的默认文件
+     *
+     * @param address
+     * @return
+     */
+    private static File resolveFile(String address) {
+        if (StrUtil.startWith(address, "file:")) {
+            return new File(address.substring("file:".length()));
+        }
+        if (StrUtil.isNotBlank(address) && !address.contains("://") && (address.startsWith("/") || address.startsWith("."))) {
+            return new File(address);
+        }
+        return new File(System.getProperty("java.io.tmpdir"), DEFAULT_FILE_NAME);
+    }
+
+    /**
+     * 加锁执行的操作
+     */
+    @FunctionalInterface
+    private interface LockedAction<T> {
+        T execute() throws IOException;
+    }
+
+    /**
+     * 服务目录快照
+     */
+    private static class DirectorySnapshot {
+
+        /**
+         * 加载时的目录版本号
+         */
+        private final long version;
+
+        /**
+         * 快照中最早过期的节点时间戳，到期后需要重新加载
+         */
+        private final long nextExpireAt;
+
+        /**
+         * 服务键名 => 服务节点列表
+         */
+        private final Map<String, List<ServiceMetaInfo>> serviceMap;
+
+        private DirectorySnapshot(long version, long nextExpireAt, Map<String, List<ServiceMetaInfo>> serviceMap) {
+            this.version = version;
+            this.nextExpireAt = nextExpireAt;
+            this.serviceMap = serviceMap;
+        }
+    }
+}
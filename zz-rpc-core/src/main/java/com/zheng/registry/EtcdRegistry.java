@@ -92,7 +92,7 @@ public class EtcdRegistry implements Registry {
 
     public List<ServiceMetaInfo> serviceDiscovery(String serviceKey) {
         // 优先从缓存获取服务
-        List<ServiceMetaInfo> cachedServiceMetaInfoList = registryServiceCache.readCache();
+        List<ServiceMetaInfo> cachedServiceMetaInfoList = registryServiceCache.readCache(serviceKey);
         if (cachedServiceMetaInfoList != null) {
             return cachedServiceMetaInfoList;
         }
@@ -119,7 +119,7 @@ public class EtcdRegistry implements Registry {
                     })
                     .collect(Collectors.toList());
             // 写入服务缓存
-            registryServiceCache.writeCache(serviceMetaInfoList);
+            registryServiceCache.writeCache(serviceKey, serviceMetaInfoList);
             return serviceMetaInfoList;
         } catch (Exception e) {
             throw new RuntimeException("获取服务列表失败", e);
@@ -198,8 +198,9 @@ public class EtcdRegistry implements Registry {
                     switch (event.getEventType()) {
                         // key 删除时触发
                         case DELETE:
-                            // 清理注册服务缓存
-                            registryServiceCache.clearCache();
+                            // 清理该节点所属服务的缓存（/rpc/{serviceKey}/{host:port}）
+                            String serviceKey = serviceNodeKey.substring(ETCD_ROOT_PATH.length(), serviceNodeKey.lastIndexOf('/'));
+                            registryServiceCache.clearCache(serviceKey);
                             break;
                         case PUT:
                         default:
@@ -2,20 +2,26 @@ package com.zheng.registry;
 
 import cn.hutool.core.collection.CollUtil;
 import cn.hutool.core.collection.ConcurrentHashSet;
-import cn.hutool.cron.CronUtil;
-import cn.hutool.cron.task.Task;
 import cn.hutool.json.JSONUtil;
 import com.zheng.model.ServiceMetaInfo;
-import io.netty.util.internal.StringUtil;
 import lombok.extern.slf4j.Slf4j;
 import redis.clients.jedis.Jedis;
 import redis.clients.jedis.JedisPool;
 import redis.clients.jedis.JedisPoolConfig;
 import redis.clients.jedis.JedisPubSub;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.exceptions.JedisDataException;
 
-import java.util.HashSet;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 @Slf4j
@@ -29,9 +35,95 @@ public class RedisRegistry implements Registry {
     private static final String REDIS_ROOT_PATH = "rpc:";
 
     /**
-     * 本机注册的节点 key 集合（用于维护续期）
+     * 服务索引前缀，每个服务一个有序集合：member 为节点 key，score 为过期时间戳（毫秒）
      */
-    private final Set<String> localRegisterNodeKeySet = new HashSet<>();
+    private static final String REDIS_INDEX_PATH = REDIS_ROOT_PATH + "index:";
+
+    /**
+     * 服务变更通知频道，消息内容为发生变更的服务键名
+     */
+    private static final String REDIS_NOTIFY_CHANNEL = REDIS_ROOT_PATH + "notify";
+
+    /**
+     * key 过期事件频道（需要 Redis 开启 notify-keyspace-events Ex，默认关闭）
+     * 未开启时缓存在最早的节点到期后自动失效，过期节点同样会下线，只是不再立即感知
+     */
+    private static final String REDIS_EXPIRED_CHANNEL_PATTERN = "__keyevent@*__:expired";
+
+    /**
+     * 节点存活时间（秒）
+     */
+    private static final int NODE_TTL_SECONDS = 30;
+
+    /**
+     * 续签间隔（毫秒）
+     */
+    private static final long HEART_BEAT_INTERVAL_MILLIS = 10_000L;
+
+    /**
+     * 续签间隔的最大抖动（毫秒）
+     */
+    private static final long HEART_BEAT_JITTER_MILLIS = 2_000L;
+
+    /**
+     * 单次脚本续签的最大节点数，避免单个脚本阻塞 Redis 过久
+     */
+    private static final int RENEW_BATCH_SIZE = 500;
+
+    /**
+     * 批量续签脚本
+     * KEYS 为节点 key 与服务索引 key 交替排列，ARGV[1] 为 TTL（秒），ARGV[2] 为新的过期时间戳
+     * 节点已过期（expire 返回 0）时不再写回索引，需要重启节点才能重新注册
+     */
+    private static final String RENEW_SCRIPT =
+            "local renewed = 0\n" +
+            "for i = 1, #KEYS, 2 do\n" +
+            "  if redis.call('expire', KEYS[i], ARGV[1]) == 1 then\n" +
+            "    redis.call('zadd', KEYS[i + 1], ARGV[2], KEYS[i])\n" +
+            "    renewed = renewed + 1\n" +
+            "  end\n" +
+            "end\n" +
+            "return renewed";
+
+    /**
+     * 服务发现脚本，一次往返完成过期清理、查询索引和读取节点信息
+     * KEYS[1] 为服务索引 key，ARGV[1] 为当前时间戳
+     * 返回值第一项为最早的过期时间戳，之后依次为节点信息（节点 key 已过期时为 nil）；没有节点时返回空列表
+     * 节点 key 分批 mget，避免 unpack 超出 Lua 栈的限制
+     */
+    private static final String DISCOVERY_SCRIPT =
+            "redis.call('zremrangebyscore', KEYS[1], '-inf', ARGV[1])\n" +
+            "local entries = redis.call('zrangebyscore', KEYS[1], ARGV[1], '+inf', 'WITHSCORES')\n" +
+            "if #entries == 0 then\n" +
+            "  return {}\n" +
+            "end\n" +
+            "local result = {entries[2]}\n" +
+            "local keys = {}\n" +
+            "for i = 1, #entries, 2 do\n" +
+            "  keys[#keys + 1] = entries[i]\n" +
+            "end\n" +
+            "for from = 1, #keys, 1000 do\n" +
+            "  local values = redis.call('mget', unpack(keys, from, math.min(#keys, from + 999)))\n" +
+            "  for i = 1, #values do\n" +
+            "    result[#result + 1] = values[i]\n" +
+            "  end\n" +
+            "end\n" +
+            "return result";
+
+    /**
+     * 脚本 => SHA1，首次执行时加载
+     */
+    private final Map<String, String> scriptShaMap = new ConcurrentHashMap<>();
+
+    /**
+     * 续签调度器
+     */
+    private ScheduledExecutorService heartBeatExecutor;
+
+    /**
+     * 本机注册的节点 key => 所属服务键名（用于维护续期）
+     */
+    private final Map<String, String> localRegisterNodeKeyMap = new ConcurrentHashMap<>();
 
     /**
      * 注册中心服务缓存
@@ -43,6 +135,16 @@ public class RedisRegistry implements Registry {
      */
     private final Set<String> watchingKeySet = new ConcurrentHashSet<>();
 
+    /**
+     * 共享的订阅者，所有服务的变更通知都由同一个订阅线程处理
+     */
+    private volatile JedisPubSub subscriber;
+
+    /**
+     * 注册中心是否已销毁
+     */
+    private volatile boolean destroyed = false;
+
     @Override
     public void init(RegistryConfig registryConfig) {
         // 解析 Redis 地址
@@ -73,7 +175,7 @@ public class RedisRegistry implements Registry {
         poolConfig.setMinIdle(1);
 
         // 创建连接池
-        jedisPool = new JedisPool(poolConfig, host, port, 
+        jedisPool = new JedisPool(poolConfig, host, port,
                 Math.toIntExact(registryConfig.getTimeout()));
 
         heartBeat();
@@ -81,57 +183,67 @@ public class RedisRegistry implements Registry {
 
     @Override
     public void register(ServiceMetaInfo serviceMetaInfo) throws Exception {
+        String serviceKey = serviceMetaInfo.getServiceKey();
+        String registerKey = REDIS_ROOT_PATH + serviceMetaInfo.getServiceNodeKey();
+        String value = JSONUtil.toJsonStr(serviceMetaInfo);
         try (Jedis jedis = jedisPool.getResource()) {
-            String registerKey = REDIS_ROOT_PATH + serviceMetaInfo.getServiceNodeKey();
-            String value = JSONUtil.toJsonStr(serviceMetaInfo);
-            
-            // 设置键值对，TTL 为 30 秒
-            jedis.setex(registerKey, 30, value);
-            
+            // 写入节点、更新服务索引并通知消费端，一次往返完成
+            Pipeline pipeline = jedis.pipelined();
+            pipeline.setex(registerKey, NODE_TTL_SECONDS, value);
+            pipeline.zadd(getIndexKey(serviceKey), nextExpireAt(), registerKey);
+            pipeline.publish(REDIS_NOTIFY_CHANNEL, serviceKey);
+            pipeline.sync();
+
             // 添加到本地缓存
-            localRegisterNodeKeySet.add(registerKey);
+            localRegisterNodeKeyMap.put(registerKey, serviceKey);
         }
     }
 
     @Override
     public void unRegister(ServiceMetaInfo serviceMetaInfo) {
+        String serviceKey = serviceMetaInfo.getServiceKey();
+        String registerKey = REDIS_ROOT_PATH + serviceMetaInfo.getServiceNodeKey();
         try (Jedis jedis = jedisPool.getResource()) {
-            String registerKey = REDIS_ROOT_PATH + serviceMetaInfo.getServiceNodeKey();
-            jedis.del(registerKey);
-            
+            Pipeline pipeline = jedis.pipelined();
+            pipeline.del(registerKey);
+            pipeline.zrem(getIndexKey(serviceKey), registerKey);
+            pipeline.publish(REDIS_NOTIFY_CHANNEL, serviceKey);
+            pipeline.sync();
+
             // 从本地缓存移除
-            localRegisterNodeKeySet.remove(registerKey);
+            localRegisterNodeKeyMap.remove(registerKey);
         }
     }
 
     @Override
     public List<ServiceMetaInfo> serviceDiscovery(String serviceKey) {
         // 优先从缓存获取服务
-        List<ServiceMetaInfo> cachedServiceMetaInfoList = registryServiceCache.readCache();
+        List<ServiceMetaInfo> cachedServiceMetaInfoList = registryServiceCache.readCache(serviceKey);
         if (cachedServiceMetaInfoList != null) {
             return cachedServiceMetaInfoList;
         }
 
+        // 确保变更通知已订阅，之后该服务的缓存由通知驱动失效
+        startSubscriber();
+
         try (Jedis jedis = jedisPool.getResource()) {
-            // 使用模式匹配查找服务
-            String searchPattern = REDIS_ROOT_PATH + serviceKey + ":*";
-            Set<String> keys = jedis.keys(searchPattern);
-            
-            if (CollUtil.isEmpty(keys)) {
+            // 只查询该服务自己的索引，顺便清理已过期的节点，代价与该服务的节点数成正比
+            List<Object> result = (List<Object>) evalScript(jedis, DISCOVERY_SCRIPT,
+                    List.of(getIndexKey(serviceKey)), List.of(String.valueOf(System.currentTimeMillis())));
+            if (CollUtil.isEmpty(result)) {
                 return List.of();
             }
 
-            // 批量获取值
-            List<String> values = jedis.mget(keys.toArray(new String[0]));
-            
             // 解析服务信息
-            List<ServiceMetaInfo> serviceMetaInfoList = values.stream()
+            List<ServiceMetaInfo> serviceMetaInfoList = result.stream()
+                    .skip(1)
                     .filter(value -> value != null)
-                    .map(value -> JSONUtil.toBean(value, ServiceMetaInfo.class))
+                    .map(value -> JSONUtil.toBean((String) value, ServiceMetaInfo.class))
                     .collect(Collectors.toList());
 
-            // 写入服务缓存
-            registryServiceCache.writeCache(serviceMetaInfoList);
+            // 写入服务缓存，最早的节点到期后失效，未开启 key 过期通知时过期节点也能及时下线
+            long nextExpireAt = (long) Double.parseDouble((String) result.get(0));
+            registryServiceCache.writeCache(serviceKey, serviceMetaInfoList, nextExpireAt);
             return serviceMetaInfoList;
         } catch (Exception e) {
             throw new RuntimeException("获取服务列表失败", e);
@@ -140,70 +252,229 @@ public class RedisRegistry implements Registry {
 
     @Override
     public void heartBeat() {
-        // 10 秒续签一次
-        CronUtil.schedule("*/10 * * * * *", new Task() {
-            @Override
-            public void execute() {
-                for (String key : localRegisterNodeKeySet) {
-                    try (Jedis jedis = jedisPool.getResource()) {
-                        String value = jedis.get(key);
-                        if (value == null) {
-                            continue;
-                        }
-                        
-                        // 重新设置 TTL（续签）
-                        jedis.expire(key, 30);
-                    } catch (Exception e) {
-                        log.error(key + "续签失败", e);
-                    }
-                }
-            }
+        heartBeatExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "redis-registry-heartbeat");
+            thread.setDaemon(true);
+            return thread;
         });
+        scheduleNextHeartBeat();
+    }
+
+    /**
+     * 调度下一次续签，间隔加入随机抖动，避免大量节点在同一时刻续签
+     */
+    private void scheduleNextHeartBeat() {
+        if (destroyed) {
+            return;
+        }
+        long jitter = ThreadLocalRandom.current().nextLong(-HEART_BEAT_JITTER_MILLIS, HEART_BEAT_JITTER_MILLIS + 1);
+        heartBeatExecutor.schedule(() -> {
+            try {
+                renewAll();
+            } catch (Exception e) {
+                log.error("续签失败", e);
+            } finally {
+                scheduleNextHeartBeat();
+            }
+        }, HEART_BEAT_INTERVAL_MILLIS + jitter, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 续签本机注册的所有节点
+     * 通过 Lua 脚本批量执行，每批只需一次网络往返
+     */
+    private void renewAll() {
+        if (localRegisterNodeKeyMap.isEmpty()) {
+            return;
+        }
+        List<String> keys = new ArrayList<>();
+        for (Map.Entry<String, String> entry : localRegisterNodeKeyMap.entrySet()) {
+            keys.add(entry.getKey());
+            keys.add(getIndexKey(entry.getValue()));
+            if (keys.size() >= RENEW_BATCH_SIZE * 2) {
+                renewBatch(keys);
+                keys = new ArrayList<>();
+            }
+        }
+        if (!keys.isEmpty()) {
+            renewBatch(keys);
+        }
+    }
 
-        CronUtil.setMatchSecond(true);
-        CronUtil.start();
+    /**
+     * 续签一批节点
+     *
+     * @param keys 节点 key 与其服务索引 key 交替排列
+     */
+    private void renewBatch(List<String> keys) {
+        List<String> args = Arrays.asList(String.valueOf(NODE_TTL_SECONDS), String.valueOf(nextExpireAt()));
+        try (Jedis jedis = jedisPool.getResource()) {
+            Object renewed = evalScript(jedis, RENEW_SCRIPT, keys, args);
+            log.debug("续签节点 {}/{} 个", renewed, keys.size() / 2);
+        }
     }
 
+    /**
+     * 通过 SHA1 执行脚本
+     *
+     * @param jedis
+     * @param script 脚本
+     * @param keys
+     * @param args
+     * @return
+     */
+    private Object evalScript(Jedis jedis, String script, List<String> keys, List<String> args) {
+        String sha = scriptShaMap.get(script);
+        try {
+            if (sha == null) {
+                sha = jedis.scriptLoad(script);
+                scriptShaMap.put(script, sha);
+            }
+            return jedis.evalsha(sha, keys, args);
+        } catch (JedisDataException e) {
+            // Redis 重启或执行过 SCRIPT FLUSH 后脚本缓存丢失，直接发送脚本并重新缓存
+            if (e.getMessage() == null || !e.getMessage().startsWith("NOSCRIPT")) {
+                throw e;
+            }
+            Object result = jedis.eval(script, keys, args);
+            scriptShaMap.put(script, jedis.scriptLoad(script));
+            return result;
+        }
+    }
+
+    /**
+     * 监听（消费端）
+     * 所有节点共用一个订阅线程，这里只记录监听的 key
+     *
+     * @param serviceNodeKey
+     */
     @Override
     public void watch(String serviceNodeKey) {
-        // Redis 的 keyspace notifications 需要服务器配置支持
-        // 这里简化实现，实际生产环境可以使用 Redis Streams 或其他方案
-        boolean newWatch = watchingKeySet.add(serviceNodeKey);
-        if (newWatch) {
-            // 启动一个线程监听 key 的变化
-            new Thread(() -> {
-                try (Jedis jedis = jedisPool.getResource()) {
-                    jedis.psubscribe(new JedisPubSub() {
-                        @Override
-                        public void onPMessage(String pattern, String channel, String message) {
-                            if (channel.contains("del") || channel.contains("expired")) {
-                                registryServiceCache.clearCache();
-                            }
+        watchingKeySet.add(serviceNodeKey);
+        startSubscriber();
+    }
+
+    /**
+     * 启动共享订阅线程（只会启动一次）
+     * 订阅服务变更频道和 key 过期事件，收到后只清理对应服务的缓存
+     */
+    private void startSubscriber() {
+        if (subscriber != null) {
+            return;
+        }
+        synchronized (this) {
+            if (subscriber != null) {
+                return;
+            }
+            subscriber = new JedisPubSub() {
+                @Override
+                public void onPMessage(String pattern, String channel, String message) {
+                    if (REDIS_NOTIFY_CHANNEL.equals(channel)) {
+                        registryServiceCache.clearCache(message);
+                    } else if (message.startsWith(REDIS_ROOT_PATH) && !message.startsWith(REDIS_INDEX_PATH)) {
+                        // 过期的节点 key：rpc:{serviceKey}:{host}:{port}
+                        String serviceKey = getServiceKeyByNodeKey(message);
+                        if (serviceKey != null) {
+                            registryServiceCache.clearCache(serviceKey);
+                        }
+                    }
+                }
+            };
+            Thread subscriberThread = new Thread(() -> {
+                while (!destroyed) {
+                    try (Jedis jedis = jedisPool.getResource()) {
+                        // 阻塞直到取消订阅或连接断开
+                        jedis.psubscribe(subscriber, REDIS_NOTIFY_CHANNEL, REDIS_EXPIRED_CHANNEL_PATTERN);
+                    } catch (Exception e) {
+                        if (destroyed) {
+                            break;
+                        }
+                        log.error("监听失败，1 秒后重新订阅", e);
+                        // 断线期间可能错过通知，直接清空缓存
+                        registryServiceCache.clearCache();
+                        try {
+                            Thread.sleep(1000L);
+                        } catch (InterruptedException interruptedException) {
+                            Thread.currentThread().interrupt();
+                            break;
                         }
-                    }, "__keyspace@0__:" + serviceNodeKey);
-                } catch (Exception e) {
-                    log.error("监听失败", e);
+                    }
                 }
-            }).start();
+            }, "redis-registry-subscriber");
+            subscriberThread.setDaemon(true);
+            subscriberThread.start();
         }
     }
 
     @Override
     public void destroy() {
         log.info("当前节点下线");
-        
+        destroyed = true;
+
         // 删除本地注册的所有节点
         try (Jedis jedis = jedisPool.getResource()) {
-            for (String key : localRegisterNodeKeySet) {
-                jedis.del(key);
+            Pipeline pipeline = jedis.pipelined();
+            for (Map.Entry<String, String> entry : localRegisterNodeKeyMap.entrySet()) {
+                pipeline.del(entry.getKey());
+                pipeline.zrem(getIndexKey(entry.getValue()), entry.getKey());
+                pipeline.publish(REDIS_NOTIFY_CHANNEL, entry.getValue());
             }
+            pipeline.sync();
         } catch (Exception e) {
             log.error("节点下线失败", e);
         }
 
+        // 停止续签
+        if (heartBeatExecutor != null) {
+            heartBeatExecutor.shutdownNow();
+        }
+
+        // 停止订阅
+        JedisPubSub currentSubscriber = subscriber;
+        if (currentSubscriber != null && currentSubscriber.isSubscribed()) {
+            currentSubscriber.punsubscribe();
+        }
+
         // 关闭连接池
         if (jedisPool != null) {
             jedisPool.close();
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * 获取服务索引 key
+     *
+     * @param serviceKey 服务键名
+     * @return
+     */
+    private static String getIndexKey(String serviceKey) {
+        return REDIS_INDEX_PATH + serviceKey;
+    }
+
+    /**
+     * 下一次过期时间戳，作为索引的 score
+     *
+     * @return
+     */
+    private static long nextExpireAt() {
+        return System.currentTimeMillis() + NODE_TTL_SECONDS * 1000L;
+    }
+
+    /**
+     * 从节点 key 中解析服务键名
+     *
+     * @param nodeKey rpc:{serviceName}:{serviceVersion}:{host}:{port}
+     * @return 服务键名，无法解析时返回 null
+     */
+    private static String getServiceKeyByNodeKey(String nodeKey) {
+        int portIndex = nodeKey.lastIndexOf(':');
+        if (portIndex <= REDIS_ROOT_PATH.length()) {
+            return null;
+        }
+        int hostIndex = nodeKey.lastIndexOf(':', portIndex - 1);
+        if (hostIndex <= REDIS_ROOT_PATH.length()) {
+            return null;
+        }
+        return nodeKey.substring(REDIS_ROOT_PATH.length(), hostIndex);
+    }
+}
@@ -32,4 +32,15 @@ public class RegistryConfig {
      * 超时时间（单位毫秒）
      */
     private Long timeout = 10000L;
+
+    /**
+     * 是否启用服务目录本地快照（消费端）
+     * 启用后注册中心不可用或尚未返回时，使用上一次持久化的服务目录
+     */
+    private boolean enableSnapshot = false;
+
+    /**
+     * 服务目录本地快照文件路径
+     */
+    private String snapshotFile = System.getProperty("user.home") + "/.zz-rpc/registry.snapshot";
 }
@@ -11,4 +11,9 @@ public interface RegistryKeys {
 
     String REDIS = "redis";
 
+    /**
+     * 内嵌注册中心（本机共享内存，无需外部依赖）
+     */
+    String EMBEDDED = "embedded";
+
 }
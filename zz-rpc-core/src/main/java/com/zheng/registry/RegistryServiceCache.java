@@ -3,40 +3,86 @@ package com.zheng.registry;
 import com.zheng.model.ServiceMetaInfo;
 
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
- * 注册中心服务本地缓存
+ * 注册中心服务本地缓存（按服务键名隔离）
  */
 public class RegistryServiceCache {
 
     /**
-     * 服务缓存
+     * 服务缓存，服务键名 => 服务节点列表及其失效时间
      */
-    List<ServiceMetaInfo> serviceCache;
+    private final Map<String, CacheEntry> serviceCache = new ConcurrentHashMap<>();
 
     /**
-     * 写缓存
+     * 写缓存，直到被清空前一直有效
      *
+     * @param serviceKey      服务键名
      * @param newServiceCache
-     * @return
      */
-    void writeCache(List<ServiceMetaInfo> newServiceCache) {
-        this.serviceCache = newServiceCache;
+    void writeCache(String serviceKey, List<ServiceMetaInfo> newServiceCache) {
+        writeCache(serviceKey, newServiceCache, Long.MAX_VALUE);
+    }
+
+    /**
+     * 写缓存，到达失效时间后不再返回（不依赖变更通知也能让过期节点下线）
+     *
+     * @param serviceKey      服务键名
+     * @param newServiceCache
+     * @param expireAt        失效时间戳（毫秒）
+     */
+    void writeCache(String serviceKey, List<ServiceMetaInfo> newServiceCache, long expireAt) {
+        this.serviceCache.put(serviceKey, new CacheEntry(newServiceCache, expireAt));
     }
 
     /**
      * 读缓存
      *
-     * @return
+     * @param serviceKey 服务键名
+     * @return 不存在或已失效时返回 null
+     */
+    List<ServiceMetaInfo> readCache(String serviceKey) {
+        CacheEntry cacheEntry = this.serviceCache.get(serviceKey);
+        if (cacheEntry == null) {
+            return null;
+        }
+        if (cacheEntry.expireAt != Long.MAX_VALUE && System.currentTimeMillis() >= cacheEntry.expireAt) {
+            this.serviceCache.remove(serviceKey, cacheEntry);
+            return null;
+        }
+        return cacheEntry.serviceMetaInfoList;
+    }
+
+    /**
+     * 清空某个服务的缓存
+     *
+     * @param serviceKey 服务键名
      */
-    List<ServiceMetaInfo> readCache() {
-        return this.serviceCache;
+    void clearCache(String serviceKey) {
+        this.serviceCache.remove(serviceKey);
     }
 
     /**
      * 清空缓存
      */
     void clearCache() {
-        this.serviceCache = null;
+        this.serviceCache.clear();
+    }
+
+    /**
+     * 缓存条目
+     */
+    private static final class CacheEntry {
+
+        private final List<ServiceMetaInfo> serviceMetaInfoList;
+
+        private final long expireAt;
+
+        private CacheEntry(List<ServiceMetaInfo> serviceMetaInfoList, long expireAt) {
+            this.serviceMetaInfoList = serviceMetaInfoList;
+            this.expireAt = expireAt;
+        }
     }
 }
@@ -0,0 +1,328 @@
+package com.zheng.registry;
+
+import cn.hutool.core.collection.CollUtil;
+import cn.hutool.core.io.FileUtil;
+import com.zheng.model.ServiceMetaInfo;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 注册中心服务目录快照（消费端）
+ * 把最后一次从注册中心获取到的服务目录持久化到本地文件，启动时加载，
+ * 在注册中心还未返回或不可用时用快照提供服务发现
+ * <p>
+ * 文件格式：| 魔数(4) | 格式版本(1) | 服务数(4) | 服务 * N |
+ * 服务：| 服务键名 | 节点数(4) | 节点 * M |
+ * 节点：| 服务名 | 版本 | 地址 | 端口(4) | 分组 | 权重(4) | 注册时间(8) | 预热时长(8) |
+ * 字符串均为 | 长度(2) | UTF-8 字节 |
+ */
+@Slf4j
+public class RegistrySnapshot {
+
+    /**
+     * 文件魔数
+     */
+    private static final int FILE_MAGIC = 0x7A52534E;
+
+    /**
+     * 文件格式版本
+     */
+    private static final byte FORMAT_VERSION = 4;
+
+    /**
+     * 字符串为 null 时写入的长度标记
+     */
+    private static final int NULL_STRING_LENGTH = 0xFFFF;
+
+    /**
+     * 快照变更后延迟写盘的时间（毫秒），合并短时间内的多次变更
+     */
+    private static final long FLUSH_DELAY_MILLIS = 1000L;
+
+    /**
+     * 快照中的服务目录，服务键名 => 服务节点列表
+     */
+    private static final Map<String, List<ServiceMetaInfo>> snapshotMap = new ConcurrentHashMap<>();
+
+    /**
+     * 已从注册中心成功获取过的服务键名
+     */
+    private static final Set<String> liveServiceKeySet = ConcurrentHashMap.newKeySet();
+
+    /**
+     * 正在后台刷新的服务键名
+     */
+    private static final Set<String> refreshingServiceKeySet = ConcurrentHashMap.newKeySet();
+
+    /**
+     * 是否有未写盘的变更
+     */
+    private static final AtomicBoolean dirty = new AtomicBoolean(false);
+
+    private static volatile File snapshotFile;
+
+    private static volatile ScheduledExecutorService executor;
+
+    /**
+     * 初始化，加载本地快照
+     *
+     * @param registryConfig
+     */
+    public static synchronized void init(RegistryConfig registryConfig) {
+        if (!registryConfig.isEnableSnapshot()) {
+            return;
+        }
+        snapshotFile = new File(registryConfig.getSnapshotFile());
+        if (executor == null) {
+            executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "registry-snapshot");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        if (!snapshotFile.exists()) {
+            return;
+        }
+        try {
+            Map<String, List<ServiceMetaInfo>> loaded = read(snapshotFile);
+            snapshotMap.putAll(loaded);
+            log.info("registry snapshot loaded, services = {}, file = {}", loaded.size(), snapshotFile.getAbsolutePath());
+        } catch (Exception e) {
+            // 快照损坏不影响启动，等注册中心返回后重新生成
+            log.warn("注册中心快照加载失败: {}", snapshotFile.getAbsolutePath(), e);
+        }
+    }
+
+    /**
+     * 是否启用
+     *
+     * @return
+     */
+    public static boolean isEnabled() {
+        return snapshotFile != null;
+    }
+
+    /**
+     * 服务发现
+     * 该服务尚未从注册中心获取过且快照中存在时，直接返回快照并在后台刷新；
+     * 否则查询注册中心，只有注册中心不可用时才回退到快照。注册中心可用时以它的结果为准，
+     * 返回空列表说明服务节点已全部下线，同时删除快照中的节点
+     *
+     * @param registry   注册中心
+     * @param serviceKey 服务键名
+     * @return
+     */
+    public static List<ServiceMetaInfo> serviceDiscovery(Registry registry, String serviceKey) {
+        if (!isEnabled()) {
+            return registry.serviceDiscovery(serviceKey);
+        }
+        List<ServiceMetaInfo> snapshotList = snapshotMap.get(serviceKey);
+        if (!liveServiceKeySet.contains(serviceKey) && CollUtil.isNotEmpty(snapshotList)) {
+            refreshAsync(registry, serviceKey);
+            return snapshotList;
+        }
+        try {
+            List<ServiceMetaInfo> serviceMetaInfoList = registry.serviceDiscovery(serviceKey);
+            update(serviceKey, serviceMetaInfoList);
+            return serviceMetaInfoList;
+        } catch (RuntimeException e) {
+            if (CollUtil.isEmpty(snapshotList)) {
+                throw e;
+            }
+            log.warn("注册中心不可用，使用本地快照, serviceKey = {}", serviceKey, e);
+            return snapshotList;
+        }
+    }
+
+    /**
+     * 写盘（同步）
+     */
+    public static void flush() {
+        File file = snapshotFile;
+        if (file == null || !dirty.compareAndSet(true, false)) {
+            return;
+        }
+        try {
+            write(file, snapshotMap);
+        } catch (Exception e) {
+            dirty.set(true);
+            log.warn("注册中心快照写入失败: {}", file.getAbsolutePath(), e);
+        }
+    }
+
+    /**
+     * 后台从注册中心刷新某个服务
+     *
+     * @param registry
+     * @param serviceKey
+     */
+    private static void refreshAsync(Registry registry, String serviceKey) {
+        if (!refreshingServiceKeySet.add(serviceKey)) {
+            return;
+        }
+        executor.execute(() -> {
+            try {
+                update(serviceKey, registry.serviceDiscovery(serviceKey));
+            } catch (Exception e) {
+                log.warn("注册中心刷新失败，继续使用本地快照, serviceKey = {}", serviceKey, e);
+            } finally {
+                refreshingServiceKeySet.remove(serviceKey);
+            }
+        });
+    }
+
+    /**
+     * 用注册中心的结果更新快照，结果为空时删除该服务，内容变化时延迟写盘
+     *
+     * @param serviceKey
+     * @param serviceMetaInfoList
+     */
+    private static void update(String serviceKey, List<ServiceMetaInfo> serviceMetaInfoList) {
+        liveServiceKeySet.add(serviceKey);
+        List<ServiceMetaInfo> oldList;
+        if (CollUtil.isEmpty(serviceMetaInfoList)) {
+            oldList = snapshotMap.remove(serviceKey);
+            if (oldList == null) {
+                return;
+            }
+        } else {
+            oldList = snapshotMap.put(serviceKey, serviceMetaInfoList);
+            if (oldList == serviceMetaInfoList || serviceMetaInfoList.equals(oldList)) {
+                return;
+            }
+        }
+        if (dirty.compareAndSet(false, true)) {
+            executor.schedule(RegistrySnapshot::flush, FLUSH_DELAY_MILLIS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * 读取快照文件（内存映射）
+     *
+     * @param file
+     * @return
+     * @throws IOException
+     */
+    static Map<String, List<ServiceMetaInfo>> read(File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.getInt() != FILE_MAGIC) {
+                throw new IOException("快照文件魔数非法");
+            }
+            byte formatVersion = buffer.get();
+            if (formatVersion != FORMAT_VERSION) {
+                throw new IOException("不支持的快照格式版本: " + formatVersion);
+            }
+            int serviceCount = buffer.getInt();
+            Map<String, List<ServiceMetaInfo>> result = new ConcurrentHashMap<>();
+            for (int i = 0; i < serviceCount; i++) {
+                String serviceKey = readString(buffer);
+                int nodeCount = buffer.getInt();
+                List<ServiceMetaInfo> serviceMetaInfoList = new ArrayList<>(nodeCount);
+                for (int j = 0; j < nodeCount; j++) {
+                    ServiceMetaInfo serviceMetaInfo = new ServiceMetaInfo();
+                    serviceMetaInfo.setServiceName(readString(buffer));
+                    serviceMetaInfo.setServiceVersion(readString(buffer));
+                    serviceMetaInfo.setServiceHost(readString(buffer));
+                    serviceMetaInfo.setServicePort(buffer.getInt());
+                    serviceMetaInfo.setServiceGroup(readString(buffer));
+                    serviceMetaInfo.setWeight(buffer.getInt());
+                    serviceMetaInfo.setRegisterTime(readNullableLong(buffer));
+                    serviceMetaInfo.setWarmup(readNullableLong(buffer));
+                    int protocolVersion = buffer.get();
+                    serviceMetaInfo.setProtocolVersion(protocolVersion == 0 ? null : protocolVersion);
+                    serviceMetaInfoList.add(serviceMetaInfo);
+                }
+                result.put(serviceKey, Collections.unmodifiableList(serviceMetaInfoList));
+            }
+            return result;
+        }
+    }
+
+    /**
+     * 写入快照文件（先写临时文件再原子替换，避免写一半时进程退出导致文件损坏）
+     *
+     * @param file
+     * @param serviceMap
+     * @throws IOException
+     */
+    static void write(File file, Map<String, List<ServiceMetaInfo>> serviceMap) throws IOException {
+        ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(byteArrayOutputStream);
+        Map<String, List<ServiceMetaInfo>> copy = Map.copyOf(serviceMap);
+        out.writeInt(FILE_MAGIC);
+        out.writeByte(FORMAT_VERSION);
+        out.writeInt(copy.size());
+        for (Map.Entry<String, List<ServiceMetaInfo>> entry : copy.entrySet()) {
+            writeString(out, entry.getKey());
+            out.writeInt(entry.getValue().size());
+            for (ServiceMetaInfo serviceMetaInfo : entry.getValue()) {
+                writeString(out, serviceMetaInfo.getServiceName());
+                writeString(out, serviceMetaInfo.getServiceVersion());
+                writeString(out, serviceMetaInfo.getServiceHost());
+                out.writeInt(serviceMetaInfo.getServicePort() == null ? 0 : serviceMetaInfo.getServicePort());
+                writeString(out, serviceMetaInfo.getServiceGroup());
+                out.writeInt(serviceMetaInfo.getWeight() == null ? ServiceMetaInfo.DEFAULT_WEIGHT : serviceMetaInfo.getWeight());
+                out.writeLong(serviceMetaInfo.getRegisterTime() == null ? -1L : serviceMetaInfo.getRegisterTime());
+                out.writeLong(serviceMetaInfo.getWarmup() == null ? -1L : serviceMetaInfo.getWarmup());
+                out.writeByte(serviceMetaInfo.getProtocolVersion() == null ? 0 : serviceMetaInfo.getProtocolVersion());
+            }
+        }
+        out.flush();
+
+        FileUtil.mkParentDirs(file);
+        Path tempPath = new File(file.getAbsolutePath() + ".tmp").toPath();
+        Files.write(tempPath, byteArrayOutputStream.toByteArray());
+        Files.move(tempPath, file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeShort(NULL_STRING_LENGTH);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length >= NULL_STRING_LENGTH) {
+            throw new IOException("字符串过长，无法写入快照: " + bytes.length);
+        }
+        out.writeShort(bytes.length);
+        out.write(bytes);
+    }
+
+    private static Long readNullableLong(ByteBuffer buffer) {
+        long value = buffer.getLong();
+        return value < 0 ? null : value;
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        int length = buffer.getShort() & 0xFFFF;
+        if (length == NULL_STRING_LENGTH) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -2,22 +2,24 @@ package com.zheng.registry;
 
 
 import com.zheng.model.ServiceMetaInfo;
-import io.vertx.core.impl.ConcurrentHashSet;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.curator.framework.CuratorFramework;
 import org.apache.curator.framework.CuratorFrameworkFactory;
-import org.apache.curator.framework.recipes.cache.CuratorCache;
-import org.apache.curator.framework.recipes.cache.CuratorCacheListener;
+import org.apache.curator.framework.state.ConnectionState;
 import org.apache.curator.retry.ExponentialBackoffRetry;
+import org.apache.curator.utils.CloseableUtils;
+import org.apache.curator.x.discovery.ServiceCache;
 import org.apache.curator.x.discovery.ServiceDiscovery;
 import org.apache.curator.x.discovery.ServiceDiscoveryBuilder;
 import org.apache.curator.x.discovery.ServiceInstance;
 import org.apache.curator.x.discovery.details.JsonInstanceSerializer;
+import org.apache.curator.x.discovery.details.ServiceCacheListener;
 
-import java.util.Collection;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
 
 /**
@@ -41,9 +43,9 @@ public class ZooKeeperRegistry implements Registry {
     private final RegistryServiceCache registryServiceCache = new RegistryServiceCache();
 
     /**
-     * 正在监听的 key 集合
+     * 各服务的实例缓存，服务键名 => ServiceCache
      */
-    private final Set<String> watchingKeySet = new ConcurrentHashSet<>();
+    private final Map<String, ServiceCache<ServiceMetaInfo>> serviceCacheMap = new ConcurrentHashMap<>();
 
     /**
      * 根节点
@@ -100,24 +102,16 @@ public class ZooKeeperRegistry implements Registry {
 
     @Override
     public List<ServiceMetaInfo> serviceDiscovery(String serviceKey) {
-        // 优先从缓存获取服务
-        List<ServiceMetaInfo> cachedServiceMetaInfoList = registryServiceCache.readCache();
+        // 优先从缓存获取服务（由 ServiceCache 监听器持续刷新）
+        List<ServiceMetaInfo> cachedServiceMetaInfoList = registryServiceCache.readCache(serviceKey);
         if (cachedServiceMetaInfoList != null) {
             return cachedServiceMetaInfoList;
         }
 
         try {
-            // 查询服务信息
-            Collection<ServiceInstance<ServiceMetaInfo>> serviceInstanceList = serviceDiscovery.queryForInstances(serviceKey);
-
-            // 解析服务信息
-            List<ServiceMetaInfo> serviceMetaInfoList = serviceInstanceList.stream()
-                    .map(ServiceInstance::getPayload)
-                    .collect(Collectors.toList());
-
-            // 写入服务缓存
-            registryServiceCache.writeCache(serviceMetaInfoList);
-            return serviceMetaInfoList;
+            // 首次发现该服务时创建 ServiceCache，之后只读内存快照，不再访问 zk
+            ServiceCache<ServiceMetaInfo> serviceCache = getOrCreateServiceCache(serviceKey);
+            return refreshCache(serviceKey, serviceCache);
         } catch (Exception e) {
             throw new RuntimeException("获取服务列表失败", e);
         }
@@ -130,24 +124,81 @@ public class ZooKeeperRegistry implements Registry {
 
     /**
      * 监听（消费端）
+     * 节点变更由所属服务的 ServiceCache 统一监听，这里只需确保该服务的 ServiceCache 已启动
      *
      * @param serviceNodeKey 服务节点 key
      */
     @Override
     public void watch(String serviceNodeKey) {
-        String watchKey = ZK_ROOT_PATH + "/" + serviceNodeKey;
-        boolean newWatch = watchingKeySet.add(watchKey);
-        if (newWatch) {
-            CuratorCache curatorCache = CuratorCache.build(client, watchKey);
-            curatorCache.start();
-            curatorCache.listenable().addListener(
-                    CuratorCacheListener
-                            .builder()
-                            .forDeletes(childData -> registryServiceCache.clearCache())
-                            .forChanges(((oldNode, node) -> registryServiceCache.clearCache()))
-                            .build()
-            );
+        // 服务节点 key 格式为 {serviceKey}/{host}:{port}
+        int index = serviceNodeKey.lastIndexOf('/');
+        String serviceKey = index > 0 ? serviceNodeKey.substring(0, index) : serviceNodeKey;
+        getOrCreateServiceCache(serviceKey);
+    }
+
+    /**
+     * 获取或创建某个服务的 ServiceCache
+     * ServiceCache 在内存中维护该服务的实例列表，并监听 zk 节点变化持续更新。
+     * start() 会阻塞到全量加载完成，放在 computeIfAbsent 之外执行，避免占住 map 的桶锁；
+     * 并发创建时只保留先放入的一个，其余关闭
+     *
+     * @param serviceKey 服务键名
+     * @return
+     */
+    private ServiceCache<ServiceMetaInfo> getOrCreateServiceCache(String serviceKey) {
+        ServiceCache<ServiceMetaInfo> existing = serviceCacheMap.get(serviceKey);
+        if (existing != null) {
+            return existing;
+        }
+        ServiceCache<ServiceMetaInfo> serviceCache = serviceDiscovery.serviceCacheBuilder()
+                .name(serviceKey)
+                .build();
+        serviceCache.addListener(new ServiceCacheListener() {
+            @Override
+            public void cacheChanged() {
+                // 并发创建中落选的 ServiceCache 不写缓存
+                if (serviceCacheMap.get(serviceKey) == serviceCache) {
+                    refreshCache(serviceKey, serviceCache);
+                }
+            }
+
+            @Override
+            public void stateChanged(CuratorFramework curatorFramework, ConnectionState connectionState) {
+                // 与 zk 断开期间继续使用最后一次的快照，重连后重新同步
+                if (connectionState == ConnectionState.RECONNECTED && serviceCacheMap.get(serviceKey) == serviceCache) {
+                    refreshCache(serviceKey, serviceCache);
+                }
+            }
+        });
+        try {
+            // 启动时会完成一次全量加载
+            serviceCache.start();
+        } catch (Exception e) {
+            // 启动失败的 ServiceCache 可能已注册了 watcher，关闭后再抛出
+            CloseableUtils.closeQuietly(serviceCache);
+            throw new RuntimeException(serviceKey + " 服务缓存启动失败", e);
         }
+        existing = serviceCacheMap.putIfAbsent(serviceKey, serviceCache);
+        if (existing != null) {
+            CloseableUtils.closeQuietly(serviceCache);
+            return existing;
+        }
+        return serviceCache;
+    }
+
+    /**
+     * 用 ServiceCache 中的实例刷新服务缓存
+     *
+     * @param serviceKey   服务键名
+     * @param serviceCache
+     * @return
+     */
+    private List<ServiceMetaInfo> refreshCache(String serviceKey, ServiceCache<ServiceMetaInfo> serviceCache) {
+        List<ServiceMetaInfo> serviceMetaInfoList = serviceCache.getInstances().stream()
+                .map(ServiceInstance::getPayload)
+                .collect(Collectors.toList());
+        registryServiceCache.writeCache(serviceKey, serviceMetaInfoList);
+        return serviceMetaInfoList;
     }
 
     @Override
@@ -163,6 +214,13 @@ public class ZooKeeperRegistry implements Registry {
         }
 
         // 释放资源
+        for (ServiceCache<ServiceMetaInfo> serviceCache : serviceCacheMap.values()) {
+            CloseableUtils.closeQuietly(serviceCache);
+        }
+        serviceCacheMap.clear();
+        if (serviceDiscovery != null) {
+            CloseableUtils.closeQuietly(serviceDiscovery);
+        }
         if (client != null) {
             client.close();
         }
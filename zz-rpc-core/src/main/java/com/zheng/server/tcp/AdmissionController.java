@@ -0,0 +1,155 @@
+package com.zheng.server.tcp;
+
+import com.zheng.conf.RpcConfig;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntConsumer;
+
+/**
+ * 服务端准入控制（服务提供者使用）
+ * 每个服务最多同时处理（含排队）maxConcurrency 个请求，超出直接拒绝；
+ * 请求在业务线程池中排队超过 queueTimeout 也不再执行，直接拒绝，
+ * 被拒绝的请求以 OVERLOADED 状态返回，调用方可以立即换节点重试而不是等待超时
+ */
+public class AdmissionController {
+
+    /**
+     * 服务名 => 并发名额
+     */
+    private final Map<String, Semaphore> semaphoreMap = new ConcurrentHashMap<>();
+
+    /**
+     * 业务线程池，请求不在 event loop 上执行
+     */
+    private final ExecutorService executor;
+
+    /**
+     * 单个服务的最大并发数（含排队）
+     */
+    private final int maxConcurrency;
+
+    /**
+     * 排队时间上限（纳秒）
+     */
+    private final long queueTimeoutNanos;
+
+    public AdmissionController(RpcConfig rpcConfig) {
+        this.maxConcurrency = rpcConfig.getServerMaxConcurrency();
+        this.queueTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(rpcConfig.getServerQueueTimeout());
+        int threads = rpcConfig.getServerWorkerThreads();
+        AtomicInteger threadIndex = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(threads, threads, 60L, TimeUnit.SECONDS, new LinkedBlockingQueue<>(),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "rpc-server-worker-" + threadIndex.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+    }
+
+    /**
+     * 提交请求
+     *
+     * @param serviceName 服务名
+     * @param task        请求处理逻辑
+     * @param onRejected  被拒绝时的处理逻辑（过载）
+     */
+    public void submit(String serviceName, Runnable task, Runnable onRejected) {
+        Semaphore semaphore = semaphoreMap.computeIfAbsent(serviceName, key -> new Semaphore(maxConcurrency));
+        if (!semaphore.tryAcquire()) {
+            onRejected.run();
+            return;
+        }
+        long acceptTime = System.nanoTime();
+        try {
+            executor.execute(() -> {
+                try {
+                    // 排队太久，调用方大概率已经超时，不再执行
+                    if (System.nanoTime() - acceptTime > queueTimeoutNanos) {
+                        onRejected.run();
+                        return;
+                    }
+                    task.run();
+                } finally {
+                    semaphore.release();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            semaphore.release();
+            onRejected.run();
+        }
+    }
+
+    /**
+     * 提交一组调用（批量请求）
+     * 整组作为一个请求准入，只占用一个并发名额；组内最多 parallelism 个调用同时执行，
+     * 避免一个大批量占满业务线程池，全部结束后归还名额
+     *
+     * @param serviceName 服务名
+     * @param count       调用数
+     * @param parallelism 组内最大并行数
+     * @param task        执行第 i 个调用
+     * @param onComplete  全部调用结束后的处理逻辑
+     * @param onRejected  整组被拒绝时的处理逻辑（过载）
+     */
+    public void submitAll(String serviceName, int count, int parallelism, IntConsumer task, Runnable onComplete, Runnable onRejected) {
+        Semaphore semaphore = semaphoreMap.computeIfAbsent(serviceName, key -> new Semaphore(maxConcurrency));
+        if (!semaphore.tryAcquire()) {
+            onRejected.run();
+            return;
+        }
+        long acceptTime = System.nanoTime();
+        AtomicInteger next = new AtomicInteger();
+        AtomicInteger remaining = new AtomicInteger(count);
+        Runnable worker = () -> {
+            int index;
+            while ((index = next.getAndIncrement()) < count) {
+                try {
+                    task.accept(index);
+                } finally {
+                    if (remaining.decrementAndGet() == 0) {
+                        semaphore.release();
+                        onComplete.run();
+                    }
+                }
+            }
+        };
+        try {
+            executor.execute(() -> {
+                if (System.nanoTime() - acceptTime > queueTimeoutNanos) {
+                    semaphore.release();
+                    onRejected.run();
+                    return;
+                }
+                for (int i = 1; i < Math.min(parallelism, count); i++) {
+                    try {
+                        executor.execute(worker);
+                    } catch (RejectedExecutionException e) {
+                        // 剩余的调用由已启动的线程执行
+                        break;
+                    }
+                }
+                worker.run();
+            });
+        } catch (RejectedExecutionException e) {
+            semaphore.release();
+            onRejected.run();
+        }
+    }
+
+    /**
+     * 在业务线程池中执行已准入请求的后续工作（如流式响应收到额度后继续发送），不再占用并发名额
+     *
+     * @param task
+     */
+    public void execute(Runnable task) {
+        executor.execute(task);
+    }
+}
@@ -0,0 +1,112 @@
+package com.zheng.server.tcp;
+
+import com.zheng.limiter.LimitExceededException;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * 连接内的在途请求表
+ * 请求 id 由计数器无锁递增分配，表是按 id 取模索引的环形数组，登记和查找都是一次数组访问，不需要全局 id 生成器和哈希表；
+ * 槽位中保存完整的 id，超时后才到达的响应不会误匹配复用同一槽位的新请求
+ *
+ * @param <T> 响应类型
+ */
+public class InflightTable<T> {
+
+    /**
+     * 请求 id 的取值范围（2^21），循环使用，紧凑协议中 varint 编码最多 3 字节
+     */
+    private static final long REQUEST_ID_MASK = (1L << 21) - 1;
+
+    private final int mask;
+
+    private final AtomicLong nextRequestId = new AtomicLong();
+
+    private final AtomicReferenceArray<Entry<T>> slots;
+
+    /**
+     * @param capacity 最大在途请求数，向上取整为 2 的幂
+     */
+    public InflightTable(int capacity) {
+        int size = capacity <= 1 ? 1 : Integer.highestOneBit(capacity - 1) << 1;
+        if (size > REQUEST_ID_MASK + 1) {
+            throw new IllegalArgumentException("在途请求表容量过大: " + capacity);
+        }
+        this.mask = size - 1;
+        this.slots = new AtomicReferenceArray<>(size);
+    }
+
+    /**
+     * 登记请求并分配请求 id，future 结束（响应、失败、超时或取消）后自动释放槽位
+     *
+     * @param future 响应 future
+     * @return 请求 id
+     */
+    public long register(CompletableFuture<T> future) {
+        // 槽位被仍未结束的请求占用时跳过，最多尝试一圈
+        for (int i = 0; i <= mask; i++) {
+            long requestId = nextRequestId.getAndIncrement() & REQUEST_ID_MASK;
+            int index = (int) (requestId & mask);
+            Entry<T> entry = new Entry<>(requestId, future);
+            if (slots.compareAndSet(index, null, entry)) {
+                future.whenComplete((response, e) -> slots.compareAndSet(index, entry, null));
+                return requestId;
+            }
+        }
+        throw new LimitExceededException("连接在途请求数超过上限: " + (mask + 1));
+    }
+
+    /**
+     * 按请求 id 查找在途请求
+     *
+     * @param requestId
+     * @return 请求已结束（如超时）时返回 null
+     */
+    public CompletableFuture<T> get(long requestId) {
+        Entry<T> entry = slots.get((int) (requestId & mask));
+        return entry != null && entry.requestId == requestId ? entry.future : null;
+    }
+
+    /**
+     * 以异常结束全部在途请求（连接断开时调用）
+     *
+     * @param e
+     */
+    public void failAll(Throwable e) {
+        for (int i = 0; i <= mask; i++) {
+            Entry<T> entry = slots.get(i);
+            if (entry != null) {
+                entry.future.completeExceptionally(e);
+            }
+        }
+    }
+
+    /**
+     * 在途请求数
+     *
+     * @return
+     */
+    public int size() {
+        int size = 0;
+        for (int i = 0; i <= mask; i++) {
+            if (slots.get(i) != null) {
+                size++;
+            }
+        }
+        return size;
+    }
+
+    private static final class Entry<T> {
+
+        private final long requestId;
+
+        private final CompletableFuture<T> future;
+
+        private Entry(long requestId, CompletableFuture<T> future) {
+            this.requestId = requestId;
+            this.future = future;
+        }
+    }
+}
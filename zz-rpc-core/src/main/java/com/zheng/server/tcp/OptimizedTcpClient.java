@@ -86,7 +86,7 @@ public class OptimizedTcpClient {
      * 设置响应处理器
      */
     private static void setupResponseHandler(NetSocket socket, ServiceMetaInfo serviceMetaInfo) {
-        TcpBufferHandlerWrapper bufferHandlerWrapper = new TcpBufferHandlerWrapper(buffer -> {
+        TcpBufferHandlerWrapper bufferHandlerWrapper = new TcpBufferHandlerWrapper(socket, buffer -> {
             try {
                 ProtocolMessage<RpcResponse> responseMessage = 
                         (ProtocolMessage<RpcResponse>) ProtocolMessageDecoder.decode(buffer);
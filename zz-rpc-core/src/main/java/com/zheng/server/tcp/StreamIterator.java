@@ -0,0 +1,159 @@
+package com.zheng.server.tcp;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 流式调用的接收端（消费者使用）
+ * 服务端最多发送 window 个未确认的元素，本地缓冲不会超过窗口大小；
+ * 每消费半个窗口就向服务端补充相应的额度。提前结束时需要调用 {@link #close()} 通知服务端停止发送
+ *
+ * @param <T> 元素类型
+ */
+public class StreamIterator<T> implements Iterator<T>, AutoCloseable {
+
+    /**
+     * 结束标记
+     */
+    private static final Object END = new Object();
+
+    /**
+     * null 元素的占位
+     */
+    private static final Object NULL = new Object();
+
+    /**
+     * 与服务端的通道
+     */
+    public interface Channel {
+
+        /**
+         * 补充额度
+         *
+         * @param credit
+         */
+        void request(int credit);
+
+        /**
+         * 取消
+         */
+        void cancel();
+    }
+
+    private final BlockingQueue<Object> queue = new LinkedBlockingQueue<>();
+
+    private final int window;
+
+    /**
+     * 等待下一个元素的超时时间（毫秒）
+     */
+    private final long timeout;
+
+    private final AtomicBoolean ended = new AtomicBoolean();
+
+    private final AtomicBoolean closed = new AtomicBoolean();
+
+    private volatile Channel channel;
+
+    private volatile Throwable error;
+
+    private Object next;
+
+    private boolean finished;
+
+    /**
+     * 上次补充额度后消费的元素数
+     */
+    private int consumed;
+
+    public StreamIterator(int window, long timeout) {
+        this.window = window;
+        this.timeout = timeout;
+    }
+
+    public void setChannel(Channel channel) {
+        this.channel = channel;
+    }
+
+    /**
+     * 收到一个元素
+     *
+     * @param data
+     */
+    public void onData(Object data) {
+        queue.offer(data == null ? NULL : data);
+    }
+
+    /**
+     * 流结束
+     *
+     * @param e 异常结束时不为 null
+     */
+    public void onEnd(Throwable e) {
+        if (ended.compareAndSet(false, true)) {
+            error = e;
+            queue.offer(END);
+        }
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (next != null) {
+            return true;
+        }
+        if (finished) {
+            return false;
+        }
+        Object item;
+        try {
+            item = queue.poll(timeout, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            close();
+            throw new RuntimeException("流式调用被中断", e);
+        }
+        if (item == null) {
+            close();
+            throw new RuntimeException("流式调用超时");
+        }
+        if (item == END) {
+            finished = true;
+            closed.set(true);
+            if (error != null) {
+                throw new RuntimeException("流式调用失败", error);
+            }
+            return false;
+        }
+        next = item;
+        if (++consumed >= Math.max(1, window / 2)) {
+            channel.request(consumed);
+            consumed = 0;
+        }
+        return true;
+    }
+
+    @Override
+    public T next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        Object item = next;
+        next = null;
+        return item == NULL ? null : (T) item;
+    }
+
+    /**
+     * 提前结束，通知服务端停止发送
+     */
+    @Override
+    public void close() {
+        finished = true;
+        if (closed.compareAndSet(false, true) && channel != null) {
+            channel.cancel();
+        }
+    }
+}
@@ -0,0 +1,196 @@
+package com.zheng.server.tcp;
+
+import com.zheng.model.RpcStreamFrame;
+import com.zheng.protocal.ProtocolMessageTypeEnum;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+import java.util.stream.BaseStream;
+
+/**
+ * 流式响应的发送端（服务提供者使用）
+ * 按需从服务方法返回的迭代器中取元素发送，每发送一个消耗一个额度，额度用完即暂停并释放业务线程，
+ * 收到调用方的新额度后再回到业务线程池继续发送，服务端和调用方都不需要把整个结果集放在内存里。
+ * 在执行服务方法之前创建并登记，执行期间收到的取消在拿到数据源后立即生效并关闭数据源
+ */
+@Slf4j
+public class StreamProducer {
+
+    /**
+     * 服务方法的返回值，结束时如可关闭则关闭（开始发送前为 null）
+     */
+    private volatile Object source;
+
+    private volatile Iterator<?> iterator;
+
+    /**
+     * 发送消息帧
+     */
+    private final BiConsumer<ProtocolMessageTypeEnum, RpcStreamFrame> sender;
+
+    /**
+     * 恢复发送时使用的线程池
+     */
+    private final Executor executor;
+
+    /**
+     * 剩余额度
+     */
+    private final AtomicInteger credit = new AtomicInteger();
+
+    /**
+     * 是否有线程正在发送，保证同一时刻只有一个线程读取迭代器
+     */
+    private final AtomicBoolean running = new AtomicBoolean();
+
+    private final AtomicBoolean closed = new AtomicBoolean();
+
+    /**
+     * 已结束（发送完、出错或被取消）
+     */
+    private volatile boolean done;
+
+    public StreamProducer(BiConsumer<ProtocolMessageTypeEnum, RpcStreamFrame> sender, Executor executor) {
+        this.sender = sender;
+        this.executor = executor;
+    }
+
+    /**
+     * 将服务方法的返回值转换为迭代器
+     *
+     * @param result 返回值
+     * @return 不支持流式返回时为 null
+     */
+    public static Iterator<?> toIterator(Object result) {
+        if (result == null) {
+            return Collections.emptyIterator();
+        }
+        if (result instanceof Iterator) {
+            return (Iterator<?>) result;
+        }
+        if (result instanceof Iterable) {
+            return ((Iterable<?>) result).iterator();
+        }
+        if (result instanceof BaseStream) {
+            return ((BaseStream<?, ?>) result).iterator();
+        }
+        if (result instanceof Object[]) {
+            return Arrays.asList((Object[]) result).iterator();
+        }
+        return null;
+    }
+
+    /**
+     * 在当前线程开始发送，已被取消时只关闭数据源
+     *
+     * @param source        服务方法的返回值
+     * @param iterator      返回值对应的迭代器
+     * @param initialCredit 初始额度
+     */
+    public void start(Object source, Iterator<?> iterator, int initialCredit) {
+        this.source = source;
+        this.iterator = iterator;
+        credit.addAndGet(initialCredit);
+        if (running.compareAndSet(false, true)) {
+            pump();
+        } else if (done) {
+            // 取消方已占用 running，但它关闭时可能还没有数据源
+            close();
+        }
+    }
+
+    /**
+     * 是否已结束（如开始发送前已被取消）
+     *
+     * @return
+     */
+    public boolean isDone() {
+        return done;
+    }
+
+    /**
+     * 收到新的额度
+     *
+     * @param n
+     */
+    public void onCredit(int n) {
+        if (n <= 0 || done) {
+            return;
+        }
+        credit.addAndGet(n);
+        // 尚未开始发送时只累计额度，开始时一起使用
+        if (iterator != null && running.compareAndSet(false, true)) {
+            executor.execute(this::pump);
+        }
+    }
+
+    /**
+     * 调用方取消，不再发送
+     */
+    public void cancel() {
+        done = true;
+        // 正在发送的线程退出时会负责关闭
+        if (running.compareAndSet(false, true)) {
+            close();
+        }
+    }
+
+    private void pump() {
+        while (true) {
+            try {
+                while (!done && credit.get() > 0) {
+                    if (!iterator.hasNext()) {
+                        finish(null);
+                        break;
+                    }
+                    Object item = iterator.next();
+                    credit.decrementAndGet();
+                    sender.accept(ProtocolMessageTypeEnum.STREAM_DATA, RpcStreamFrame.builder().data(item).build());
+                }
+            } catch (Exception e) {
+                log.error("流式响应发送失败", e);
+                finish(e);
+            }
+            if (done) {
+                // 保持 running，之后不会再有线程进入
+                close();
+                return;
+            }
+            running.set(false);
+            // 释放之前可能又收到了额度
+            if (credit.get() > 0 && running.compareAndSet(false, true)) {
+                continue;
+            }
+            return;
+        }
+    }
+
+    private void finish(Exception e) {
+        if (done) {
+            return;
+        }
+        done = true;
+        RpcStreamFrame frame = RpcStreamFrame.builder()
+                .message(e == null ? "ok" : e.getMessage())
+                .exception(e)
+                .build();
+        sender.accept(ProtocolMessageTypeEnum.STREAM_END, frame);
+    }
+
+    private void close() {
+        Object source = this.source;
+        if (source instanceof AutoCloseable && closed.compareAndSet(false, true)) {
+            try {
+                ((AutoCloseable) source).close();
+            } catch (Exception e) {
+                log.warn("关闭流式响应数据源失败", e);
+            }
+        }
+    }
+}
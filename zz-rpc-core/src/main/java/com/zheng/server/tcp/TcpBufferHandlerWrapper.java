@@ -1,68 +1,134 @@
 package com.zheng.server.tcp;
 
+import com.zheng.protocal.CompactProtocolMessageDecoder;
 import com.zheng.protocal.ProtocolConstant;
 import io.vertx.core.Handler;
 import io.vertx.core.buffer.Buffer;
-import io.vertx.core.parsetools.RecordParser;
+import io.vertx.core.net.NetSocket;
+import lombok.extern.slf4j.Slf4j;
 
 /**
  * TCP 消息处理器包装
+ * 累积收到的数据，按消息头中的版本号计算每条消息的长度后切分，解决半包、粘包问题；
+ * v1、v2 的消息头为固定 17 字节，v3 的消息头是变长的，同一连接上可以混合出现。
+ * 魔数或版本号不对、消息长度为负或超过 {@link ProtocolConstant#MAX_FRAME_LENGTH} 时，之后的数据无法再切分，
+ * 丢弃缓冲的数据并关闭连接
  */
+@Slf4j
 public class TcpBufferHandlerWrapper implements Handler<Buffer> {
 
+    private final Handler<Buffer> bufferHandler;
+
+    /**
+     * 收到非法数据时关闭的连接，为 null 时直接抛出异常
+     */
+    private final NetSocket socket;
+
+    /**
+     * 尚未组成完整消息的数据
+     */
+    private Buffer pending = Buffer.buffer();
+
     /**
-     * 解析器，用于解决半包、粘包问题
+     * 是否已收到非法数据，之后的数据全部丢弃
      */
-    private final RecordParser recordParser;
+    private boolean broken;
 
     public TcpBufferHandlerWrapper(Handler<Buffer> bufferHandler) {
-        recordParser = initRecordParser(bufferHandler);
+        this(null, bufferHandler);
+    }
+
+    public TcpBufferHandlerWrapper(NetSocket socket, Handler<Buffer> bufferHandler) {
+        this.socket = socket;
+        this.bufferHandler = bufferHandler;
     }
 
     @Override
     public void handle(Buffer buffer) {
-        recordParser.handle(buffer);
+        if (broken) {
+            return;
+        }
+        pending.appendBuffer(buffer);
+        int offset = 0;
+        RuntimeException violation = null;
+        try {
+            while (true) {
+                int frameLength;
+                try {
+                    frameLength = frameLength(pending, offset);
+                } catch (RuntimeException e) {
+                    violation = e;
+                    break;
+                }
+                if (frameLength < 0 || pending.length() - offset < frameLength) {
+                    break;
+                }
+                // 已拼接为完整 Buffer，执行处理
+                Buffer frame = pending.getBuffer(offset, offset + frameLength);
+                offset += frameLength;
+                bufferHandler.handle(frame);
+            }
+        } finally {
+            // 丢弃已处理的数据，处理失败的消息不会被重复处理
+            if (offset > 0) {
+                pending = pending.getBuffer(offset, pending.length());
+            }
+        }
+        if (violation != null) {
+            broken = true;
+            pending = Buffer.buffer();
+            if (socket == null) {
+                throw violation;
+            }
+            log.error("收到非法的协议数据，关闭连接 {}: {}", socket.remoteAddress(), violation.getMessage());
+            socket.close();
+        }
     }
 
     /**
-     * 初始化解析器
+     * 计算从 offset 开始的一条消息的总长度（头 + 体）
      *
-     * @param bufferHandler
-     * @return
+     * @param buffer
+     * @param offset
+     * @return 数据不足以读出消息头时返回 -1
+     * @throws RuntimeException 魔数、版本号或消息长度非法
      */
-    private RecordParser initRecordParser(Handler<Buffer> bufferHandler) {
-        // 构造 parser
-        RecordParser parser = RecordParser.newFixed(ProtocolConstant.MESSAGE_HEADER_LENGTH);
-
-        parser.setOutput(new Handler<Buffer>() {
-            // 初始化
-            int size = -1;
-            // 一次完整的读取（头 + 体）
-            Buffer resultBuffer = Buffer.buffer();
-
-            @Override
-            public void handle(Buffer buffer) {
-                // 1. 每次循环，首先读取消息头
-                if (-1 == size) {
-                    // 读取消息体长度
-                    size = buffer.getInt(13);
-                    parser.fixedSizeMode(size);
-                    // 写入头信息到结果
-                    resultBuffer.appendBuffer(buffer);
-                } else {
-                    // 2. 然后读取消息体
-                    // 写入体信息到结果
-                    resultBuffer.appendBuffer(buffer);
-                    // 已拼接为完整 Buffer，执行处理
-                    bufferHandler.handle(resultBuffer);
-                    // 重置一轮
-                    parser.fixedSizeMode(ProtocolConstant.MESSAGE_HEADER_LENGTH);
-                    size = -1;
-                    resultBuffer = Buffer.buffer();
-                }
+    private static int frameLength(Buffer buffer, int offset) {
+        int readable = buffer.length() - offset;
+        if (readable <= 0) {
+            return -1;
+        }
+        if (buffer.getByte(offset) != ProtocolConstant.PROTOCOL_MAGIC) {
+            throw new RuntimeException("消息魔数非法: " + buffer.getByte(offset));
+        }
+        if (readable <= ProtocolConstant.VERSION_OFFSET) {
+            return -1;
+        }
+        byte version = buffer.getByte(offset + ProtocolConstant.VERSION_OFFSET);
+        int frameLength;
+        if (version == ProtocolConstant.COMPACT_PROTOCOL_VERSION) {
+            frameLength = CompactProtocolMessageDecoder.frameLength(buffer, offset);
+            if (frameLength < 0) {
+                return -1;
             }
-        });
-
-        return parser;
+        } else if (version == ProtocolConstant.PROTOCOL_VERSION || version == ProtocolConstant.OPTIMIZED_PROTOCOL_VERSION) {
+            if (readable < ProtocolConstant.MESSAGE_HEADER_LENGTH) {
+                return -1;
+            }
+            // 按版本号读取消息体长度，两个版本的消息头等长
+            int bodyLengthOffset = version == ProtocolConstant.OPTIMIZED_PROTOCOL_VERSION
+                    ? ProtocolConstant.OPTIMIZED_BODY_LENGTH_OFFSET : ProtocolConstant.BODY_LENGTH_OFFSET;
+            int bodyLength = buffer.getInt(offset + bodyLengthOffset);
+            if (bodyLength < 0 || bodyLength > ProtocolConstant.MAX_FRAME_LENGTH) {
+                throw new RuntimeException("消息体长度非法: " + bodyLength);
+            }
+            frameLength = ProtocolConstant.MESSAGE_HEADER_LENGTH + bodyLength;
+        } else {
+            throw new RuntimeException("不支持的协议版本: " + version);
+        }
+        if (frameLength > ProtocolConstant.MAX_FRAME_LENGTH) {
+            throw new RuntimeException("消息长度超过上限: " + frameLength);
+        }
+        return frameLength;
     }
 }
@@ -0,0 +1,137 @@
+package com.zheng.server.tcp;
+
+import com.zheng.limiter.OverloadedException;
+import com.zheng.model.ServiceMetaInfo;
+import com.zheng.protocal.ProtocolMessage;
+import com.zheng.protocal.ProtocolMessageDecoder;
+import com.zheng.protocal.ProtocolMessageEncoder;
+import com.zheng.protocal.ProtocolMessageStatusEnum;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.net.NetClient;
+import io.vertx.core.net.NetSocket;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * 到一个服务提供者的长连接，多个请求复用，按请求 id 匹配响应
+ * 连接断开（包括空闲超时）后标记为已关闭，在途请求全部失败，下次调用时重新建立连接
+ */
+@Slf4j
+class TcpConnection {
+
+    /**
+     * 单个连接的最大在途请求数
+     */
+    private static final int MAX_INFLIGHT = 1024;
+
+    /**
+     * 服务地址（host:port）
+     */
+    private final String serviceKey;
+
+    private final InflightTable<Object> inflightTable = new InflightTable<>(MAX_INFLIGHT);
+
+    /**
+     * 连接建立后完成，连接建立前发出的请求在连接建立后写出
+     */
+    private final CompletableFuture<NetSocket> socketFuture = new CompletableFuture<>();
+
+    private volatile boolean closed;
+
+    TcpConnection(NetClient netClient, ServiceMetaInfo serviceMetaInfo, String serviceKey) {
+        this.serviceKey = serviceKey;
+        netClient.connect(serviceMetaInfo.getServicePort(), serviceMetaInfo.getServiceHost(), result -> {
+            if (!result.succeeded()) {
+                log.error("Failed to connect to TCP server: {}", result.cause().getMessage());
+                closed = true;
+                socketFuture.completeExceptionally(new RuntimeException("连接失败", result.cause()));
+                return;
+            }
+            NetSocket socket = result.result();
+            socket.handler(new TcpBufferHandlerWrapper(socket, buffer -> handleResponse(socket, buffer)));
+            socket.closeHandler(v -> {
+                closed = true;
+                inflightTable.failAll(new RuntimeException("连接已关闭: " + serviceKey));
+            });
+            socketFuture.complete(socket);
+        });
+    }
+
+    /**
+     * 发送请求，请求 id 由连接分配
+     *
+     * @param protocolMessage 请求消息
+     * @param <T>             响应消息体类型
+     * @return
+     */
+    @SuppressWarnings("unchecked")
+    <T> CompletableFuture<T> request(ProtocolMessage<?> protocolMessage) {
+        CompletableFuture<Object> responseFuture = new CompletableFuture<>();
+        protocolMessage.getHeader().setRequestId(inflightTable.register(responseFuture));
+        if (closed) {
+            // 取连接与登记之间连接已断开，断开时的 failAll 可能已错过本请求，立即失败并释放槽位
+            responseFuture.completeExceptionally(new RuntimeException("连接已关闭: " + serviceKey));
+            return (CompletableFuture<T>) responseFuture;
+        }
+        Buffer encodeBuffer;
+        try {
+            encodeBuffer = ProtocolMessageEncoder.encode(protocolMessage);
+        } catch (IOException e) {
+            responseFuture.cancel(false);
+            log.error("协议消息编码错误", e);
+            throw new RuntimeException("协议消息编码错误", e);
+        }
+        socketFuture.whenComplete((socket, e) -> {
+            if (e != null) {
+                responseFuture.completeExceptionally(e);
+            } else if (!responseFuture.isDone()) {
+                socket.write(encodeBuffer);
+            }
+        });
+        return (CompletableFuture<T>) responseFuture;
+    }
+
+    /**
+     * 连接是否已关闭
+     *
+     * @return
+     */
+    boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * 关闭连接
+     */
+    void close() {
+        closed = true;
+        socketFuture.thenAccept(NetSocket::close);
+    }
+
+    private void handleResponse(NetSocket socket, Buffer buffer) {
+        ProtocolMessage<?> protocolMessage;
+        try {
+            protocolMessage = ProtocolMessageDecoder.decode(buffer);
+        } catch (Exception e) {
+            // 无法确定属于哪个请求，关闭连接使在途请求全部失败
+            log.error("协议消息解码错误，关闭连接: {}", serviceKey, e);
+            socket.close();
+            return;
+        }
+        ProtocolMessage.Header header = protocolMessage.getHeader();
+        CompletableFuture<Object> responseFuture = inflightTable.get(header.getRequestId());
+        if (responseFuture == null) {
+            // 请求已超时或被取消
+            log.debug("丢弃已结束请求的响应: {}, requestId = {}", serviceKey, header.getRequestId());
+            return;
+        }
+        if (header.getStatus() == ProtocolMessageStatusEnum.OVERLOADED.getValue()) {
+            // 服务端过载拒绝，请求未执行
+            responseFuture.completeExceptionally(new OverloadedException("服务提供者过载: " + serviceKey));
+        } else {
+            responseFuture.complete(protocolMessage.getBody());
+        }
+    }
+}
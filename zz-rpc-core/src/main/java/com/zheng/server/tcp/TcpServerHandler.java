@@ -1,22 +1,55 @@
 package com.zheng.server.tcp;
 
+import com.zheng.RpcApplication;
+import com.zheng.limiter.OverloadedException;
+import com.zheng.model.RpcBatchRequest;
+import com.zheng.model.RpcBatchResponse;
 import com.zheng.model.RpcRequest;
 import com.zheng.model.RpcResponse;
+import com.zheng.model.RpcStreamFrame;
 import com.zheng.protocal.*;
 import com.zheng.registry.LocalRegistry;
 import io.vertx.core.Handler;
 import io.vertx.core.buffer.Buffer;
 import io.vertx.core.net.NetSocket;
+import lombok.extern.slf4j.Slf4j;
 
 import java.io.IOException;
 import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
 
 /**
  * TCP 请求处理器
  *
  */
+@Slf4j
 public class TcpServerHandler implements Handler<NetSocket> {
 
+    /**
+     * 单个批量请求内最多同时执行的调用数
+     */
+    private static final int BATCH_PARALLELISM = 8;
+
+    /**
+     * 准入控制，请求在业务线程池中执行
+     */
+    private final AdmissionController admissionController;
+
+    public TcpServerHandler() {
+        this(new AdmissionController(RpcApplication.getRpcConfig()));
+    }
+
+    public TcpServerHandler(AdmissionController admissionController) {
+        this.admissionController = admissionController;
+    }
+
     /**
      * 处理请求
      *
@@ -24,47 +57,220 @@ public class TcpServerHandler implements Handler<NetSocket> {
      */
     @Override
     public void handle(NetSocket socket) {
-        TcpBufferHandlerWrapper bufferHandlerWrapper = new TcpBufferHandlerWrapper(buffer -> {
+        // 该连接上进行中的流式响应，请求 id => 发送端
+        Map<Long, StreamProducer> streams = new ConcurrentHashMap<>();
+        socket.closeHandler(v -> streams.values().forEach(StreamProducer::cancel));
+        TcpBufferHandlerWrapper bufferHandlerWrapper = new TcpBufferHandlerWrapper(socket, buffer -> {
             // 接受请求，解码
-            ProtocolMessage<RpcRequest> protocolMessage;
+            ProtocolMessage<?> protocolMessage;
             try {
-                protocolMessage = (ProtocolMessage<RpcRequest>) ProtocolMessageDecoder.decode(buffer);
+                protocolMessage = ProtocolMessageDecoder.decode(buffer);
             } catch (IOException e) {
                 throw new RuntimeException("协议消息解码错误");
             }
-            RpcRequest rpcRequest = protocolMessage.getBody();
             ProtocolMessage.Header header = protocolMessage.getHeader();
-
-            // 处理请求
-            // 构造响应结果对象
-            RpcResponse rpcResponse = new RpcResponse();
-            try {
-                // 获取要调用的服务实现类，通过反射调用
-                Class<?> implClass = LocalRegistry.get(rpcRequest.getServiceName());
-                Method method = implClass.getMethod(rpcRequest.getMethodName(), rpcRequest.getParameterTypes());
-                Object result = method.invoke(implClass.newInstance(), rpcRequest.getArgs());
-                // 封装返回结果
-                rpcResponse.setData(result);
-                rpcResponse.setDataType(method.getReturnType());
-                rpcResponse.setMessage("ok");
-            } catch (Exception e) {
-                e.printStackTrace();
-                rpcResponse.setMessage(e.getMessage());
-                rpcResponse.setException(e);
+            ProtocolMessageTypeEnum messageType = ProtocolMessageTypeEnum.getEnumByKey(header.getType());
+            if (messageType == ProtocolMessageTypeEnum.BATCH_REQUEST) {
+                handleBatch(socket, header, (RpcBatchRequest) protocolMessage.getBody());
+                return;
             }
-
-            // 发送响应，编码
-            header.setType((byte) ProtocolMessageTypeEnum.RESPONSE.getKey());
-            header.setStatus((byte) ProtocolMessageStatusEnum.OK.getValue());
-            ProtocolMessage<RpcResponse> responseProtocolMessage = new ProtocolMessage<>(header, rpcResponse);
-            try {
-                Buffer encode = ProtocolMessageEncoder.encode(responseProtocolMessage);
-                socket.write(encode);
-            } catch (IOException e) {
-                throw new RuntimeException("协议消息编码错误");
+            if (messageType == ProtocolMessageTypeEnum.STREAM_REQUEST) {
+                handleStream(socket, header, (RpcStreamFrame) protocolMessage.getBody(), streams);
+                return;
+            }
+            if (messageType == ProtocolMessageTypeEnum.STREAM_CREDIT) {
+                StreamProducer producer = streams.get(header.getRequestId());
+                if (producer != null) {
+                    producer.onCredit(((RpcStreamFrame) protocolMessage.getBody()).getCredit());
+                }
+                return;
             }
+            if (messageType == ProtocolMessageTypeEnum.STREAM_CANCEL) {
+                StreamProducer producer = streams.remove(header.getRequestId());
+                if (producer != null) {
+                    producer.cancel();
+                }
+                return;
+            }
+            RpcRequest rpcRequest = (RpcRequest) protocolMessage.getBody();
+
+            // 截止时间从收到请求开始按调用方的完整超时时间计算，不扣除网络传输耗时，是宽松的上限
+            long deadline = rpcRequest.getTimeout() > 0 ? System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(rpcRequest.getTimeout()) : 0;
+            admissionController.submit(rpcRequest.getServiceName(),
+                    () -> {
+                        // 排队期间已超过截止时间，不再执行，直接返回失败响应让调用方尽快结束
+                        if (deadline != 0 && System.nanoTime() - deadline > 0) {
+                            log.warn("请求已超时，跳过执行: {}.{}", rpcRequest.getServiceName(), rpcRequest.getMethodName());
+                            writeResponse(socket, header, ProtocolMessageStatusEnum.OK, failedResponse(new RuntimeException("请求已超时")));
+                            return;
+                        }
+                        writeResponse(socket, header, ProtocolMessageStatusEnum.OK, doInvoke(rpcRequest));
+                    },
+                    () -> {
+                        // 过载，直接拒绝
+                        RpcResponse rpcResponse = new RpcResponse();
+                        rpcResponse.setMessage("服务端过载");
+                        writeResponse(socket, header, ProtocolMessageStatusEnum.OVERLOADED, rpcResponse);
+                    });
         });
         socket.handler(bufferHandlerWrapper);
     }
 
+    /**
+     * 处理批量请求：整批作为一个请求经过准入控制（按第一个调用的服务名），
+     * 批内最多 BATCH_PARALLELISM 个调用并行执行，全部结束后合并为一个响应返回
+     * 整批被拒绝时每个调用的响应都带上过载异常；已超时的调用在各自的响应中带上异常，不影响其他调用
+     *
+     * @param socket
+     * @param header       请求头
+     * @param batchRequest 批量请求
+     */
+    private void handleBatch(NetSocket socket, ProtocolMessage.Header header, RpcBatchRequest batchRequest) {
+        List<RpcRequest> requests = batchRequest.getRequests() == null ? Collections.emptyList() : batchRequest.getRequests();
+        if (requests.isEmpty()) {
+            writeResponse(socket, header, ProtocolMessageStatusEnum.OK,
+                    RpcBatchResponse.builder().responses(Collections.emptyList()).build());
+            return;
+        }
+        RpcResponse[] responses = new RpcResponse[requests.size()];
+        long deadline = batchRequest.getTimeout() > 0 ? System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(batchRequest.getTimeout()) : 0;
+        admissionController.submitAll(requests.get(0).getServiceName(), requests.size(), BATCH_PARALLELISM,
+                index -> responses[index] = deadline != 0 && System.nanoTime() - deadline > 0
+                        ? failedResponse(new RuntimeException("请求已超时"))
+                        : doInvoke(requests.get(index)),
+                () -> writeResponse(socket, header, ProtocolMessageStatusEnum.OK,
+                        RpcBatchResponse.builder().responses(Arrays.asList(responses)).build()),
+                () -> {
+                    Arrays.fill(responses, failedResponse(new OverloadedException("服务端过载")));
+                    writeResponse(socket, header, ProtocolMessageStatusEnum.OK,
+                            RpcBatchResponse.builder().responses(Arrays.asList(responses)).build());
+                });
+    }
+
+    /**
+     * 处理流式请求：服务方法返回迭代器（Iterator、Iterable、Stream 或数组），按调用方给出的额度逐个发送元素
+     *
+     * @param socket
+     * @param header  请求头
+     * @param frame   请求帧
+     * @param streams 该连接上进行中的流式响应
+     */
+    private void handleStream(NetSocket socket, ProtocolMessage.Header header, RpcStreamFrame frame, Map<Long, StreamProducer> streams) {
+        RpcRequest rpcRequest = frame.getRequest();
+        long requestId = header.getRequestId();
+        BiConsumer<ProtocolMessageTypeEnum, RpcStreamFrame> sender = (type, streamFrame) -> {
+            if (type == ProtocolMessageTypeEnum.STREAM_END) {
+                streams.remove(requestId);
+            }
+            writeFrame(socket, header, type, streamFrame);
+        };
+        // 执行服务方法前先登记，执行期间收到的取消或连接关闭也能作用到它
+        StreamProducer producer = new StreamProducer(sender, admissionController::execute);
+        streams.put(requestId, producer);
+        admissionController.submit(rpcRequest.getServiceName(),
+                () -> {
+                    if (producer.isDone()) {
+                        // 排队期间已被取消
+                        streams.remove(requestId);
+                        return;
+                    }
+                    RpcResponse rpcResponse = doInvoke(rpcRequest);
+                    Iterator<?> iterator = rpcResponse.getException() == null ? StreamProducer.toIterator(rpcResponse.getData()) : null;
+                    if (iterator == null) {
+                        Exception e = rpcResponse.getException() != null ? rpcResponse.getException()
+                                : new IllegalStateException("方法返回值不支持流式调用: " + rpcRequest.getMethodName());
+                        sender.accept(ProtocolMessageTypeEnum.STREAM_END, RpcStreamFrame.builder().message(e.getMessage()).exception(e).build());
+                        return;
+                    }
+                    producer.start(rpcResponse.getData(), iterator, frame.getCredit());
+                },
+                () -> sender.accept(ProtocolMessageTypeEnum.STREAM_END,
+                        RpcStreamFrame.builder().message("服务端过载").exception(new OverloadedException("服务端过载")).build()));
+    }
+
+    /**
+     * 发送流式响应帧，每帧使用独立的消息头，可以在多个线程中发送
+     *
+     * @param socket
+     * @param requestHeader 请求头
+     * @param type          帧类型
+     * @param frame
+     */
+    private void writeFrame(NetSocket socket, ProtocolMessage.Header requestHeader, ProtocolMessageTypeEnum type, RpcStreamFrame frame) {
+        ProtocolMessage.Header header = new ProtocolMessage.Header();
+        header.setMagic(requestHeader.getMagic());
+        header.setVersion(requestHeader.getVersion());
+        header.setSerializer(requestHeader.getSerializer());
+        header.setCompressor(requestHeader.getCompressor());
+        header.setType((byte) type.getKey());
+        header.setStatus((byte) ProtocolMessageStatusEnum.OK.getValue());
+        header.setRequestId(requestHeader.getRequestId());
+        try {
+            socket.write(ProtocolMessageEncoder.encode(new ProtocolMessage<>(header, frame)));
+        } catch (IOException e) {
+            throw new RuntimeException("协议消息编码错误");
+        }
+    }
+
+    /**
+     * 构造失败响应
+     *
+     * @param e
+     * @return
+     */
+    private static RpcResponse failedResponse(RuntimeException e) {
+        RpcResponse rpcResponse = new RpcResponse();
+        rpcResponse.setMessage(e.getMessage());
+        rpcResponse.setException(e);
+        return rpcResponse;
+    }
+
+    /**
+     * 处理请求
+     *
+     * @param rpcRequest
+     * @return
+     */
+    private RpcResponse doInvoke(RpcRequest rpcRequest) {
+        // 构造响应结果对象
+        RpcResponse rpcResponse = new RpcResponse();
+        try {
+            // 获取要调用的服务实现类，通过反射调用
+            Class<?> implClass = LocalRegistry.get(rpcRequest.getServiceName());
+            Method method = implClass.getMethod(rpcRequest.getMethodName(), rpcRequest.getParameterTypes());
+            Object result = method.invoke(implClass.newInstance(), rpcRequest.getArgs());
+            // 封装返回结果
+            rpcResponse.setData(result);
+            rpcResponse.setDataType(method.getReturnType());
+            rpcResponse.setMessage("ok");
+        } catch (Exception e) {
+            e.printStackTrace();
+            rpcResponse.setMessage(e.getMessage());
+            rpcResponse.setException(e);
+        }
+        return rpcResponse;
+    }
+
+    /**
+     * 发送响应，编码
+     *
+     * @param socket
+     * @param header      请求头
+     * @param status      响应状态
+     * @param rpcResponse 响应结果（RpcResponse 或 RpcBatchResponse）
+     */
+    private void writeResponse(NetSocket socket, ProtocolMessage.Header header, ProtocolMessageStatusEnum status, Object rpcResponse) {
+        ProtocolMessageTypeEnum responseType = rpcResponse instanceof RpcBatchResponse
+                ? ProtocolMessageTypeEnum.BATCH_RESPONSE : ProtocolMessageTypeEnum.RESPONSE;
+        header.setType((byte) responseType.getKey());
+        header.setStatus((byte) status.getValue());
+        ProtocolMessage<Object> responseProtocolMessage = new ProtocolMessage<>(header, rpcResponse);
+        try {
+            Buffer encode = ProtocolMessageEncoder.encode(responseProtocolMessage);
+            socket.write(encode);
+        } catch (IOException e) {
+            throw new RuntimeException("协议消息编码错误");
+        }
+    }
+
 }
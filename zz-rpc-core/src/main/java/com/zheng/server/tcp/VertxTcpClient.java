@@ -1,10 +1,14 @@
 package com.zheng.server.tcp;
 
-import cn.hutool.core.util.IdUtil;
-
 import com.zheng.RpcApplication;
+import com.zheng.limiter.AdaptiveConcurrencyLimiter;
+import com.zheng.limiter.LimitExceededException;
+import com.zheng.limiter.OverloadedException;
+import com.zheng.model.RpcBatchRequest;
+import com.zheng.model.RpcBatchResponse;
 import com.zheng.model.RpcRequest;
 import com.zheng.model.RpcResponse;
+import com.zheng.model.RpcStreamFrame;
 import com.zheng.model.ServiceMetaInfo;
 import com.zheng.protocal.*;
 import io.vertx.core.Vertx;
@@ -15,10 +19,13 @@ import io.vertx.core.net.NetSocket;
 import lombok.extern.slf4j.Slf4j;
 
 import java.io.IOException;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * Vertx TCP 请求客户端 - 优化版本
@@ -32,9 +39,11 @@ public class VertxTcpClient {
     // 连接池 - 按服务地址缓存NetClient
     private static final ConcurrentHashMap<String, NetClient> clientPool = new ConcurrentHashMap<>();
 
+    // 长连接 - 按服务地址复用，多个请求并发使用同一个连接
+    private static final ConcurrentHashMap<String, TcpConnection> connectionPool = new ConcurrentHashMap<>();
+
     // 连接池配置
     private static final int MAX_POOL_SIZE = 10;
-    private static final int CONNECT_TIMEOUT = 5000; // 5秒连接超时
     private static final int IDLE_TIMEOUT = 30000; // 30秒空闲超时
 
     /**
@@ -43,7 +52,7 @@ public class VertxTcpClient {
     private static NetClient getOrCreateClient(String serviceKey) {
         return clientPool.computeIfAbsent(serviceKey, key -> {
             NetClientOptions options = new NetClientOptions()
-                    .setConnectTimeout(CONNECT_TIMEOUT)
+                    .setConnectTimeout(RpcApplication.getRpcConfig().getConnectTimeout())
                     .setIdleTimeout(IDLE_TIMEOUT)
                     .setTcpKeepAlive(true)
                     .setTcpNoDelay(true)
@@ -64,80 +73,275 @@ public class VertxTcpClient {
      * @throws ExecutionException
      */
     public static RpcResponse doRequest(RpcRequest rpcRequest, ServiceMetaInfo serviceMetaInfo) throws InterruptedException, ExecutionException {
-        long startTime = System.currentTimeMillis();
+        try {
+            return doRequestAsync(rpcRequest, serviceMetaInfo).get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof OverloadedException || cause instanceof LimitExceededException) {
+                throw (RuntimeException) cause;
+            }
+            log.error("TCP请求超时或失败", cause);
+            throw new RuntimeException("TCP请求超时或失败", cause);
+        }
+    }
 
+    /**
+     * 异步发送请求
+     * 返回的 future 超时后以 TimeoutException 结束；取消 future 只释放它在连接在途表中的槽位，
+     * 连接继续被其他请求复用，之后到达的响应按请求 id 找不到请求而被丢弃
+     *
+     * @param rpcRequest
+     * @param serviceMetaInfo
+     * @return
+     */
+    public static CompletableFuture<RpcResponse> doRequestAsync(RpcRequest rpcRequest, ServiceMetaInfo serviceMetaInfo) {
+        return sendLimited(buildProtocolMessage(rpcRequest, ProtocolMessageTypeEnum.REQUEST, serviceMetaInfo), serviceMetaInfo,
+                rpcRequest.getTimeout());
+    }
+
+    /**
+     * 异步发送批量请求，整批在一个协议帧中发送，与单个调用一样受自适应并发限制，整批算一次在途请求
+     * 返回的 future 超时后以 TimeoutException 结束
+     *
+     * @param batchRequest
+     * @param serviceMetaInfo
+     * @return
+     */
+    public static CompletableFuture<RpcBatchResponse> doBatchRequestAsync(RpcBatchRequest batchRequest, ServiceMetaInfo serviceMetaInfo) {
+        return sendLimited(buildProtocolMessage(batchRequest, ProtocolMessageTypeEnum.BATCH_REQUEST, serviceMetaInfo), serviceMetaInfo,
+                batchRequest.getTimeout());
+    }
+
+    /**
+     * 在自适应并发限制下发送请求并设置超时
+     *
+     * @param protocolMessage 请求消息
+     * @param serviceMetaInfo
+     * @param requestTimeout  请求的超时时间（毫秒），0 表示使用全局配置
+     * @param <T>             响应消息体类型
+     * @return
+     */
+    private static <T> CompletableFuture<T> sendLimited(ProtocolMessage<?> protocolMessage, ServiceMetaInfo serviceMetaInfo, long requestTimeout) {
+        String serviceKey = serviceMetaInfo.getServiceHost() + ":" + serviceMetaInfo.getServicePort();
+
+        // 自适应并发限制，达到上限时快速失败
+        AdaptiveConcurrencyLimiter limiter = null;
+        if (RpcApplication.getRpcConfig().isEnableConcurrencyLimit()) {
+            limiter = AdaptiveConcurrencyLimiter.getInstance(serviceKey);
+            if (!limiter.tryAcquire()) {
+                return CompletableFuture.failedFuture(
+                        new LimitExceededException("服务提供者并发数超过限制: " + serviceKey + ", limit = " + limiter.getLimit()));
+            }
+        }
+        int startInflight = limiter == null ? 0 : limiter.getInflight();
+        long startNanos = System.nanoTime();
+
+        CompletableFuture<T> responseFuture;
+        try {
+            responseFuture = send(protocolMessage, serviceMetaInfo, serviceKey);
+        } catch (RuntimeException e) {
+            if (limiter != null) {
+                limiter.ignore();
+            }
+            throw e;
+        }
+        long timeout = requestTimeout > 0 ? requestTimeout : RpcApplication.getRpcConfig().getTimeout();
+        responseFuture.orTimeout(timeout, TimeUnit.MILLISECONDS);
+        AdaptiveConcurrencyLimiter finalLimiter = limiter;
+        responseFuture.whenComplete((response, e) -> {
+            log.debug("TCP请求耗时: {}ms", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos));
+            if (finalLimiter == null) {
+                return;
+            }
+            if (e instanceof CancellationException) {
+                // 调用方主动取消（如对冲请求中较慢的一个），不作为限流样本
+                finalLimiter.ignore();
+            } else {
+                finalLimiter.release(System.nanoTime() - startNanos, startInflight, e != null);
+            }
+        });
+        return responseFuture;
+    }
+
+    /**
+     * 通过到服务提供者的长连接发送请求
+     *
+     * @param protocolMessage 请求消息
+     * @param serviceMetaInfo
+     * @param serviceKey      服务地址（host:port）
+     * @param <T>             响应消息体类型
+     * @return
+     */
+    private static <T> CompletableFuture<T> send(ProtocolMessage<?> protocolMessage, ServiceMetaInfo serviceMetaInfo, String serviceKey) {
+        return getOrCreateConnection(serviceMetaInfo, serviceKey).request(protocolMessage);
+    }
+
+    /**
+     * 获取或创建到服务提供者的长连接，已关闭的连接会被替换
+     *
+     * @param serviceMetaInfo
+     * @param serviceKey      服务地址（host:port）
+     * @return
+     */
+    private static TcpConnection getOrCreateConnection(ServiceMetaInfo serviceMetaInfo, String serviceKey) {
+        TcpConnection connection = connectionPool.get(serviceKey);
+        if (connection != null && !connection.isClosed()) {
+            return connection;
+        }
+        return connectionPool.compute(serviceKey, (key, old) -> old == null || old.isClosed()
+                ? new TcpConnection(getOrCreateClient(key), serviceMetaInfo, key) : old);
+    }
+
+    /**
+     * 发起流式调用
+     * 建立独占连接并发送带初始额度的 STREAM_REQUEST，之后边接收边按消费进度补充额度，流结束或取消时关闭连接
+     *
+     * @param rpcRequest
+     * @param serviceMetaInfo
+     * @param window          接收窗口
+     * @param <T>             元素类型
+     * @return
+     */
+    public static <T> StreamIterator<T> doStreamRequest(RpcRequest rpcRequest, ServiceMetaInfo serviceMetaInfo, int window) {
         String serviceKey = serviceMetaInfo.getServiceHost() + ":" + serviceMetaInfo.getServicePort();
         NetClient netClient = getOrCreateClient(serviceKey);
+        long timeout = rpcRequest.getTimeout() > 0 ? rpcRequest.getTimeout() : RpcApplication.getRpcConfig().getTimeout();
+        StreamIterator<T> streamIterator = new StreamIterator<>(window, timeout);
+
+        ProtocolMessage<RpcStreamFrame> requestMessage = buildProtocolMessage(
+                RpcStreamFrame.builder().request(rpcRequest).credit(window).build(), ProtocolMessageTypeEnum.STREAM_REQUEST, serviceMetaInfo);
+        long requestId = requestMessage.getHeader().getRequestId();
+        AtomicReference<NetSocket> socketRef = new AtomicReference<>();
+        AtomicBoolean cancelled = new AtomicBoolean();
+        streamIterator.setChannel(new StreamIterator.Channel() {
+            @Override
+            public void request(int credit) {
+                NetSocket socket = socketRef.get();
+                if (socket != null) {
+                    socket.write(encode(buildProtocolMessage(RpcStreamFrame.builder().credit(credit).build(),
+                            ProtocolMessageTypeEnum.STREAM_CREDIT, serviceMetaInfo, requestId)));
+                }
+            }
 
-        CompletableFuture<RpcResponse> responseFuture = new CompletableFuture<>();
+            @Override
+            public void cancel() {
+                cancelled.set(true);
+                NetSocket socket = socketRef.get();
+                if (socket != null) {
+                    socket.write(encode(buildProtocolMessage(new RpcStreamFrame(), ProtocolMessageTypeEnum.STREAM_CANCEL, serviceMetaInfo, requestId)));
+                    socket.close();
+                }
+            }
+        });
+        Buffer requestBuffer = encode(requestMessage);
 
-        // 预先构造消息，减少连接回调中的处理时间
-        ProtocolMessage<RpcRequest> protocolMessage = buildProtocolMessage(rpcRequest);
-        Buffer encodeBuffer;
+        netClient.connect(serviceMetaInfo.getServicePort(), serviceMetaInfo.getServiceHost(), result -> {
+            if (!result.succeeded()) {
+                log.error("Failed to connect to TCP server: {}", result.cause().getMessage());
+                streamIterator.onEnd(new RuntimeException("连接失败", result.cause()));
+                return;
+            }
+            NetSocket socket = result.result();
+            socketRef.set(socket);
+            if (cancelled.get()) {
+                socket.close();
+                return;
+            }
+            socket.handler(new TcpBufferHandlerWrapper(socket, buffer -> {
+                ProtocolMessage<?> protocolMessage;
+                try {
+                    protocolMessage = ProtocolMessageDecoder.decode(buffer);
+                } catch (IOException e) {
+                    log.error("协议消息解码错误", e);
+                    streamIterator.onEnd(new RuntimeException("协议消息解码错误", e));
+                    socket.close();
+                    return;
+                }
+                RpcStreamFrame frame = (RpcStreamFrame) protocolMessage.getBody();
+                if (protocolMessage.getHeader().getType() == ProtocolMessageTypeEnum.STREAM_DATA.getKey()) {
+                    streamIterator.onData(frame.getData());
+                } else if (protocolMessage.getHeader().getType() == ProtocolMessageTypeEnum.STREAM_END.getKey()) {
+                    streamIterator.onEnd(frame.getException());
+                    socket.close();
+                }
+            }));
+            // 未收到结束帧连接就断开
+            socket.closeHandler(v -> streamIterator.onEnd(new RuntimeException("连接已关闭: " + serviceKey)));
+            socket.write(requestBuffer);
+        });
+        return streamIterator;
+    }
+
+    /**
+     * 编码
+     */
+    private static Buffer encode(ProtocolMessage<?> protocolMessage) {
         try {
-            encodeBuffer = ProtocolMessageEncoder.encode(protocolMessage);
+            return ProtocolMessageEncoder.encode(protocolMessage);
         } catch (IOException e) {
             log.error("协议消息编码错误", e);
             throw new RuntimeException("协议消息编码错误", e);
         }
+    }
 
-        netClient.connect(serviceMetaInfo.getServicePort(), serviceMetaInfo.getServiceHost(),
-                result -> {
-                    if (!result.succeeded()) {
-                        log.error("Failed to connect to TCP server: {}", result.cause().getMessage());
-                        responseFuture.completeExceptionally(new RuntimeException("连接失败", result.cause()));
-                        return;
-                    }
-
-                    NetSocket socket = result.result();
-
-                    // 设置响应处理器
-                    TcpBufferHandlerWrapper bufferHandlerWrapper = new TcpBufferHandlerWrapper(
-                            buffer -> {
-                                try {
-                                    ProtocolMessage<RpcResponse> rpcResponseProtocolMessage =
-                                            (ProtocolMessage<RpcResponse>) ProtocolMessageDecoder.decode(buffer);
-                                    responseFuture.complete(rpcResponseProtocolMessage.getBody());
-
-                                    // 关闭socket，但保留client用于复用
-                                    socket.close();
-                                } catch (IOException e) {
-                                    log.error("协议消息解码错误", e);
-                                    responseFuture.completeExceptionally(new RuntimeException("协议消息解码错误", e));
-                                    socket.close();
-                                }
-                            }
-                    );
-                    socket.handler(bufferHandlerWrapper);
-
-                    // 发送数据
-                    socket.write(encodeBuffer);
-                });
+    /**
+     * 协商协议版本：开启了优化协议时使用双方都支持的最高版本（v3 优先，其次 v2），否则使用 v1
+     * 旧版本的提供者不会注册协议版本，按 v1 处理，新旧节点可以混合部署
+     *
+     * @param serviceMetaInfo
+     * @return
+     */
+    static byte negotiateVersion(ServiceMetaInfo serviceMetaInfo) {
+        Integer providerVersion = serviceMetaInfo.getProtocolVersion();
+        if (!RpcApplication.getRpcConfig().isEnableOptimizedProtocol() || providerVersion == null) {
+            return ProtocolConstant.PROTOCOL_VERSION;
+        }
+        if (providerVersion >= ProtocolConstant.COMPACT_PROTOCOL_VERSION) {
+            return ProtocolConstant.COMPACT_PROTOCOL_VERSION;
+        }
+        if (providerVersion >= ProtocolConstant.OPTIMIZED_PROTOCOL_VERSION) {
+            return ProtocolConstant.OPTIMIZED_PROTOCOL_VERSION;
+        }
+        return ProtocolConstant.PROTOCOL_VERSION;
+    }
 
-        try {
-            RpcResponse rpcResponse = responseFuture.get(10, TimeUnit.SECONDS); // 10秒超时
-            long endTime = System.currentTimeMillis();
-            log.debug("TCP请求耗时: {}ms", endTime - startTime);
-            return rpcResponse;
-        } catch (Exception e) {
-            log.error("TCP请求超时或失败", e);
-            throw new RuntimeException("TCP请求超时或失败", e);
+    /**
+     * 协商压缩算法：只有注册了协议版本的服务提供者才能解析压缩标记，
+     * 旧版本的提供者不压缩，发出的 v1 消息与旧版本完全相同
+     *
+     * @param serviceMetaInfo
+     * @return 压缩器编号，0 表示不压缩
+     */
+    static byte negotiateCompressor(ServiceMetaInfo serviceMetaInfo) {
+        if (serviceMetaInfo.getProtocolVersion() == null) {
+            return 0;
         }
+        ProtocolMessageCompressorEnum compressorEnum = ProtocolMessageCompressorEnum.getEnumByValue(RpcApplication.getRpcConfig().getCompressor());
+        return (byte) (compressorEnum == null ? 0 : compressorEnum.getKey());
+    }
+
+    /**
+     * 构造协议消息，请求 id 在发送时由连接分配；流式调用独占连接，请求 id 固定为 0
+     */
+    private static <T> ProtocolMessage<T> buildProtocolMessage(T body, ProtocolMessageTypeEnum type, ServiceMetaInfo serviceMetaInfo) {
+        return buildProtocolMessage(body, type, serviceMetaInfo, 0L);
     }
 
     /**
-     * 构造协议消息
+     * 构造协议消息，协议版本和压缩算法按服务提供者的能力协商
      */
-    private static ProtocolMessage<RpcRequest> buildProtocolMessage(RpcRequest rpcRequest) {
-        ProtocolMessage<RpcRequest> protocolMessage = new ProtocolMessage<>();
+    private static <T> ProtocolMessage<T> buildProtocolMessage(T body, ProtocolMessageTypeEnum type, ServiceMetaInfo serviceMetaInfo, long requestId) {
+        ProtocolMessage<T> protocolMessage = new ProtocolMessage<>();
         ProtocolMessage.Header header = new ProtocolMessage.Header();
         header.setMagic(ProtocolConstant.PROTOCOL_MAGIC);
-        header.setVersion(ProtocolConstant.PROTOCOL_VERSION);
+        header.setVersion(negotiateVersion(serviceMetaInfo));
         header.setSerializer((byte) ProtocolMessageSerializerEnum.getEnumByValue(RpcApplication.getRpcConfig().getSerializer()).getKey());
-        header.setType((byte) ProtocolMessageTypeEnum.REQUEST.getKey());
-        header.setRequestId(IdUtil.getSnowflakeNextId());
+        header.setType((byte) type.getKey());
+        // 声明使用的压缩算法，服务端按相同算法压缩响应
+        header.setCompressor(negotiateCompressor(serviceMetaInfo));
+        header.setRequestId(requestId);
         protocolMessage.setHeader(header);
-        protocolMessage.setBody(rpcRequest);
+        protocolMessage.setBody(body);
         return protocolMessage;
     }
 
@@ -145,6 +349,8 @@ public class VertxTcpClient {
      * 清理连接池
      */
     public static void cleanup() {
+        connectionPool.values().forEach(TcpConnection::close);
+        connectionPool.clear();
         clientPool.values().forEach(NetClient::close);
         clientPool.clear();
     }
@@ -1,8 +1,7 @@
 package com.zheng.tolerant;
 
 import com.zheng.model.RpcResponse;
-
-import java.util.Map;
+import com.zheng.proxy.InvocationContext;
 
 /**
  * 快速失败 - 容错策略（立刻通知外层调用方）
@@ -10,7 +9,7 @@ import java.util.Map;
 public class FailFastTolerantStrategy implements TolerantStrategy {
 
     @Override
-    public RpcResponse doTolerant(Map<String, Object> context, Exception e) {
+    public RpcResponse doTolerant(InvocationContext context, Exception e) {
         throw new RuntimeException("服务报错", e);
     }
 }
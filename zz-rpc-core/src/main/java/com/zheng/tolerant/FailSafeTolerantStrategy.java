@@ -1,10 +1,9 @@
 package com.zheng.tolerant;
 
 import com.zheng.model.RpcResponse;
+import com.zheng.proxy.InvocationContext;
 import lombok.extern.slf4j.Slf4j;
 
-import java.util.Map;
-
 /**
  * 静默处理异常 - 容错策略
  */
@@ -12,7 +11,7 @@ import java.util.Map;
 public class FailSafeTolerantStrategy implements TolerantStrategy {
 
     @Override
-    public RpcResponse doTolerant(Map<String, Object> context, Exception e) {
+    public RpcResponse doTolerant(InvocationContext context, Exception e) {
         log.info("静默处理异常", e);
         return new RpcResponse();
     }
@@ -0,0 +1,49 @@
+package com.zheng.tolerant;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 降级实现注册表
+ * 消费端为服务接口注册一个本地实现，服务调用失败时由 {@link FailBackTolerantStrategy} 调用它的同名方法
+ */
+public class FallbackRegistry {
+
+    /**
+     * 服务名称 => 降级实现
+     */
+    private static final Map<String, Object> map = new ConcurrentHashMap<>();
+
+    /**
+     * 注册降级实现
+     *
+     * @param serviceClass 服务接口
+     * @param fallback     降级实现，需实现服务接口
+     * @param <T>
+     */
+    public static <T> void register(Class<T> serviceClass, T fallback) {
+        if (!serviceClass.isInstance(fallback)) {
+            throw new IllegalArgumentException("降级实现未实现服务接口: " + serviceClass.getName());
+        }
+        map.put(serviceClass.getName(), fallback);
+    }
+
+    /**
+     * 获取降级实现
+     *
+     * @param serviceName 服务名称
+     * @return 未注册时返回 null
+     */
+    public static Object get(String serviceName) {
+        return map.get(serviceName);
+    }
+
+    /**
+     * 删除降级实现
+     *
+     * @param serviceName 服务名称
+     */
+    public static void remove(String serviceName) {
+        map.remove(serviceName);
+    }
+}
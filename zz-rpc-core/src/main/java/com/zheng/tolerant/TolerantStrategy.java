@@ -1,7 +1,6 @@
 package com.zheng.tolerant;
 import com.zheng.model.RpcResponse;
-
-import java.util.Map;
+import com.zheng.proxy.InvocationContext;
 
 /**
  * 容错策略
@@ -11,9 +10,9 @@ public interface TolerantStrategy {
     /**
      * 容错
      *
-     * @param context 上下文，用于传递数据
+     * @param context 调用上下文（请求、候选节点、已失败节点等）
      * @param e       异常
      * @return
      */
-    RpcResponse doTolerant(Map<String, Object> context, Exception e);
+    RpcResponse doTolerant(InvocationContext context, Exception e);
 }
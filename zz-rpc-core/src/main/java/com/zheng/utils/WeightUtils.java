@@ -0,0 +1,63 @@
+package com.zheng.utils;
+
+import com.zheng.model.ServiceMetaInfo;
+
+import java.util.List;
+
+/**
+ * 权重工具类
+ */
+public class WeightUtils {
+
+    /**
+     * 获取服务节点的有效权重（考虑预热）
+     * 节点注册后的预热时长内，权重从 1 线性增长到配置的权重，避免刚启动（JIT、连接池尚未预热）的节点被打满
+     *
+     * @param serviceMetaInfo 服务节点
+     * @param now             当前时间戳（毫秒）
+     * @return 有效权重，权重为 0 的节点返回 0，其余至少为 1
+     */
+    public static int getWarmupWeight(ServiceMetaInfo serviceMetaInfo, long now) {
+        Integer weight = serviceMetaInfo.getWeight();
+        if (weight == null) {
+            return ServiceMetaInfo.DEFAULT_WEIGHT;
+        }
+        if (weight <= 0) {
+            return 0;
+        }
+        Long registerTime = serviceMetaInfo.getRegisterTime();
+        Long warmup = serviceMetaInfo.getWarmup();
+        if (registerTime == null || warmup == null || warmup <= 0) {
+            return weight;
+        }
+        long uptime = now - registerTime;
+        if (uptime < 0) {
+            // 时钟偏差，按刚启动处理
+            return 1;
+        }
+        if (uptime >= warmup) {
+            return weight;
+        }
+        int warmupWeight = (int) (uptime * weight / warmup);
+        return Math.max(warmupWeight, 1);
+    }
+
+    /**
+     * 计算各节点的有效权重
+     *
+     * @param serviceMetaInfoList 服务节点列表
+     * @param weights             输出，与节点列表一一对应
+     * @param now                 当前时间戳（毫秒）
+     * @return 所有节点有效权重是否相同
+     */
+    public static boolean fillWarmupWeights(List<ServiceMetaInfo> serviceMetaInfoList, int[] weights, long now) {
+        boolean sameWeight = true;
+        for (int i = 0; i < weights.length; i++) {
+            weights[i] = getWarmupWeight(serviceMetaInfoList.get(i), now);
+            if (i > 0 && weights[i] != weights[0]) {
+                sameWeight = false;
+            }
+        }
+        return sameWeight;
+    }
+}
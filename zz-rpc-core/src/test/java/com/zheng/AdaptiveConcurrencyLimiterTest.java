@@ -0,0 +1,44 @@
+package com.zheng;
+
+import com.zheng.limiter.AdaptiveConcurrencyLimiter;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 自适应并发限制器测试
+ */
+public class AdaptiveConcurrencyLimiterTest {
+
+    @Test
+    public void rejectWhenLimitReached() {
+        AdaptiveConcurrencyLimiter limiter = AdaptiveConcurrencyLimiter.getInstance("limiter-test:1");
+        int limit = limiter.getLimit();
+        for (int i = 0; i < limit; i++) {
+            Assert.assertTrue(limiter.tryAcquire());
+        }
+        Assert.assertFalse(limiter.tryAcquire());
+        limiter.release(TimeUnit.MILLISECONDS.toNanos(1), limit, false);
+        Assert.assertTrue(limiter.tryAcquire());
+    }
+
+    @Test
+    public void adjustLimit() {
+        AdaptiveConcurrencyLimiter limiter = AdaptiveConcurrencyLimiter.getInstance("limiter-test:2");
+        int initialLimit = limiter.getLimit();
+        // 响应时间稳定且请求量接近上限，上限增大
+        for (int i = 0; i < 10; i++) {
+            Assert.assertTrue(limiter.tryAcquire());
+            limiter.release(TimeUnit.MILLISECONDS.toNanos(5), limiter.getLimit(), false);
+        }
+        int grownLimit = limiter.getLimit();
+        Assert.assertTrue(grownLimit > initialLimit);
+        // 超时，上限减小
+        for (int i = 0; i < 10; i++) {
+            Assert.assertTrue(limiter.tryAcquire());
+            limiter.release(TimeUnit.SECONDS.toNanos(10), limiter.getLimit(), true);
+        }
+        Assert.assertTrue(limiter.getLimit() < grownLimit);
+    }
+}
@@ -0,0 +1,94 @@
+package com.zheng;
+
+import com.zheng.conf.RpcConfig;
+import com.zheng.server.tcp.AdmissionController;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 服务端准入控制测试
+ */
+public class AdmissionControllerTest {
+
+    @Test
+    public void rejectWhenServiceBusy() throws Exception {
+        RpcConfig rpcConfig = new RpcConfig();
+        rpcConfig.setServerWorkerThreads(2);
+        rpcConfig.setServerMaxConcurrency(1);
+        AdmissionController admissionController = new AdmissionController(rpcConfig);
+        CountDownLatch running = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger rejected = new AtomicInteger();
+
+        admissionController.submit("busyService", () -> {
+            running.countDown();
+            awaitQuietly(release);
+        }, rejected::incrementAndGet);
+        Assert.assertTrue(running.await(5, TimeUnit.SECONDS));
+        // 同一服务并发已满，直接拒绝
+        admissionController.submit("busyService", () -> Assert.fail("不应执行"), rejected::incrementAndGet);
+        Assert.assertEquals(1, rejected.get());
+        // 其他服务不受影响
+        CountDownLatch otherDone = new CountDownLatch(1);
+        admissionController.submit("otherService", otherDone::countDown, rejected::incrementAndGet);
+        Assert.assertTrue(otherDone.await(5, TimeUnit.SECONDS));
+        release.countDown();
+    }
+
+    @Test
+    public void rejectWhenQueuedTooLong() throws Exception {
+        RpcConfig rpcConfig = new RpcConfig();
+        rpcConfig.setServerWorkerThreads(1);
+        rpcConfig.setServerQueueTimeout(50);
+        AdmissionController admissionController = new AdmissionController(rpcConfig);
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch rejected = new CountDownLatch(1);
+
+        admissionController.submit("slowService", () -> awaitQuietly(release), () -> Assert.fail("不应拒绝"));
+        admissionController.submit("slowService", () -> Assert.fail("不应执行"), rejected::countDown);
+        Thread.sleep(100);
+        release.countDown();
+        // 排队超过时间上限，被拒绝
+        Assert.assertTrue(rejected.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void batchTakesOneSlot() throws Exception {
+        RpcConfig rpcConfig = new RpcConfig();
+        rpcConfig.setServerWorkerThreads(8);
+        rpcConfig.setServerMaxConcurrency(2);
+        AdmissionController admissionController = new AdmissionController(rpcConfig);
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        AtomicInteger executed = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(1);
+
+        // 100 个调用的批量请求只占用一个名额，批内最多 4 个并行
+        admissionController.submitAll("batchService", 100, 4, index -> {
+            maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+            awaitQuietly(release);
+            executed.incrementAndGet();
+            running.decrementAndGet();
+        }, done::countDown, () -> Assert.fail("不应拒绝"));
+        CountDownLatch otherDone = new CountDownLatch(1);
+        admissionController.submit("batchService", otherDone::countDown, () -> Assert.fail("不应拒绝"));
+        Assert.assertTrue(otherDone.await(5, TimeUnit.SECONDS));
+        release.countDown();
+        Assert.assertTrue(done.await(5, TimeUnit.SECONDS));
+        Assert.assertEquals(100, executed.get());
+        Assert.assertTrue(maxRunning.get() <= 4);
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
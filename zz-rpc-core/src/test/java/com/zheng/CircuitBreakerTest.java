@@ -0,0 +1,92 @@
+package com.zheng;
+
+import com.zheng.fault.breaker.CircuitBreaker;
+import com.zheng.fault.breaker.CircuitBreakerConfig;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 熔断器测试
+ */
+public class CircuitBreakerTest {
+
+    private static final long FAST = TimeUnit.MILLISECONDS.toNanos(1);
+
+    @Test
+    public void openAndRecover() throws Exception {
+        CircuitBreakerConfig config = new CircuitBreakerConfig();
+        config.setMinimumCalls(10);
+        config.setOpenDuration(100);
+        config.setHalfOpenCalls(2);
+        CircuitBreaker circuitBreaker = new CircuitBreaker("localhost:1234#test", config);
+
+        // 失败率 50%，达到阈值后打开
+        for (int i = 0; i < 10; i++) {
+            Assert.assertTrue(circuitBreaker.tryAcquirePermission());
+            circuitBreaker.onResult(FAST, i % 2 == 0);
+        }
+        Assert.assertTrue(circuitBreaker.isOpen());
+        Assert.assertFalse(circuitBreaker.isCallPermitted());
+        Assert.assertFalse(circuitBreaker.tryAcquirePermission());
+
+        // 打开一段时间后半开，放行有限的探测请求
+        Thread.sleep(150);
+        Assert.assertTrue(circuitBreaker.isCallPermitted());
+        Assert.assertTrue(circuitBreaker.tryAcquirePermission());
+        Assert.assertTrue(circuitBreaker.tryAcquirePermission());
+        Assert.assertFalse(circuitBreaker.tryAcquirePermission());
+        circuitBreaker.onResult(FAST, false);
+        circuitBreaker.onResult(FAST, false);
+
+        // 探测全部成功，恢复
+        Assert.assertFalse(circuitBreaker.isOpen());
+        Assert.assertTrue(circuitBreaker.tryAcquirePermission());
+    }
+
+    @Test
+    public void releaseProbeWithoutResult() throws Exception {
+        CircuitBreakerConfig config = new CircuitBreakerConfig();
+        config.setMinimumCalls(5);
+        config.setOpenDuration(100);
+        config.setHalfOpenCalls(1);
+        CircuitBreaker circuitBreaker = new CircuitBreaker("localhost:1234#release", config);
+        for (int i = 0; i < 5; i++) {
+            circuitBreaker.onResult(FAST, true);
+        }
+        Assert.assertTrue(circuitBreaker.isOpen());
+
+        Thread.sleep(150);
+        Assert.assertTrue(circuitBreaker.tryAcquirePermission());
+        Assert.assertFalse(circuitBreaker.tryAcquirePermission());
+        // 探测请求被本地限流或取消，归还名额，不算成功
+        circuitBreaker.releasePermission();
+        Assert.assertTrue(circuitBreaker.tryAcquirePermission());
+        Assert.assertFalse(circuitBreaker.isOpen());
+        circuitBreaker.onResult(FAST, false);
+        Assert.assertTrue(circuitBreaker.tryAcquirePermission());
+    }
+
+    @Test
+    public void reopenWhenProbeFails() throws Exception {
+        CircuitBreakerConfig config = new CircuitBreakerConfig();
+        config.setMinimumCalls(5);
+        config.setOpenDuration(100);
+        config.setSlowCallDuration(10);
+        CircuitBreaker circuitBreaker = new CircuitBreaker("localhost:1234#slow", config);
+
+        // 慢调用率 100%，打开
+        for (int i = 0; i < 5; i++) {
+            circuitBreaker.onResult(TimeUnit.MILLISECONDS.toNanos(20), false);
+        }
+        Assert.assertTrue(circuitBreaker.isOpen());
+
+        Thread.sleep(150);
+        Assert.assertTrue(circuitBreaker.tryAcquirePermission());
+        circuitBreaker.onResult(FAST, true);
+        // 探测失败，重新打开
+        Assert.assertTrue(circuitBreaker.isOpen());
+        Assert.assertFalse(circuitBreaker.tryAcquirePermission());
+    }
+}
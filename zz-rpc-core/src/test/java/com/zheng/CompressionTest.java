@@ -0,0 +1,114 @@
+package com.zheng;
+
+import cn.hutool.core.util.IdUtil;
+import com.zheng.compress.Compressor;
+import com.zheng.compress.CompressorFactory;
+import com.zheng.compress.CompressorKeys;
+import com.zheng.model.RpcResponse;
+import com.zheng.protocal.*;
+import io.vertx.core.buffer.Buffer;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * 消息体压缩测试
+ */
+public class CompressionTest {
+
+    @Test
+    public void encodeAndDecode() throws IOException {
+        ProtocolMessage.Header header = new ProtocolMessage.Header();
+        header.setMagic(ProtocolConstant.PROTOCOL_MAGIC);
+        header.setVersion(ProtocolConstant.PROTOCOL_VERSION);
+        header.setSerializer((byte) ProtocolMessageSerializerEnum.JDK.getKey());
+        header.setCompressor((byte) ProtocolMessageCompressorEnum.DEFLATE.getKey());
+        header.setType((byte) ProtocolMessageTypeEnum.RESPONSE.getKey());
+        header.setStatus((byte) ProtocolMessageStatusEnum.OK.getValue());
+        header.setRequestId(IdUtil.getSnowflakeNextId());
+        RpcResponse rpcResponse = RpcResponse.builder().data(buildUsers(200)).message("ok").build();
+
+        Buffer compressed = ProtocolMessageEncoder.encode(new ProtocolMessage<>(header, rpcResponse));
+        header.setCompressor((byte) 0);
+        Buffer plain = ProtocolMessageEncoder.encode(new ProtocolMessage<>(header, rpcResponse));
+        Assert.assertTrue(compressed.length() < plain.length() / 2);
+
+        ProtocolMessage<?> message = ProtocolMessageDecoder.decode(compressed);
+        Assert.assertEquals(ProtocolMessageTypeEnum.RESPONSE.getKey(), message.getHeader().getType());
+        Assert.assertEquals(ProtocolMessageCompressorEnum.DEFLATE.getKey(), message.getHeader().getCompressor());
+        Assert.assertEquals(rpcResponse.getData(), ((RpcResponse) message.getBody()).getData());
+    }
+
+    @Test
+    public void smallMessageNotCompressed() throws IOException {
+        ProtocolMessage.Header header = new ProtocolMessage.Header();
+        header.setMagic(ProtocolConstant.PROTOCOL_MAGIC);
+        header.setVersion(ProtocolConstant.PROTOCOL_VERSION);
+        header.setSerializer((byte) ProtocolMessageSerializerEnum.JDK.getKey());
+        header.setCompressor((byte) ProtocolMessageCompressorEnum.GZIP.getKey());
+        header.setType((byte) ProtocolMessageTypeEnum.RESPONSE.getKey());
+        Buffer buffer = ProtocolMessageEncoder.encode(new ProtocolMessage<>(header, RpcResponse.builder().data("ok").build()));
+        // 未超过阈值，类型字节不带压缩标记
+        Assert.assertEquals(ProtocolMessageTypeEnum.RESPONSE.getKey(), buffer.getByte(3));
+        Assert.assertEquals("ok", ((RpcResponse) ProtocolMessageDecoder.decode(buffer).getBody()).getData());
+    }
+
+    /**
+     * 不同大小下各压缩算法的压缩率和吞吐量
+     */
+    @Test
+    public void benchmark() throws IOException {
+        int[] userCounts = {4, 64, 1024, 8192};
+        String[] keys = {CompressorKeys.DEFLATE, CompressorKeys.GZIP};
+        System.out.printf("%-8s %10s %10s %8s %12s %12s%n", "codec", "size(B)", "out(B)", "ratio", "comp(MB/s)", "decomp(MB/s)");
+        for (int userCount : userCounts) {
+            byte[] bytes = String.join("\n", buildUsers(userCount)).getBytes();
+            for (String key : keys) {
+                Compressor compressor = CompressorFactory.getInstance(key);
+                byte[] compressed = compressor.compress(bytes);
+                Assert.assertArrayEquals(bytes, compressor.decompress(compressed));
+                double compressMbps = throughput(bytes.length, () -> compressor.compress(bytes));
+                double decompressMbps = throughput(bytes.length, () -> compressor.decompress(compressed));
+                System.out.printf("%-8s %10d %10d %8.2f %12.1f %12.1f%n", key, bytes.length, compressed.length,
+                        (double) bytes.length / compressed.length, compressMbps, decompressMbps);
+            }
+        }
+    }
+
+    private interface Task {
+        void run() throws IOException;
+    }
+
+    /**
+     * 在约 100 毫秒内重复执行，返回 MB/s
+     */
+    private static double throughput(int size, Task task) throws IOException {
+        // 预热
+        for (int i = 0; i < 10; i++) {
+            task.run();
+        }
+        long start = System.nanoTime();
+        long deadline = start + 100_000_000L;
+        long iterations = 0;
+        while (System.nanoTime() < deadline) {
+            task.run();
+            iterations++;
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        return size * iterations / seconds / (1024 * 1024);
+    }
+
+    private static ArrayList<String> buildUsers(int count) {
+        Random random = new Random(42);
+        ArrayList<String> users = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            users.add("{\"id\":" + i + ",\"name\":\"user" + random.nextInt(100000) + "\",\"email\":\"user" + i
+                    + "@example.com\",\"age\":" + (18 + random.nextInt(60)) + ",\"vip\":" + random.nextBoolean() + "}");
+        }
+        return users;
+    }
+}
@@ -0,0 +1,55 @@
+package com.zheng;
+
+import com.zheng.model.ServiceMetaInfo;
+import com.zheng.registry.Registry;
+import com.zheng.registry.RegistryFactory;
+import com.zheng.registry.RegistryKeys;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.List;
+
+/**
+ * 内嵌注册中心测试
+ */
+public class EmbeddedRegistryTest {
+
+    private static Registry registry;
+
+    @BeforeClass
+    public static void init() throws Exception {
+        RpcTestSupport.useEmbeddedRegistry();
+        registry = RegistryFactory.getInstance(RegistryKeys.EMBEDDED);
+    }
+
+    @Test
+    public void registerAndDiscovery() throws Exception {
+        ServiceMetaInfo serviceMetaInfo1 = buildServiceMetaInfo("embeddedService", 1234);
+        ServiceMetaInfo serviceMetaInfo2 = buildServiceMetaInfo("embeddedService", 1235);
+        ServiceMetaInfo otherServiceMetaInfo = buildServiceMetaInfo("otherService", 1234);
+        registry.register(serviceMetaInfo1);
+        registry.register(serviceMetaInfo2);
+        registry.register(otherServiceMetaInfo);
+        // 重复注册不会产生重复节点
+        registry.register(serviceMetaInfo1);
+
+        List<ServiceMetaInfo> serviceMetaInfoList = registry.serviceDiscovery(serviceMetaInfo1.getServiceKey());
+        Assert.assertEquals(2, serviceMetaInfoList.size());
+
+        registry.unRegister(serviceMetaInfo1);
+        serviceMetaInfoList = registry.serviceDiscovery(serviceMetaInfo1.getServiceKey());
+        Assert.assertEquals(1, serviceMetaInfoList.size());
+        Assert.assertEquals(Integer.valueOf(1235), serviceMetaInfoList.get(0).getServicePort());
+        Assert.assertEquals(1, registry.serviceDiscovery(otherServiceMetaInfo.getServiceKey()).size());
+    }
+
+    private ServiceMetaInfo buildServiceMetaInfo(String serviceName, int port) {
+        ServiceMetaInfo serviceMetaInfo = new ServiceMetaInfo();
+        serviceMetaInfo.setServiceName(serviceName);
+        serviceMetaInfo.setServiceVersion("1.0");
+        serviceMetaInfo.setServiceHost("localhost");
+        serviceMetaInfo.setServicePort(port);
+        return serviceMetaInfo;
+    }
+}
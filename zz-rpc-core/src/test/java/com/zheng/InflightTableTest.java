@@ -0,0 +1,127 @@
+package com.zheng;
+
+import com.zheng.conf.RpcConfig;
+import com.zheng.limiter.LimitExceededException;
+import com.zheng.model.RpcRequest;
+import com.zheng.model.RpcResponse;
+import com.zheng.model.ServiceMetaInfo;
+import com.zheng.registry.LocalRegistry;
+import com.zheng.server.tcp.AdmissionController;
+import com.zheng.server.tcp.InflightTable;
+import com.zheng.server.tcp.TcpServerHandler;
+import com.zheng.server.tcp.VertxTcpClient;
+import io.vertx.core.Vertx;
+import io.vertx.core.net.NetServer;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 连接内在途请求表和连接复用测试
+ */
+public class InflightTableTest {
+
+    @Test
+    public void sequentialIds() {
+        InflightTable<String> table = new InflightTable<>(4);
+        CompletableFuture<String> first = new CompletableFuture<>();
+        CompletableFuture<String> second = new CompletableFuture<>();
+        Assert.assertEquals(0, table.register(first));
+        Assert.assertEquals(1, table.register(second));
+        Assert.assertSame(second, table.get(1));
+        Assert.assertEquals(2, table.size());
+
+        // 结束后释放槽位，之后到达的响应查不到请求
+        first.complete("ok");
+        Assert.assertNull(table.get(0));
+        Assert.assertEquals(1, table.size());
+    }
+
+    @Test
+    public void reuseSlot() {
+        InflightTable<String> table = new InflightTable<>(4);
+        List<CompletableFuture<String>> futures = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            futures.add(new CompletableFuture<>());
+            table.register(futures.get(i));
+        }
+        futures.get(1).cancel(false);
+        // 下一个 id 对应的槽位 0 被占用，跳过后复用槽位 1
+        CompletableFuture<String> future = new CompletableFuture<>();
+        long requestId = table.register(future);
+        Assert.assertEquals(5, requestId);
+        Assert.assertSame(future, table.get(5));
+        // 旧请求 id 与槽位中的 id 不同，不会误匹配
+        Assert.assertNull(table.get(1));
+        Assert.assertSame(futures.get(0), table.get(0));
+    }
+
+    @Test(expected = LimitExceededException.class)
+    public void full() {
+        InflightTable<String> table = new InflightTable<>(2);
+        for (int i = 0; i < 3; i++) {
+            table.register(new CompletableFuture<>());
+        }
+    }
+
+    @Test
+    public void failAll() {
+        InflightTable<String> table = new InflightTable<>(8);
+        CompletableFuture<String> future = new CompletableFuture<>();
+        table.register(future);
+        table.failAll(new RuntimeException("连接已关闭"));
+        Assert.assertTrue(future.isCompletedExceptionally());
+        Assert.assertEquals(0, table.size());
+    }
+
+    @Test
+    public void multiplexedRequests() throws Exception {
+        RpcConfig rpcConfig = RpcTestSupport.useDefaultConfig();
+        LocalRegistry.register(EchoService.class.getName(), EchoService.class);
+
+        // 统计服务端收到的连接数
+        AtomicInteger connections = new AtomicInteger();
+        TcpServerHandler serverHandler = new TcpServerHandler(new AdmissionController(rpcConfig));
+        Vertx vertx = Vertx.vertx();
+        NetServer server = vertx.createNetServer().connectHandler(socket -> {
+            connections.incrementAndGet();
+            serverHandler.handle(socket);
+        });
+        int port = server.listen(0).toCompletionStage().toCompletableFuture().get(5, TimeUnit.SECONDS).actualPort();
+        try {
+            ServiceMetaInfo serviceMetaInfo = new ServiceMetaInfo();
+            serviceMetaInfo.setServiceHost("127.0.0.1");
+            serviceMetaInfo.setServicePort(port);
+            List<CompletableFuture<RpcResponse>> futures = new ArrayList<>();
+            for (int i = 0; i < 200; i++) {
+                RpcRequest rpcRequest = new RpcRequest();
+                rpcRequest.setServiceName(EchoService.class.getName());
+                rpcRequest.setMethodName("twice");
+                rpcRequest.setParameterTypes(new Class[]{int.class});
+                rpcRequest.setArgs(new Object[]{i});
+                futures.add(VertxTcpClient.doRequestAsync(rpcRequest, serviceMetaInfo));
+            }
+            for (int i = 0; i < futures.size(); i++) {
+                Assert.assertEquals(i * 2, futures.get(i).get(5, TimeUnit.SECONDS).getData());
+            }
+            // 并发请求复用同一个连接
+            Assert.assertEquals(1, connections.get());
+        } finally {
+            VertxTcpClient.cleanup();
+            vertx.close();
+            LocalRegistry.remove(EchoService.class.getName());
+        }
+    }
+
+    public static class EchoService {
+
+        public int twice(int value) {
+            return value * 2;
+        }
+    }
+}
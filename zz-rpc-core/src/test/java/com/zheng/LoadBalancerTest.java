@@ -2,16 +2,22 @@ package com.zheng;
 
 
 import com.zheng.loadbalancer.ConsistentHashLoadBalancer;
+import com.zheng.loadbalancer.LeastActiveLoadBalancer;
 import com.zheng.loadbalancer.LoadBalancer;
+import com.zheng.loadbalancer.PeakEwmaLoadBalancer;
 import com.zheng.loadbalancer.RoundRobinLoadBalancer;
+import com.zheng.loadbalancer.RpcStatus;
 import com.zheng.model.ServiceMetaInfo;
+import com.zheng.utils.WeightUtils;
 import org.junit.Assert;
 import org.junit.Test;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 import static org.junit.Assert.*;
 
@@ -50,4 +56,199 @@ public class LoadBalancerTest {
         System.out.println(serviceMetaInfo);
         Assert.assertNotNull(serviceMetaInfo);
     }
+
+    @Test
+    public void smoothWeightedRoundRobin() {
+        Map<String, Object> requestParams = new HashMap<>();
+        ServiceMetaInfo serviceMetaInfo1 = new ServiceMetaInfo();
+        serviceMetaInfo1.setServiceName("weightedService");
+        serviceMetaInfo1.setServiceHost("localhost");
+        serviceMetaInfo1.setServicePort(1234);
+        serviceMetaInfo1.setWeight(5);
+        ServiceMetaInfo serviceMetaInfo2 = new ServiceMetaInfo();
+        serviceMetaInfo2.setServiceName("weightedService");
+        serviceMetaInfo2.setServiceHost("localhost");
+        serviceMetaInfo2.setServicePort(1235);
+        serviceMetaInfo2.setWeight(1);
+        ServiceMetaInfo serviceMetaInfo3 = new ServiceMetaInfo();
+        serviceMetaInfo3.setServiceName("weightedService");
+        serviceMetaInfo3.setServiceHost("localhost");
+        serviceMetaInfo3.setServicePort(1236);
+        serviceMetaInfo3.setWeight(1);
+        List<ServiceMetaInfo> serviceMetaInfoList = Arrays.asList(serviceMetaInfo1, serviceMetaInfo2, serviceMetaInfo3);
+        // 权重 5:1:1，平滑加权轮询的序列为 a a b a c a a
+        LoadBalancer weightedLoadBalancer = new RoundRobinLoadBalancer();
+        int[] expectedPorts = {1234, 1234, 1235, 1234, 1236, 1234, 1234};
+        for (int expectedPort : expectedPorts) {
+            Assert.assertEquals(Integer.valueOf(expectedPort), weightedLoadBalancer.select(requestParams, serviceMetaInfoList).getServicePort());
+        }
+    }
+
+    @Test
+    public void warmupWeight() {
+        ServiceMetaInfo serviceMetaInfo = new ServiceMetaInfo();
+        serviceMetaInfo.setWeight(100);
+        serviceMetaInfo.setRegisterTime(0L);
+        serviceMetaInfo.setWarmup(60_000L);
+        Assert.assertEquals(1, WeightUtils.getWarmupWeight(serviceMetaInfo, 0L));
+        Assert.assertEquals(50, WeightUtils.getWarmupWeight(serviceMetaInfo, 30_000L));
+        Assert.assertEquals(100, WeightUtils.getWarmupWeight(serviceMetaInfo, 120_000L));
+    }
+
+    @Test
+    public void leastActive() {
+        Map<String, Object> requestParams = new HashMap<>();
+        requestParams.put("methodName", "slowMethod");
+        ServiceMetaInfo slowServiceMetaInfo = new ServiceMetaInfo();
+        slowServiceMetaInfo.setServiceName("leastActiveService");
+        slowServiceMetaInfo.setServiceHost("localhost");
+        slowServiceMetaInfo.setServicePort(2234);
+        ServiceMetaInfo fastServiceMetaInfo = new ServiceMetaInfo();
+        fastServiceMetaInfo.setServiceName("leastActiveService");
+        fastServiceMetaInfo.setServiceHost("localhost");
+        fastServiceMetaInfo.setServicePort(2235);
+        List<ServiceMetaInfo> serviceMetaInfoList = Arrays.asList(slowServiceMetaInfo, fastServiceMetaInfo);
+        LoadBalancer leastActiveLoadBalancer = new LeastActiveLoadBalancer();
+        // 慢节点上有请求未完成时，流量分到另一个节点
+        RpcStatus.beginCount(slowServiceMetaInfo.getServiceAddress(), slowServiceMetaInfo.getServiceKey(), "slowMethod");
+        for (int i = 0; i < 10; i++) {
+            Assert.assertEquals(fastServiceMetaInfo, leastActiveLoadBalancer.select(requestParams, serviceMetaInfoList));
+        }
+        RpcStatus.endCount(slowServiceMetaInfo.getServiceAddress(), slowServiceMetaInfo.getServiceKey(), "slowMethod", 100, true);
+        Assert.assertEquals(0, RpcStatus.getStatus(slowServiceMetaInfo.getServiceAddress()).getActive());
+        Assert.assertEquals(1, RpcStatus.getStatus(slowServiceMetaInfo.getServiceAddress(), slowServiceMetaInfo.getServiceKey(), "slowMethod").getTotal());
+        // 同一节点上其他服务的同名方法单独统计
+        Assert.assertEquals(0, RpcStatus.getStatus(slowServiceMetaInfo.getServiceAddress(), "otherService:1.0", "slowMethod").getTotal());
+    }
+
+    @Test
+    public void retainProviders() {
+        ServiceMetaInfo serviceMetaInfo1 = new ServiceMetaInfo();
+        serviceMetaInfo1.setServiceName("retainService");
+        serviceMetaInfo1.setServiceHost("localhost");
+        serviceMetaInfo1.setServicePort(4234);
+        ServiceMetaInfo serviceMetaInfo2 = new ServiceMetaInfo();
+        serviceMetaInfo2.setServiceName("retainService");
+        serviceMetaInfo2.setServiceHost("localhost");
+        serviceMetaInfo2.setServicePort(4235);
+        String serviceKey = serviceMetaInfo1.getServiceKey();
+        RpcStatus.retainProviders(serviceKey, Arrays.asList(serviceMetaInfo1, serviceMetaInfo2));
+        RpcStatus.beginCount(serviceMetaInfo2.getServiceAddress(), serviceKey, "method");
+        Assert.assertEquals(1, RpcStatus.getStatus(serviceMetaInfo2.getServiceAddress()).getActive());
+
+        // 节点下线后删除统计，下线前发出的请求结束时在途数不会变成负数
+        RpcStatus.retainProviders(serviceKey, Arrays.asList(serviceMetaInfo1));
+        Assert.assertEquals(0, RpcStatus.getStatus(serviceMetaInfo2.getServiceAddress()).getActive());
+        RpcStatus.endCount(serviceMetaInfo2.getServiceAddress(), serviceKey, "method", 100, false);
+        Assert.assertEquals(0, RpcStatus.getStatus(serviceMetaInfo2.getServiceAddress()).getActive());
+    }
+
+    @Test
+    public void peakEwma() {
+        Map<String, Object> requestParams = new HashMap<>();
+        ServiceMetaInfo slowServiceMetaInfo = new ServiceMetaInfo();
+        slowServiceMetaInfo.setServiceName("peakEwmaService");
+        slowServiceMetaInfo.setServiceHost("localhost");
+        slowServiceMetaInfo.setServicePort(3234);
+        ServiceMetaInfo fastServiceMetaInfo = new ServiceMetaInfo();
+        fastServiceMetaInfo.setServiceName("peakEwmaService");
+        fastServiceMetaInfo.setServiceHost("localhost");
+        fastServiceMetaInfo.setServicePort(3235);
+        List<ServiceMetaInfo> serviceMetaInfoList = Arrays.asList(slowServiceMetaInfo, fastServiceMetaInfo);
+        RpcStatus.beginCount(slowServiceMetaInfo.getServiceAddress(), slowServiceMetaInfo.getServiceKey(), "method");
+        RpcStatus.endCount(slowServiceMetaInfo.getServiceAddress(), slowServiceMetaInfo.getServiceKey(), "method", TimeUnit.MILLISECONDS.toNanos(200), true);
+        RpcStatus.beginCount(fastServiceMetaInfo.getServiceAddress(), fastServiceMetaInfo.getServiceKey(), "method");
+        RpcStatus.endCount(fastServiceMetaInfo.getServiceAddress(), fastServiceMetaInfo.getServiceKey(), "method", TimeUnit.MILLISECONDS.toNanos(2), true);
+        LoadBalancer peakEwmaLoadBalancer = new PeakEwmaLoadBalancer();
+        for (int i = 0; i < 10; i++) {
+            Assert.assertEquals(fastServiceMetaInfo, peakEwmaLoadBalancer.select(requestParams, serviceMetaInfoList));
+        }
+    }
+
+    @Test
+    public void consistentHash() {
+        RpcTestSupport.useDefaultConfig();
+
+        List<ServiceMetaInfo> serviceMetaInfoList = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            ServiceMetaInfo serviceMetaInfo = new ServiceMetaInfo();
+            serviceMetaInfo.setServiceName("consistentHashService");
+            serviceMetaInfo.setServiceHost("192.168.0." + i);
+            serviceMetaInfo.setServicePort(8080);
+            serviceMetaInfoList.add(serviceMetaInfo);
+        }
+        LoadBalancer consistentHashLoadBalancer = new ConsistentHashLoadBalancer();
+        Map<ServiceMetaInfo, Integer> countMap = new HashMap<>();
+        for (int i = 0; i < 4000; i++) {
+            Map<String, Object> requestParams = new HashMap<>();
+            requestParams.put("methodName", "get");
+            requestParams.put("args", new Object[]{"user" + i, i});
+            ServiceMetaInfo selected = consistentHashLoadBalancer.select(requestParams, serviceMetaInfoList);
+            // 第一个参数相同的请求总是落到同一节点
+            requestParams.put("args", new Object[]{"user" + i, -i});
+            Assert.assertSame(selected, consistentHashLoadBalancer.select(requestParams, serviceMetaInfoList));
+            countMap.merge(selected, 1, Integer::sum);
+        }
+        // 分布大致均匀
+        Assert.assertEquals(4, countMap.size());
+        for (int count : countMap.values()) {
+            Assert.assertTrue(count > 500 && count < 1500);
+        }
+
+        // 参数没有基于内容的 toString 时无法稳定路由，直接报错
+        Map<String, Object> requestParams = new HashMap<>();
+        requestParams.put("methodName", "get");
+        requestParams.put("args", new Object[]{new Object()});
+        try {
+            consistentHashLoadBalancer.select(requestParams, serviceMetaInfoList);
+            Assert.fail();
+        } catch (IllegalArgumentException expected) {
+        }
+        // 参数下标配置非法
+        RpcTestSupport.useDefaultConfig().setHashArguments("0,a");
+        requestParams.put("args", new Object[]{"user"});
+        try {
+            consistentHashLoadBalancer.select(requestParams, serviceMetaInfoList);
+            Assert.fail();
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
+    @Test
+    public void consistentHashRingReuse() {
+        RpcTestSupport.useDefaultConfig();
+        List<ServiceMetaInfo> serviceMetaInfoList = buildHashNodes(null);
+        LoadBalancer consistentHashLoadBalancer = new ConsistentHashLoadBalancer();
+        Map<String, Object> requestParams = new HashMap<>();
+        requestParams.put("methodName", "get");
+        requestParams.put("args", new Object[]{"user"});
+        ServiceMetaInfo selected = consistentHashLoadBalancer.select(requestParams, serviceMetaInfoList);
+
+        // 排除选中节点后的子列表：结果来自子列表，且不影响完整列表的选择
+        List<ServiceMetaInfo> available = new ArrayList<>(serviceMetaInfoList);
+        available.remove(selected);
+        ServiceMetaInfo retrySelected = consistentHashLoadBalancer.select(requestParams, available);
+        Assert.assertTrue(available.contains(retrySelected));
+        Assert.assertSame(selected, consistentHashLoadBalancer.select(requestParams, serviceMetaInfoList));
+
+        // 节点重新注册，地址不变但元数据变化，返回新列表中的对象
+        List<ServiceMetaInfo> reRegistered = buildHashNodes(3);
+        ServiceMetaInfo newSelected = consistentHashLoadBalancer.select(requestParams, reRegistered);
+        Assert.assertEquals(selected.getServiceAddress(), newSelected.getServiceAddress());
+        Assert.assertTrue(reRegistered.stream().anyMatch(serviceMetaInfo -> serviceMetaInfo == newSelected));
+        Assert.assertEquals(Integer.valueOf(3), newSelected.getProtocolVersion());
+    }
+
+    private List<ServiceMetaInfo> buildHashNodes(Integer protocolVersion) {
+        List<ServiceMetaInfo> serviceMetaInfoList = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            ServiceMetaInfo serviceMetaInfo = new ServiceMetaInfo();
+            serviceMetaInfo.setServiceName("ringReuseService");
+            serviceMetaInfo.setServiceHost("192.168.1." + i);
+            serviceMetaInfo.setServicePort(8080);
+            serviceMetaInfo.setProtocolVersion(protocolVersion);
+            serviceMetaInfoList.add(serviceMetaInfo);
+        }
+        return serviceMetaInfoList;
+    }
 }
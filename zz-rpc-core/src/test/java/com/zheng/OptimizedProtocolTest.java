@@ -4,11 +4,14 @@ import cn.hutool.core.util.IdUtil;
 import com.zheng.constants.RpcConstant;
 import com.zheng.model.RpcRequest;
 import com.zheng.protocal.*;
+import com.zheng.server.tcp.TcpBufferHandlerWrapper;
 import io.vertx.core.buffer.Buffer;
 import org.junit.Assert;
 import org.junit.Test;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * 优化协议测试
@@ -179,6 +182,138 @@ public class OptimizedProtocolTest {
         System.out.println("✅ 位操作测试通过");
     }
 
+    @Test
+    public void testMixedVersionFraming() throws IOException {
+        // 同一连接上交替出现 v1、v2、v3 消息，按任意边界拆包后仍能正确切分和解码
+        ProtocolMessage<RpcRequest> v2Message = createTestMessage();
+        ProtocolMessage<RpcRequest> v3Message = createTestMessage();
+        v3Message.getHeader().setVersion(ProtocolConstant.COMPACT_PROTOCOL_VERSION);
+        v3Message.getHeader().setRequestId(v2Message.getHeader().getRequestId());
+        Buffer stream = Buffer.buffer();
+        stream.appendBuffer(ProtocolMessageEncoder.encode(v2Message));
+        stream.appendBuffer(OptimizedProtocolMessageEncoder.encodeCompatible(v2Message));
+        stream.appendBuffer(ProtocolMessageEncoder.encode(v3Message));
+        stream.appendBuffer(ProtocolMessageEncoder.encode(v2Message));
+
+        List<ProtocolMessage<?>> decoded = new ArrayList<>();
+        TcpBufferHandlerWrapper wrapper = new TcpBufferHandlerWrapper(buffer -> {
+            try {
+                decoded.add(ProtocolMessageDecoder.decode(buffer));
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        });
+        for (int i = 0; i < stream.length(); i += 3) {
+            wrapper.handle(stream.getBuffer(i, Math.min(i + 3, stream.length())));
+        }
+
+        Assert.assertEquals(4, decoded.size());
+        byte[] expectedVersions = {ProtocolConstant.OPTIMIZED_PROTOCOL_VERSION, ProtocolConstant.PROTOCOL_VERSION,
+                ProtocolConstant.COMPACT_PROTOCOL_VERSION, ProtocolConstant.OPTIMIZED_PROTOCOL_VERSION};
+        for (int i = 0; i < decoded.size(); i++) {
+            ProtocolMessage<?> message = decoded.get(i);
+            Assert.assertEquals(expectedVersions[i], message.getHeader().getVersion());
+            Assert.assertEquals(v2Message.getHeader().getRequestId(), message.getHeader().getRequestId());
+            Assert.assertEquals("testMethod", ((RpcRequest) message.getBody()).getMethodName());
+        }
+    }
+
+    @Test
+    public void testInvalidFraming() throws IOException {
+        Buffer valid = ProtocolMessageEncoder.encode(createTestMessage());
+        // 魔数错误
+        Buffer badMagic = valid.copy();
+        badMagic.setByte(0, (byte) 0x7F);
+        // 消息体长度为负数或超过上限
+        Buffer negativeLength = valid.copy();
+        negativeLength.setInt(ProtocolConstant.OPTIMIZED_BODY_LENGTH_OFFSET, -1);
+        Buffer hugeLength = valid.copy();
+        hugeLength.setInt(ProtocolConstant.OPTIMIZED_BODY_LENGTH_OFFSET, Integer.MAX_VALUE - 1);
+        for (Buffer invalid : List.of(badMagic, negativeLength, hugeLength)) {
+            List<Buffer> frames = new ArrayList<>();
+            TcpBufferHandlerWrapper wrapper = new TcpBufferHandlerWrapper(frames::add);
+            try {
+                wrapper.handle(invalid);
+                Assert.fail();
+            } catch (RuntimeException e) {
+                // 预期
+            }
+            // 之后的数据无法再切分，全部丢弃
+            wrapper.handle(valid);
+            Assert.assertTrue(frames.isEmpty());
+        }
+    }
+
+    @Test
+    public void testOptimizedCompression() throws IOException {
+        ProtocolMessage<RpcRequest> protocolMessage = createTestMessage();
+        protocolMessage.getHeader().setCompressor((byte) ProtocolMessageCompressorEnum.GZIP.getKey());
+        StringBuilder arg = new StringBuilder();
+        for (int i = 0; i < 200; i++) {
+            arg.append("compressible payload ");
+        }
+        protocolMessage.getBody().setArgs(new Object[]{arg.toString()});
+
+        Buffer buffer = ProtocolMessageEncoder.encode(protocolMessage);
+        Assert.assertTrue(OptimizedProtocolMessageDecoder.isOptimizedFormat(buffer));
+        Assert.assertTrue(buffer.length() < arg.length());
+
+        ProtocolMessage<?> decoded = ProtocolMessageDecoder.decode(buffer);
+        Assert.assertEquals(ProtocolMessageCompressorEnum.GZIP.getKey(), decoded.getHeader().getCompressor());
+        Assert.assertEquals(arg.toString(), ((RpcRequest) decoded.getBody()).getArgs()[0]);
+    }
+
+    @Test
+    public void testCompactEncodeAndDecode() throws IOException {
+        long[] requestIds = {0, 127, 128, 300, Long.MAX_VALUE};
+        for (long requestId : requestIds) {
+            ProtocolMessage<RpcRequest> protocolMessage = createTestMessage();
+            protocolMessage.getHeader().setVersion(ProtocolConstant.COMPACT_PROTOCOL_VERSION);
+            protocolMessage.getHeader().setRequestId(requestId);
+
+            Buffer buffer = ProtocolMessageEncoder.encode(protocolMessage);
+            Assert.assertEquals(buffer.length(), CompactProtocolMessageDecoder.frameLength(buffer, 0));
+            // 消息头不完整时无法确定长度
+            Assert.assertEquals(-1, CompactProtocolMessageDecoder.frameLength(buffer.getBuffer(0, ProtocolConstant.COMPACT_FIXED_HEADER_LENGTH), 0));
+
+            ProtocolMessage<?> decoded = ProtocolMessageDecoder.decode(buffer);
+            Assert.assertEquals(ProtocolConstant.COMPACT_PROTOCOL_VERSION, decoded.getHeader().getVersion());
+            Assert.assertEquals(requestId, decoded.getHeader().getRequestId());
+            Assert.assertEquals(protocolMessage.getHeader().getSerializer(), decoded.getHeader().getSerializer());
+            Assert.assertEquals(protocolMessage.getHeader().getType(), decoded.getHeader().getType());
+            Assert.assertEquals("testMethod", ((RpcRequest) decoded.getBody()).getMethodName());
+        }
+    }
+
+    @Test
+    public void testCompactHeaderOverhead() throws IOException {
+        // 小消息的每条消息头开销：v1、v2 固定 17 字节，v3 在连接内请求 id 较小时只有 7 字节
+        ProtocolMessage<RpcRequest> protocolMessage = createTestMessage();
+        protocolMessage.getHeader().setSerializer((byte) ProtocolMessageSerializerEnum.KRYO.getKey());
+        int iterations = 10000;
+        byte[] versions = {ProtocolConstant.PROTOCOL_VERSION, ProtocolConstant.OPTIMIZED_PROTOCOL_VERSION, ProtocolConstant.COMPACT_PROTOCOL_VERSION};
+        int[] overheads = new int[versions.length];
+        System.out.println("=== 消息头开销对比 ===");
+        for (int v = 0; v < versions.length; v++) {
+            protocolMessage.getHeader().setVersion(versions[v]);
+            protocolMessage.getHeader().setRequestId(versions[v] == ProtocolConstant.COMPACT_PROTOCOL_VERSION ? 1 : IdUtil.getSnowflakeNextId());
+            Buffer buffer = ProtocolMessageEncoder.encode(protocolMessage);
+            ProtocolMessage<?> decoded = ProtocolMessageDecoder.decode(buffer);
+            overheads[v] = buffer.length() - decoded.getHeader().getBodyLength();
+
+            long startTime = System.nanoTime();
+            for (int i = 0; i < iterations; i++) {
+                ProtocolMessageDecoder.decode(ProtocolMessageEncoder.encode(protocolMessage));
+            }
+            long elapsed = System.nanoTime() - startTime;
+            System.out.printf("v%d: 消息总长 %d 字节，消息头 %d 字节，编解码 %d 次耗时 %.2f ms\n",
+                    versions[v], buffer.length(), overheads[v], iterations, elapsed / 1_000_000.0);
+        }
+        Assert.assertEquals(ProtocolConstant.MESSAGE_HEADER_LENGTH, overheads[0]);
+        Assert.assertEquals(ProtocolConstant.OPTIMIZED_MESSAGE_HEADER_LENGTH, overheads[1]);
+        Assert.assertEquals(ProtocolConstant.COMPACT_FIXED_HEADER_LENGTH + 2, overheads[2]);
+    }
+
     private ProtocolMessage<RpcRequest> createTestMessage() {
         ProtocolMessage<RpcRequest> protocolMessage = new ProtocolMessage<>();
         ProtocolMessage.Header header = new ProtocolMessage.Header();
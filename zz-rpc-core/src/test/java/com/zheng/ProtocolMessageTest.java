@@ -2,6 +2,7 @@ package com.zheng;
 
 import cn.hutool.core.util.IdUtil;
 import com.zheng.constants.RpcConstant;
+import com.zheng.model.RpcBatchRequest;
 import com.zheng.model.RpcRequest;
 import com.zheng.protocal.*;
 import io.vertx.core.buffer.Buffer;
@@ -9,6 +10,8 @@ import org.junit.Assert;
 import org.junit.Test;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 
 public class ProtocolMessageTest {
 
@@ -38,4 +41,27 @@ public class ProtocolMessageTest {
         Assert.assertNotNull(message);
     }
 
+    @Test
+    public void testBatchEncodeAndDecode() throws IOException {
+        ProtocolMessage.Header header = new ProtocolMessage.Header();
+        header.setMagic(ProtocolConstant.PROTOCOL_MAGIC);
+        header.setVersion(ProtocolConstant.PROTOCOL_VERSION);
+        header.setSerializer((byte) ProtocolMessageSerializerEnum.JDK.getKey());
+        header.setType((byte) ProtocolMessageTypeEnum.BATCH_REQUEST.getKey());
+        header.setStatus((byte) ProtocolMessageStatusEnum.OK.getValue());
+        header.setRequestId(IdUtil.getSnowflakeNextId());
+        List<RpcRequest> requests = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            requests.add(RpcRequest.builder().serviceName("myService").methodName("getUser").args(new Object[]{i}).build());
+        }
+        RpcBatchRequest batchRequest = RpcBatchRequest.builder().requests(requests).timeout(1000).build();
+
+        Buffer encodeBuffer = ProtocolMessageEncoder.encode(new ProtocolMessage<>(header, batchRequest));
+        ProtocolMessage<?> message = ProtocolMessageDecoder.decode(encodeBuffer);
+        RpcBatchRequest decoded = (RpcBatchRequest) message.getBody();
+        Assert.assertEquals(3, decoded.getRequests().size());
+        Assert.assertEquals(2, decoded.getRequests().get(2).getArgs()[0]);
+        Assert.assertEquals(1000, decoded.getTimeout());
+    }
+
 }
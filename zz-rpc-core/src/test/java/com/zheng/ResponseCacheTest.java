@@ -0,0 +1,146 @@
+package com.zheng;
+
+import com.zheng.cache.ResponseCache;
+import com.zheng.cache.ResponseCacheConfig;
+import com.zheng.model.RpcResponse;
+import com.zheng.serializer.JdkSerializer;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 客户端结果缓存测试
+ */
+public class ResponseCacheTest {
+
+    @Test
+    public void buildKey() {
+        JdkSerializer serializer = new JdkSerializer();
+        Class<?>[] parameterTypes = {Long.class, String.class};
+        String key = ResponseCache.buildKey(parameterTypes, new Object[]{1L, "zheng"}, serializer);
+        Assert.assertEquals(key, ResponseCache.buildKey(parameterTypes, new Object[]{1L, "zheng"}, serializer));
+        Assert.assertNotEquals(key, ResponseCache.buildKey(parameterTypes, new Object[]{2L, "zheng"}, serializer));
+        // 重载方法参数值相同也不共用键
+        Assert.assertNotEquals(key, ResponseCache.buildKey(new Class<?>[]{Object.class, Object.class}, new Object[]{1L, "zheng"}, serializer));
+        Assert.assertNotEquals(ResponseCache.buildKey(new Class<?>[0], null, serializer),
+                ResponseCache.buildKey(new Class<?>[]{Long.class}, null, serializer));
+        // 参数无法序列化时不缓存
+        Assert.assertNull(ResponseCache.buildKey(new Class<?>[]{Object.class}, new Object[]{new Object()}, serializer));
+    }
+
+    @Test
+    public void ttl() throws InterruptedException {
+        ResponseCacheConfig config = new ResponseCacheConfig();
+        config.setTtl(50);
+        ResponseCache responseCache = new ResponseCache(config);
+        RpcResponse rpcResponse = RpcResponse.builder().data("user").build();
+        responseCache.put("1", rpcResponse);
+        Assert.assertSame(rpcResponse, responseCache.get("1"));
+        Thread.sleep(100);
+        Assert.assertNull(responseCache.get("1"));
+    }
+
+    @Test
+    public void admission() {
+        ResponseCacheConfig config = new ResponseCacheConfig();
+        config.setMaxSize(4);
+        ResponseCache responseCache = new ResponseCache(config);
+        for (int i = 0; i < 4; i++) {
+            String key = "hot" + i;
+            for (int j = 0; j < 5; j++) {
+                responseCache.get(key);
+            }
+            responseCache.put(key, RpcResponse.builder().data(key).build());
+        }
+        // 只访问一次的结果不能挤掉热点结果
+        responseCache.get("cold");
+        responseCache.put("cold", RpcResponse.builder().data("cold").build());
+        Assert.assertNull(responseCache.get("cold"));
+        Assert.assertEquals(4, responseCache.size());
+        // 频率更高的结果可以替换
+        for (int j = 0; j < 10; j++) {
+            responseCache.get("warm");
+        }
+        responseCache.put("warm", RpcResponse.builder().data("warm").build());
+        Assert.assertNotNull(responseCache.get("warm"));
+        Assert.assertEquals(4, responseCache.size());
+    }
+
+    @Test
+    public void concurrentAccess() throws Exception {
+        ResponseCacheConfig config = new ResponseCacheConfig();
+        config.setMaxSize(64);
+        ResponseCache responseCache = new ResponseCache(config);
+        // 多线程并发访问热点结果，访问频率不会因为并发而丢失太多
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < 8; t++) {
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < 1000; i++) {
+                        String key = "hot" + (i % 64);
+                        if (responseCache.get(key) == null) {
+                            responseCache.put(key, RpcResponse.builder().data(key).build());
+                        }
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get(10, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdown();
+        }
+        Assert.assertEquals(64, responseCache.size());
+        responseCache.get("cold");
+        responseCache.put("cold", RpcResponse.builder().data("cold").build());
+        Assert.assertNull(responseCache.get("cold"));
+    }
+
+    @Test
+    public void boundedUnderConcurrentPuts() throws Exception {
+        ResponseCacheConfig config = new ResponseCacheConfig();
+        config.setMaxSize(16);
+        ResponseCache responseCache = new ResponseCache(config);
+        // 并发写入不同的键，容量检查同时通过后也会修剪回上限
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < 8; t++) {
+                int thread = t;
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < 1000; i++) {
+                        String key = thread + "-" + i;
+                        responseCache.get(key);
+                        responseCache.get(key);
+                        responseCache.put(key, RpcResponse.builder().data(key).build());
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get(10, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdown();
+        }
+        Assert.assertTrue(responseCache.size() <= 16);
+    }
+
+    @Test
+    public void invalidate() {
+        ResponseCacheConfig config = new ResponseCacheConfig();
+        ResponseCache responseCache = ResponseCache.getInstance(config, "com.zheng.UserService", "getUser");
+        responseCache.put("1", RpcResponse.builder().data("user").build());
+        ResponseCache.invalidate("com.zheng.UserService", "getUser");
+        Assert.assertNull(responseCache.get("1"));
+        responseCache.put("1", RpcResponse.builder().data("user").build());
+        ResponseCache.invalidate("com.zheng.UserService");
+        Assert.assertEquals(0, responseCache.size());
+    }
+}
@@ -1,10 +1,18 @@
 package com.zheng;
 
+import com.zheng.fault.retry.ExponentialBackoffStrategy;
 import com.zheng.fault.retry.NoRetryStrategy;
+import com.zheng.fault.retry.RetryBudget;
 import com.zheng.fault.retry.RetryStrategy;
 import com.zheng.model.RpcResponse;
+import org.junit.Assert;
 import org.junit.Test;
 
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
 /**
  * 重试策略测试
  */
@@ -25,4 +33,40 @@ public class RetryStrategyTest {
             e.printStackTrace();
         }
     }
+
+    @Test
+    public void doRetryAsync() throws Exception {
+        RetryStrategy exponentialBackoff = new ExponentialBackoffStrategy();
+        AtomicInteger attempts = new AtomicInteger();
+        RpcResponse expected = new RpcResponse();
+        RpcResponse rpcResponse = exponentialBackoff.doRetryAsync(() -> attempts.incrementAndGet() < 2
+                ? CompletableFuture.failedFuture(new RuntimeException("模拟调用失败"))
+                : CompletableFuture.completedFuture(expected)).get(5, TimeUnit.SECONDS);
+        Assert.assertSame(expected, rpcResponse);
+        Assert.assertEquals(2, attempts.get());
+    }
+
+    @Test
+    public void retryBudget() throws Exception {
+        // 耗尽预算后不再重试
+        while (RetryBudget.tryWithdraw()) {
+        }
+        RetryStrategy exponentialBackoff = new ExponentialBackoffStrategy();
+        AtomicInteger attempts = new AtomicInteger();
+        try {
+            exponentialBackoff.doRetryAsync(() -> {
+                attempts.incrementAndGet();
+                return CompletableFuture.failedFuture(new RuntimeException("模拟调用失败"));
+            }).get(5, TimeUnit.SECONDS);
+            Assert.fail();
+        } catch (ExecutionException e) {
+            Assert.assertEquals("模拟调用失败", e.getCause().getMessage());
+        }
+        Assert.assertEquals(1, attempts.get());
+        // 成功调用按比例补充预算
+        for (int i = 0; i < 500; i++) {
+            RetryBudget.deposit();
+        }
+        Assert.assertTrue(RetryBudget.tryWithdraw());
+    }
 }
@@ -0,0 +1,47 @@
+package com.zheng;
+
+import com.zheng.conf.RpcConfig;
+import com.zheng.registry.RegistryKeys;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * 测试公共初始化
+ */
+public class RpcTestSupport {
+
+    private static RpcConfig embeddedRegistryConfig;
+
+    /**
+     * 使用默认配置，不初始化注册中心
+     *
+     * @return 新的配置，测试可在其上修改
+     */
+    public static RpcConfig useDefaultConfig() {
+        RpcConfig rpcConfig = new RpcConfig();
+        RpcApplication.setRpcConfig(rpcConfig);
+        return rpcConfig;
+    }
+
+    /**
+     * 使用内嵌注册中心（临时文件）初始化框架，整个测试进程只初始化一次
+     *
+     * @return
+     * @throws IOException
+     */
+    public static synchronized RpcConfig useEmbeddedRegistry() throws IOException {
+        if (embeddedRegistryConfig == null) {
+            File file = File.createTempFile("zz-rpc-embedded-registry", ".test");
+            file.deleteOnExit();
+            RpcConfig rpcConfig = new RpcConfig();
+            rpcConfig.getRegistryConfig().setRegistry(RegistryKeys.EMBEDDED);
+            rpcConfig.getRegistryConfig().setAddress("file:" + file.getAbsolutePath());
+            RpcApplication.init(rpcConfig);
+            embeddedRegistryConfig = rpcConfig;
+        } else {
+            RpcApplication.setRpcConfig(embeddedRegistryConfig);
+        }
+        return embeddedRegistryConfig;
+    }
+}
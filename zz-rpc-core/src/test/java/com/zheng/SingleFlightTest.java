@@ -0,0 +1,66 @@
+package com.zheng;
+
+import com.zheng.model.RpcResponse;
+import com.zheng.proxy.SingleFlight;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 请求合并测试
+ */
+public class SingleFlightTest {
+
+    @Test
+    public void coalesce() throws Exception {
+        AtomicInteger requests = new AtomicInteger();
+        CompletableFuture<RpcResponse> wire = new CompletableFuture<>();
+        CompletableFuture<RpcResponse> first = SingleFlight.execute("UserService.getUser#1", () -> {
+            requests.incrementAndGet();
+            return wire;
+        });
+        CompletableFuture<RpcResponse> second = SingleFlight.execute("UserService.getUser#1", () -> {
+            requests.incrementAndGet();
+            return new CompletableFuture<>();
+        });
+        // 参数不同的调用不合并
+        SingleFlight.execute("UserService.getUser#2", () -> {
+            requests.incrementAndGet();
+            return CompletableFuture.completedFuture(new RpcResponse());
+        });
+        Assert.assertSame(first, second);
+        Assert.assertEquals(2, requests.get());
+
+        RpcResponse rpcResponse = RpcResponse.builder().data("user").build();
+        wire.complete(rpcResponse);
+        Assert.assertSame(rpcResponse, first.get());
+        Assert.assertSame(rpcResponse, second.get());
+        Assert.assertEquals(0, SingleFlight.inFlightCount());
+
+        // 返回后再次调用会发出新请求
+        SingleFlight.execute("UserService.getUser#1", () -> {
+            requests.incrementAndGet();
+            return CompletableFuture.completedFuture(rpcResponse);
+        }).get();
+        Assert.assertEquals(3, requests.get());
+    }
+
+    @Test
+    public void failure() throws Exception {
+        CompletableFuture<RpcResponse> wire = new CompletableFuture<>();
+        CompletableFuture<RpcResponse> first = SingleFlight.execute("UserService.getUser#3", () -> wire);
+        CompletableFuture<RpcResponse> second = SingleFlight.execute("UserService.getUser#3", CompletableFuture::new);
+        wire.completeExceptionally(new RuntimeException("连接失败"));
+        for (CompletableFuture<RpcResponse> future : new CompletableFuture[]{first, second}) {
+            try {
+                future.get();
+                Assert.fail();
+            } catch (ExecutionException e) {
+                Assert.assertEquals("连接失败", e.getCause().getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package com.zheng;
+
+import com.zheng.model.RpcStreamFrame;
+import com.zheng.protocal.ProtocolMessageTypeEnum;
+import com.zheng.server.tcp.StreamIterator;
+import com.zheng.server.tcp.StreamProducer;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * 流式调用测试（不经过网络，直接连接发送端和接收端）
+ */
+public class StreamTest {
+
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+
+    @Test
+    public void stream() {
+        StreamIterator<Integer> streamIterator = new StreamIterator<>(4, 5000);
+        Stream<Integer> source = IntStream.range(0, 100).boxed();
+        connect(streamIterator, new AtomicInteger()).start(source, StreamProducer.toIterator(source), 4);
+        List<Integer> result = new ArrayList<>();
+        streamIterator.forEachRemaining(result::add);
+        Assert.assertEquals(100, result.size());
+        Assert.assertEquals(99, (int) result.get(99));
+    }
+
+    @Test
+    public void flowControl() throws InterruptedException {
+        StreamIterator<Integer> streamIterator = new StreamIterator<>(4, 5000);
+        AtomicBoolean sourceClosed = new AtomicBoolean();
+        // 无限数据源，只能按额度发送
+        Stream<Integer> source = Stream.iterate(0, i -> i + 1).onClose(() -> sourceClosed.set(true));
+        AtomicInteger sent = new AtomicInteger();
+        connect(streamIterator, sent).start(source, StreamProducer.toIterator(source), 4);
+        Thread.sleep(100);
+        Assert.assertEquals(4, sent.get());
+
+        for (int i = 0; i < 10; i++) {
+            Assert.assertEquals(i, (int) streamIterator.next());
+        }
+        Thread.sleep(100);
+        // 已发送的数量不超过已消费的数量加一个窗口
+        Assert.assertTrue(sent.get() <= 10 + 4);
+
+        streamIterator.close();
+        Thread.sleep(100);
+        Assert.assertTrue(sourceClosed.get());
+    }
+
+    @Test
+    public void cancelBeforeStart() {
+        StreamIterator<Integer> streamIterator = new StreamIterator<>(4, 5000);
+        AtomicInteger sent = new AtomicInteger();
+        StreamProducer producer = connect(streamIterator, sent);
+        // 服务方法执行期间调用方取消，拿到数据源后立即关闭，不再发送
+        streamIterator.close();
+        Assert.assertTrue(producer.isDone());
+        AtomicBoolean sourceClosed = new AtomicBoolean();
+        Stream<Integer> source = Stream.iterate(0, i -> i + 1).onClose(() -> sourceClosed.set(true));
+        producer.start(source, StreamProducer.toIterator(source), 4);
+        Assert.assertTrue(sourceClosed.get());
+        Assert.assertEquals(0, sent.get());
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void error() {
+        StreamIterator<Integer> streamIterator = new StreamIterator<>(4, 5000);
+        Stream<Integer> source = IntStream.range(0, 3).boxed().map(i -> {
+            if (i == 2) {
+                throw new IllegalStateException("读取失败");
+            }
+            return i;
+        });
+        connect(streamIterator, new AtomicInteger()).start(source, StreamProducer.toIterator(source), 4);
+        streamIterator.forEachRemaining(i -> {
+        });
+    }
+
+    private StreamProducer connect(StreamIterator<Integer> streamIterator, AtomicInteger sent) {
+        BiConsumer<ProtocolMessageTypeEnum, RpcStreamFrame> sender = (type, frame) -> {
+            if (type == ProtocolMessageTypeEnum.STREAM_DATA) {
+                sent.incrementAndGet();
+                streamIterator.onData(frame.getData());
+            } else {
+                streamIterator.onEnd(frame.getException());
+            }
+        };
+        StreamProducer producer = new StreamProducer(sender, executor);
+        streamIterator.setChannel(new StreamIterator.Channel() {
+            @Override
+            public void request(int credit) {
+                producer.onCredit(credit);
+            }
+
+            @Override
+            public void cancel() {
+                producer.cancel();
+            }
+        });
+        return producer;
+    }
+}
@@ -0,0 +1,244 @@
+package com.zheng;
+
+import com.zheng.fault.hedge.HedgingConfig;
+import com.zheng.fault.hedge.HedgingPolicy;
+import com.zheng.fault.retry.DeadlineExceededException;
+import com.zheng.fault.retry.ExponentialBackoffStrategy;
+import com.zheng.fault.retry.RetryScheduler;
+import com.zheng.fault.retry.RetryBudget;
+import com.zheng.loadbalancer.RoundRobinLoadBalancer;
+import com.zheng.model.RpcRequest;
+import com.zheng.model.RpcResponse;
+import com.zheng.model.ServiceMetaInfo;
+import com.zheng.proxy.InvocationContext;
+import com.zheng.proxy.Invoker;
+import com.zheng.tolerant.FailBackTolerantStrategy;
+import com.zheng.tolerant.FailOverTolerantStrategy;
+import com.zheng.tolerant.FallbackRegistry;
+import com.zheng.tolerant.TolerantStrategy;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 容错策略测试
+ */
+public class TolerantStrategyTest {
+
+    @Test
+    public void failOver() throws Exception {
+        ServiceMetaInfo badServiceMetaInfo = buildServiceMetaInfo(1234);
+        ServiceMetaInfo goodServiceMetaInfo = buildServiceMetaInfo(1235);
+        List<ServiceMetaInfo> invoked = new ArrayList<>();
+        InvocationContext invocationContext = buildContext(Arrays.asList(badServiceMetaInfo, goodServiceMetaInfo), (rpcRequest, serviceMetaInfo) -> {
+            invoked.add(serviceMetaInfo);
+            if (serviceMetaInfo == badServiceMetaInfo) {
+                return CompletableFuture.failedFuture(new RuntimeException("连接失败"));
+            }
+            return CompletableFuture.completedFuture(RpcResponse.builder().data("ok").build());
+        });
+
+        Exception exception = null;
+        try {
+            invocationContext.invoke(badServiceMetaInfo);
+        } catch (Exception e) {
+            exception = e;
+        }
+        TolerantStrategy tolerantStrategy = new FailOverTolerantStrategy();
+        RpcResponse rpcResponse = tolerantStrategy.doTolerant(invocationContext, exception);
+        // 转移到另一个节点，不再选择失败的节点
+        Assert.assertEquals("ok", rpcResponse.getData());
+        Assert.assertEquals(Arrays.asList(badServiceMetaInfo, goodServiceMetaInfo), invoked);
+        Assert.assertEquals(2, invocationContext.getAttempt());
+    }
+
+    @Test
+    public void failOverWithinRetryBudget() throws Exception {
+        ServiceMetaInfo badServiceMetaInfo = buildServiceMetaInfo(1234);
+        ServiceMetaInfo goodServiceMetaInfo = buildServiceMetaInfo(1235);
+        List<ServiceMetaInfo> invoked = new ArrayList<>();
+        InvocationContext invocationContext = buildContext(Arrays.asList(badServiceMetaInfo, goodServiceMetaInfo), (rpcRequest, serviceMetaInfo) -> {
+            invoked.add(serviceMetaInfo);
+            return CompletableFuture.completedFuture(RpcResponse.builder().data("ok").build());
+        });
+        invocationContext.addFailedServiceMetaInfo(badServiceMetaInfo);
+        // 重试预算耗尽时不再转移
+        while (RetryBudget.tryWithdraw()) {
+        }
+        try {
+            new FailOverTolerantStrategy().doTolerant(invocationContext, new RuntimeException("连接失败"));
+            Assert.fail();
+        } catch (RuntimeException e) {
+            Assert.assertEquals("连接失败", e.getCause().getMessage());
+        } finally {
+            for (int i = 0; i < 500; i++) {
+                RetryBudget.deposit();
+            }
+        }
+        Assert.assertTrue(invoked.isEmpty());
+    }
+
+    @Test
+    public void deadlineSharedByRetries() throws Exception {
+        List<Long> timeouts = new CopyOnWriteArrayList<>();
+        InvocationContext invocationContext = buildContext(Arrays.asList(buildServiceMetaInfo(1234), buildServiceMetaInfo(1235)),
+                (rpcRequest, serviceMetaInfo) -> {
+                    timeouts.add(rpcRequest.getTimeout());
+                    return CompletableFuture.supplyAsync(() -> {
+                        throw new RuntimeException("连接失败");
+                    }, CompletableFuture.delayedExecutor(150, TimeUnit.MILLISECONDS));
+                });
+        invocationContext.getRpcRequest().setTimeout(200);
+        invocationContext.startDeadline(200);
+        try {
+            // 不退避，结果只取决于截止时间
+            RetryScheduler.execute(() -> invocationContext.invokeAsync(invocationContext.selectForRetry()), 3, attempt -> 0)
+                    .get(5, TimeUnit.SECONDS);
+            Assert.fail();
+        } catch (ExecutionException e) {
+            // 超时预算用完后不再重试
+            Assert.assertTrue(e.getCause() instanceof DeadlineExceededException);
+        }
+        // 每次发送使用剩余的时间，而不是完整的超时时间
+        Assert.assertEquals(2, timeouts.size());
+        Assert.assertTrue(timeouts.get(0) <= 200);
+        Assert.assertTrue(timeouts.get(1) <= 50);
+    }
+
+    @Test
+    public void failBack() {
+        InvocationContext invocationContext = buildContext(Arrays.asList(buildServiceMetaInfo(1234)),
+                (rpcRequest, serviceMetaInfo) -> CompletableFuture.failedFuture(new RuntimeException("连接失败")));
+        RpcRequest rpcRequest = invocationContext.getRpcRequest();
+        rpcRequest.setServiceName(GreetingService.class.getName());
+        rpcRequest.setMethodName("greet");
+        rpcRequest.setParameterTypes(new Class[]{String.class});
+        rpcRequest.setArgs(new Object[]{"zz"});
+        TolerantStrategy tolerantStrategy = new FailBackTolerantStrategy();
+
+        // 没有注册降级实现时直接失败
+        try {
+            tolerantStrategy.doTolerant(invocationContext, new RuntimeException("连接失败"));
+            Assert.fail();
+        } catch (RuntimeException e) {
+            Assert.assertEquals("连接失败", e.getCause().getMessage());
+        }
+
+        FallbackRegistry.register(GreetingService.class, name -> "fallback " + name);
+        try {
+            RpcResponse rpcResponse = tolerantStrategy.doTolerant(invocationContext, new RuntimeException("连接失败"));
+            Assert.assertEquals("fallback zz", rpcResponse.getData());
+        } finally {
+            FallbackRegistry.remove(GreetingService.class.getName());
+        }
+    }
+
+    public interface GreetingService {
+
+        String greet(String name);
+    }
+
+    @Test
+    public void retryOnAnotherProvider() throws Exception {
+        ServiceMetaInfo badServiceMetaInfo = buildServiceMetaInfo(1234);
+        ServiceMetaInfo goodServiceMetaInfo = buildServiceMetaInfo(1235);
+        List<ServiceMetaInfo> invoked = new ArrayList<>();
+        InvocationContext invocationContext = buildContext(Arrays.asList(badServiceMetaInfo, goodServiceMetaInfo), (rpcRequest, serviceMetaInfo) -> {
+            invoked.add(serviceMetaInfo);
+            if (serviceMetaInfo == badServiceMetaInfo) {
+                return CompletableFuture.failedFuture(new RuntimeException("连接失败"));
+            }
+            return CompletableFuture.completedFuture(RpcResponse.builder().data("ok").build());
+        });
+        // 重试时重新选择，排除已失败的节点
+        RpcResponse rpcResponse = new ExponentialBackoffStrategy().doRetryAsync(() -> invocationContext.invokeAsync(
+                invocationContext.getAttempt() == 0 ? badServiceMetaInfo : invocationContext.selectForRetry())
+        ).get(5, TimeUnit.SECONDS);
+        Assert.assertEquals("ok", rpcResponse.getData());
+        Assert.assertEquals(Arrays.asList(badServiceMetaInfo, goodServiceMetaInfo), invoked);
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void failOverWithoutCandidate() throws Exception {
+        ServiceMetaInfo badServiceMetaInfo = buildServiceMetaInfo(1234);
+        InvocationContext invocationContext = buildContext(Arrays.asList(badServiceMetaInfo), (rpcRequest, serviceMetaInfo) ->
+                CompletableFuture.failedFuture(new RuntimeException("连接失败")));
+        try {
+            invocationContext.invoke(badServiceMetaInfo);
+        } catch (Exception e) {
+            new FailOverTolerantStrategy().doTolerant(invocationContext, e);
+        }
+    }
+
+    private InvocationContext buildContext(List<ServiceMetaInfo> serviceMetaInfoList, Invoker invoker) {
+        InvocationContext invocationContext = new InvocationContext();
+        invocationContext.setRpcRequest(RpcRequest.builder().serviceName("failOverService").methodName("get").build());
+        invocationContext.setServiceMetaInfoList(serviceMetaInfoList);
+        invocationContext.setLoadBalancer(new RoundRobinLoadBalancer());
+        invocationContext.setRequestParams(new HashMap<>());
+        invocationContext.setInvoker(invoker);
+        return invocationContext;
+    }
+
+    private ServiceMetaInfo buildServiceMetaInfo(int port) {
+        ServiceMetaInfo serviceMetaInfo = new ServiceMetaInfo();
+        serviceMetaInfo.setServiceName("failOverService");
+        serviceMetaInfo.setServiceHost("localhost");
+        serviceMetaInfo.setServicePort(port);
+        return serviceMetaInfo;
+    }
+
+    @Test
+    public void hedging() throws Exception {
+        ServiceMetaInfo slowServiceMetaInfo = buildServiceMetaInfo(1234);
+        ServiceMetaInfo fastServiceMetaInfo = buildServiceMetaInfo(1235);
+        CompletableFuture<RpcResponse> slowFuture = new CompletableFuture<>();
+        InvocationContext invocationContext = buildContext(Arrays.asList(slowServiceMetaInfo, fastServiceMetaInfo), (rpcRequest, serviceMetaInfo) ->
+                serviceMetaInfo == slowServiceMetaInfo ? slowFuture : CompletableFuture.completedFuture(RpcResponse.builder().data("fast").build()));
+        HedgingConfig hedgingConfig = new HedgingConfig();
+        hedgingConfig.setDefaultDelay(20);
+        hedgingConfig.setBudgetPercent(100);
+        HedgingPolicy hedgingPolicy = new HedgingPolicy(hedgingConfig);
+        hedgingPolicy.onRequest();
+        Assert.assertTrue(hedgingPolicy.tryAcquireHedge());
+
+        // 首个请求迟迟不返回时，对冲请求的结果先到
+        CompletableFuture<RpcResponse> primaryFuture = invocationContext.invokeAsync(slowServiceMetaInfo);
+        Thread.sleep(hedgingPolicy.getDelayMillis());
+        ServiceMetaInfo hedgeServiceMetaInfo = invocationContext.select(slowServiceMetaInfo);
+        Assert.assertEquals(fastServiceMetaInfo, hedgeServiceMetaInfo);
+        CompletableFuture<RpcResponse> hedgeFuture = invocationContext.invokeAsync(hedgeServiceMetaInfo);
+        Assert.assertEquals("fast", HedgingPolicy.firstSuccessful(primaryFuture, hedgeFuture).get().getData());
+        primaryFuture.cancel(true);
+        // 被取消的请求不算失败
+        Assert.assertTrue(slowFuture.isCancelled());
+        Assert.assertTrue(invocationContext.getFailedServiceMetaInfoList().isEmpty());
+        // 预算用完后不再对冲
+        Assert.assertFalse(hedgingPolicy.tryAcquireHedge());
+    }
+
+    @Test
+    public void hedgingDelayCountsCancelledAttempts() throws Exception {
+        HedgingConfig hedgingConfig = new HedgingConfig();
+        hedgingConfig.setDefaultDelay(1);
+        HedgingPolicy hedgingPolicy = new HedgingPolicy(hedgingConfig);
+        List<CompletableFuture<RpcResponse>> futures = new ArrayList<>();
+        for (int i = 0; i < 30; i++) {
+            CompletableFuture<RpcResponse> future = new CompletableFuture<>();
+            hedgingPolicy.track(future);
+            futures.add(future);
+        }
+        Thread.sleep(60);
+        // 被对冲取消的慢请求以已等待的时间作为响应时间下界
+        futures.forEach(future -> future.cancel(true));
+        Assert.assertTrue(hedgingPolicy.getDelayMillis() >= 50);
+    }
+}
@@ -0,0 +1,67 @@
+package com.zheng.proxy;
+
+import com.zheng.RpcTestSupport;
+import com.zheng.fault.hedge.HedgingConfig;
+import com.zheng.fault.hedge.HedgingPolicy;
+import com.zheng.loadbalancer.RoundRobinLoadBalancer;
+import com.zheng.loadbalancer.RpcStatus;
+import com.zheng.model.RpcRequest;
+import com.zheng.model.RpcResponse;
+import com.zheng.model.ServiceMetaInfo;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 对冲调用测试（经过 ServiceProxy 的定时器、结果转交和取消较慢请求的完整流程）
+ */
+public class HedgingTest {
+
+    @Test
+    public void cancelledLoserIsNotPenalized() throws Exception {
+        RpcTestSupport.useDefaultConfig();
+        ServiceMetaInfo slowServiceMetaInfo = buildServiceMetaInfo(5234);
+        ServiceMetaInfo fastServiceMetaInfo = buildServiceMetaInfo(5235);
+        CompletableFuture<RpcResponse> slowFuture = new CompletableFuture<>();
+        Invoker transport = (rpcRequest, serviceMetaInfo) -> serviceMetaInfo == slowServiceMetaInfo
+                ? slowFuture : CompletableFuture.completedFuture(RpcResponse.builder().data("fast").build());
+
+        InvocationContext invocationContext = new InvocationContext();
+        invocationContext.setRpcRequest(RpcRequest.builder().serviceName("hedgingService").methodName("get").build());
+        invocationContext.setServiceMetaInfoList(Arrays.asList(slowServiceMetaInfo, fastServiceMetaInfo));
+        invocationContext.setLoadBalancer(new RoundRobinLoadBalancer());
+        invocationContext.setRequestParams(new HashMap<>());
+        invocationContext.setInvoker((rpcRequest, serviceMetaInfo) -> ServiceProxy.doRequestAsync(rpcRequest, serviceMetaInfo, transport));
+        HedgingConfig hedgingConfig = new HedgingConfig();
+        hedgingConfig.setDefaultDelay(20);
+        hedgingConfig.setBudgetPercent(100);
+
+        RpcResponse rpcResponse = ServiceProxy.doHedgedRequestAsync(invocationContext, slowServiceMetaInfo, new HedgingPolicy(hedgingConfig))
+                .get(5, TimeUnit.SECONDS);
+        Assert.assertEquals("fast", rpcResponse.getData());
+        Assert.assertEquals(2, invocationContext.getAttempt());
+        // 较慢的请求在结果返回后被异步取消，不算失败，也不计入该节点的调用次数和响应时间
+        for (int i = 0; i < 100 && !slowFuture.isDone(); i++) {
+            Thread.sleep(10);
+        }
+        Assert.assertTrue(slowFuture.isCancelled());
+        Assert.assertTrue(invocationContext.getFailedServiceMetaInfoList().isEmpty());
+        RpcStatus slowStatus = RpcStatus.getStatus(slowServiceMetaInfo.getServiceAddress());
+        Assert.assertEquals(0, slowStatus.getActive());
+        Assert.assertEquals(0, slowStatus.getTotal());
+        Assert.assertEquals(0, slowStatus.getEwma(System.nanoTime()), 0);
+        Assert.assertEquals(1, RpcStatus.getStatus(fastServiceMetaInfo.getServiceAddress()).getTotal());
+    }
+
+    private ServiceMetaInfo buildServiceMetaInfo(int port) {
+        ServiceMetaInfo serviceMetaInfo = new ServiceMetaInfo();
+        serviceMetaInfo.setServiceName("hedgingService");
+        serviceMetaInfo.setServiceHost("localhost");
+        serviceMetaInfo.setServicePort(port);
+        return serviceMetaInfo;
+    }
+}
@@ -0,0 +1,73 @@
+package com.zheng.proxy;
+
+import com.zheng.RpcTestSupport;
+import com.zheng.loadbalancer.RpcStatus;
+import com.zheng.model.RpcBatchResponse;
+import com.zheng.model.RpcRequest;
+import com.zheng.model.RpcResponse;
+import com.zheng.model.ServiceMetaInfo;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * 服务代理调用统计测试
+ */
+public class ServiceProxyTest {
+
+    @Test
+    public void businessExceptionIsNotPenalized() throws Exception {
+        RpcTestSupport.useDefaultConfig();
+        ServiceMetaInfo serviceMetaInfo = buildServiceMetaInfo(6234);
+        RpcResponse businessFailure = RpcResponse.builder().message("用户不存在").exception(new IllegalArgumentException("用户不存在")).build();
+        RpcRequest rpcRequest = RpcRequest.builder().serviceName("proxyService").methodName("get").build();
+        ServiceProxy.doRequestAsync(rpcRequest, serviceMetaInfo, (request, target) -> CompletableFuture.completedFuture(businessFailure))
+                .get(5, TimeUnit.SECONDS);
+
+        // 带业务异常的响应按真实耗时统计，不算失败
+        RpcStatus status = RpcStatus.getStatus(serviceMetaInfo.getServiceAddress());
+        Assert.assertEquals(1, status.getTotal());
+        Assert.assertEquals(0, status.getFailed());
+        Assert.assertTrue(status.getEwma(System.nanoTime()) < TimeUnit.MILLISECONDS.toNanos(100));
+    }
+
+    @Test
+    public void timeoutIsPenalized() {
+        RpcTestSupport.useDefaultConfig();
+        ServiceMetaInfo serviceMetaInfo = buildServiceMetaInfo(6235);
+        RpcRequest rpcRequest = RpcRequest.builder().serviceName("proxyService").methodName("get").build();
+        ServiceProxy.doRequestAsync(rpcRequest, serviceMetaInfo, (request, target) -> CompletableFuture.failedFuture(new TimeoutException()));
+
+        RpcStatus status = RpcStatus.getStatus(serviceMetaInfo.getServiceAddress());
+        Assert.assertEquals(1, status.getFailed());
+        Assert.assertTrue(status.getEwma(System.nanoTime()) >= TimeUnit.MILLISECONDS.toNanos(900));
+    }
+
+    @Test
+    public void batchFrameIsCounted() throws Exception {
+        RpcTestSupport.useDefaultConfig();
+        ServiceMetaInfo serviceMetaInfo = buildServiceMetaInfo(6236);
+        CompletableFuture<RpcBatchResponse> frame = new CompletableFuture<>();
+        CompletableFuture<RpcBatchResponse> future = ServiceProxy.doCountedAsync(serviceMetaInfo, "get", () -> frame);
+
+        // 批量调用的协议帧与单个调用一样计入节点的在途数和调用次数
+        RpcStatus status = RpcStatus.getStatus(serviceMetaInfo.getServiceAddress());
+        Assert.assertEquals(1, status.getActive());
+        frame.complete(RpcBatchResponse.builder().responses(new ArrayList<>()).build());
+        future.get(5, TimeUnit.SECONDS);
+        Assert.assertEquals(0, status.getActive());
+        Assert.assertEquals(1, status.getTotal());
+    }
+
+    private ServiceMetaInfo buildServiceMetaInfo(int port) {
+        ServiceMetaInfo serviceMetaInfo = new ServiceMetaInfo();
+        serviceMetaInfo.setServiceName("proxyService");
+        serviceMetaInfo.setServiceHost("localhost");
+        serviceMetaInfo.setServicePort(port);
+        return serviceMetaInfo;
+    }
+}
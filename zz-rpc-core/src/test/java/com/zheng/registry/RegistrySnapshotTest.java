@@ -0,0 +1,126 @@
+package com.zheng.registry;
+
+import com.zheng.model.ServiceMetaInfo;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 注册中心本地快照测试
+ */
+public class RegistrySnapshotTest {
+
+    @Test
+    public void writeAndRead() throws Exception {
+        File file = File.createTempFile("zz-rpc-snapshot", ".test");
+        file.deleteOnExit();
+        ServiceMetaInfo fullServiceMetaInfo = buildServiceMetaInfo("snapshotService", 1234);
+        fullServiceMetaInfo.setWeight(50);
+        fullServiceMetaInfo.setRegisterTime(1700000000000L);
+        fullServiceMetaInfo.setWarmup(60000L);
+        fullServiceMetaInfo.setProtocolVersion(3);
+        // 可空字段为空的节点
+        ServiceMetaInfo emptyServiceMetaInfo = buildServiceMetaInfo("snapshotService", 1235);
+        emptyServiceMetaInfo.setServiceGroup(null);
+        Map<String, List<ServiceMetaInfo>> serviceMap = new HashMap<>();
+        serviceMap.put(fullServiceMetaInfo.getServiceKey(), List.of(fullServiceMetaInfo, emptyServiceMetaInfo));
+
+        RegistrySnapshot.write(file, serviceMap);
+        Map<String, List<ServiceMetaInfo>> loaded = RegistrySnapshot.read(file);
+
+        Assert.assertEquals(serviceMap, loaded);
+        ServiceMetaInfo loadedServiceMetaInfo = loaded.get(fullServiceMetaInfo.getServiceKey()).get(1);
+        Assert.assertNull(loadedServiceMetaInfo.getRegisterTime());
+        Assert.assertNull(loadedServiceMetaInfo.getWarmup());
+        Assert.assertNull(loadedServiceMetaInfo.getProtocolVersion());
+        // 为 null 的字符串字段读回后仍为 null，不会变成空字符串
+        Assert.assertNull(loadedServiceMetaInfo.getServiceGroup());
+    }
+
+    @Test
+    public void emptyLiveResultRemovesSnapshot() throws Exception {
+        File file = File.createTempFile("zz-rpc-snapshot", ".test");
+        file.deleteOnExit();
+        ServiceMetaInfo serviceMetaInfo = buildServiceMetaInfo("offlineService", 1234);
+        String serviceKey = serviceMetaInfo.getServiceKey();
+        RegistrySnapshot.write(file, Collections.singletonMap(serviceKey, List.of(serviceMetaInfo)));
+        RegistryConfig registryConfig = new RegistryConfig();
+        registryConfig.setEnableSnapshot(true);
+        registryConfig.setSnapshotFile(file.getAbsolutePath());
+        RegistrySnapshot.init(registryConfig);
+
+        // 注册中心可用，但服务节点已全部下线
+        Map<String, List<ServiceMetaInfo>> liveMap = new ConcurrentHashMap<>();
+        Registry registry = new StubRegistry(liveMap);
+        // 首次发现先返回快照，后台刷新
+        Assert.assertEquals(List.of(serviceMetaInfo), RegistrySnapshot.serviceDiscovery(registry, serviceKey));
+        List<ServiceMetaInfo> result = null;
+        for (int i = 0; i < 100; i++) {
+            result = RegistrySnapshot.serviceDiscovery(registry, serviceKey);
+            if (result.isEmpty()) {
+                break;
+            }
+            Thread.sleep(10);
+        }
+        Assert.assertTrue(result.isEmpty());
+
+        RegistrySnapshot.flush();
+        Assert.assertFalse(RegistrySnapshot.read(file).containsKey(serviceKey));
+    }
+
+    private ServiceMetaInfo buildServiceMetaInfo(String serviceName, int port) {
+        ServiceMetaInfo serviceMetaInfo = new ServiceMetaInfo();
+        serviceMetaInfo.setServiceName(serviceName);
+        serviceMetaInfo.setServiceVersion("1.0");
+        serviceMetaInfo.setServiceHost("localhost");
+        serviceMetaInfo.setServicePort(port);
+        return serviceMetaInfo;
+    }
+
+    /**
+     * 只支持服务发现的注册中心
+     */
+    private static class StubRegistry implements Registry {
+
+        private final Map<String, List<ServiceMetaInfo>> serviceMap;
+
+        private StubRegistry(Map<String, List<ServiceMetaInfo>> serviceMap) {
+            this.serviceMap = serviceMap;
+        }
+
+        @Override
+        public void init(RegistryConfig registryConfig) {
+        }
+
+        @Override
+        public void register(ServiceMetaInfo serviceMetaInfo) {
+        }
+
+        @Override
+        public void unRegister(ServiceMetaInfo serviceMetaInfo) {
+        }
+
+        @Override
+        public List<ServiceMetaInfo> serviceDiscovery(String serviceKey) {
+            return serviceMap.getOrDefault(serviceKey, Collections.emptyList());
+        }
+
+        @Override
+        public void destroy() {
+        }
+
+        @Override
+        public void heartBeat() {
+        }
+
+        @Override
+        public void watch(String serviceNodeKey) {
+        }
+    }
+}
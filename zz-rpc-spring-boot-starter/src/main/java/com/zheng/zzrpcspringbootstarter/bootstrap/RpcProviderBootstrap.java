@@ -4,6 +4,7 @@ package com.zheng.zzrpcspringbootstarter.bootstrap;
 import com.zheng.RpcApplication;
 import com.zheng.conf.RpcConfig;
 import com.zheng.model.ServiceMetaInfo;
+import com.zheng.protocal.ProtocolConstant;
 import com.zheng.registry.LocalRegistry;
 import com.zheng.registry.Registry;
 import com.zheng.registry.RegistryConfig;
@@ -56,6 +57,10 @@ public class RpcProviderBootstrap implements BeanPostProcessor {
             serviceMetaInfo.setServiceVersion(serviceVersion);
             serviceMetaInfo.setServiceHost(rpcConfig.getServerHost());
             serviceMetaInfo.setServicePort(rpcConfig.getServerPort());
+            serviceMetaInfo.setWeight(rpcConfig.getWeight());
+            serviceMetaInfo.setWarmup(rpcConfig.getWarmup());
+            serviceMetaInfo.setProtocolVersion((int) ProtocolConstant.COMPACT_PROTOCOL_VERSION);
+            serviceMetaInfo.setRegisterTime(System.currentTimeMillis());
             try {
                 registry.register(serviceMetaInfo);
             } catch (Exception e) {